@@ -33,6 +33,10 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        // Local unit tests run against the stub android.jar; let Log calls return instead of throwing
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -42,6 +46,8 @@ dependencies {
     implementation(libs.constraintlayout)
     // OkHttp for HTTP requests
     implementation("com.squareup.okhttp3:okhttp:4.12.0")
+    // WorkManager for background session compaction
+    implementation("androidx.work:work-runtime:2.9.1")
 
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
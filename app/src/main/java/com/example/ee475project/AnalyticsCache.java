@@ -0,0 +1,167 @@
+package com.example.ee475project;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Last-known values behind the Home and Analytics screens, per signed-in user.
+ *
+ * Screens draw from here straight away, then revalidate against Firebase and
+ * write the fresh values back. The put methods report whether anything changed,
+ * so a screen only redraws when the server actually had something new.
+ *
+ * Nodes are "total" (posture_rollups total) and "day/yyyy-MM-dd" (daily_stats days).
+ */
+class AnalyticsCache {
+
+    private static final String PREFS_NAME = "AnalyticsCache";
+    private static final String DAY_PREFIX = "day/";
+
+    static final String TOTAL = "total";
+    static final String CONNECTION_TIME = "total_connection_time";
+
+    private static volatile AnalyticsCache instance;
+
+    /**
+     * Session counters of a daily_stats day or a rollup node
+     */
+    static final class Counts {
+        static final Counts EMPTY = new Counts(0, 0);
+
+        final int sessions;
+        final int slouching;
+
+        Counts(int sessions, int slouching) {
+            this.sessions = sessions;
+            this.slouching = slouching;
+        }
+
+        static Counts of(DataSnapshot node) {
+            Integer total = node.child("total_sessions").getValue(Integer.class);
+            Integer slouch = node.child("slouching_sessions").getValue(Integer.class);
+            return new Counts(total != null ? total : 0, slouch != null ? slouch : 0);
+        }
+
+        int good() {
+            return sessions - slouching;
+        }
+
+        double slouchPercentage() {
+            return sessions > 0 ? slouching * 100.0 / sessions : 0.0;
+        }
+    }
+
+    private final SharedPreferences prefs;
+
+    static AnalyticsCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AnalyticsCache.class) {
+                if (instance == null) {
+                    instance = new AnalyticsCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private AnalyticsCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static String day(String dateKey) {
+        return DAY_PREFIX + dateKey;
+    }
+
+    /**
+     * @return cached counters, or null if this node was never loaded
+     */
+    Counts getCounts(String node) {
+        String key = key(node);
+        if (key == null || !prefs.contains(key + "/sessions")) {
+            return null;
+        }
+        return new Counts(prefs.getInt(key + "/sessions", 0), prefs.getInt(key + "/slouching", 0));
+    }
+
+    /**
+     * @return true if the value differs from the cached one
+     */
+    boolean putCounts(String node, Counts counts) {
+        String key = key(node);
+        if (key == null) {
+            return true;
+        }
+        Counts cached = getCounts(node);
+        if (cached != null && cached.sessions == counts.sessions && cached.slouching == counts.slouching) {
+            return false;
+        }
+        prefs.edit()
+                .putInt(key + "/sessions", counts.sessions)
+                .putInt(key + "/slouching", counts.slouching)
+                .apply();
+        return true;
+    }
+
+    /**
+     * @return cached value, or null if never loaded
+     */
+    Float getFloat(String name) {
+        String key = key(name);
+        return key != null && prefs.contains(key) ? prefs.getFloat(key, 0f) : null;
+    }
+
+    /**
+     * @return true if the value differs from the cached one
+     */
+    boolean putFloat(String name, float value) {
+        String key = key(name);
+        if (key == null) {
+            return true;
+        }
+        if (prefs.contains(key) && prefs.getFloat(key, 0f) == value) {
+            return false;
+        }
+        prefs.edit().putFloat(key, value).apply();
+        return true;
+    }
+
+    /**
+     * Drops cached days of the signed-in user other than {@code dateKeys}, so the file stays small
+     */
+    void keepDays(Collection<String> dateKeys) {
+        String prefix = key(DAY_PREFIX);
+        if (prefix == null) {
+            return;
+        }
+        Set<String> keep = new HashSet<>();
+        for (String dateKey : dateKeys) {
+            keep.add(key(day(dateKey)));
+        }
+        SharedPreferences.Editor editor = null;
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(prefix) && !keep.contains(key.substring(0, key.lastIndexOf('/')))) {
+                if (editor == null) {
+                    editor = prefs.edit();
+                }
+                editor.remove(key);
+            }
+        }
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    /** Per-user key; null when signed out. */
+    private static String key(String node) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        return user != null ? user.getUid() + "/" + node : null;
+    }
+}
@@ -38,16 +38,18 @@ import java.util.Locale;
  * ✅ OPTIMIZED AnalyticsFragment
  *
  * Key optimizations:
- * 1. Uses daily_stats instead of loading all posture_sessions (HUGE memory savings)
+ * 1. Uses posture_rollups/daily_stats instead of loading all posture_sessions (HUGE memory savings)
  * 2. Calculates minutes from session counts
- * 3. Cleans up old sessions on entry
- * 4. Limits all queries
+ * 3. Limits all queries
+ *
+ * Old and stale sessions are removed by SessionCompactionWorker.
  */
 public class AnalyticsFragment extends Fragment {
 
     private static final String TAG = "AnalyticsFragment";
     private FragmentAnalyticsBinding binding;
     private PostureAnalyzer postureAnalyzer;
+    private AnalyticsCache analyticsCache;
 
     // Cycle duration in seconds
     private static final float CYCLE_DURATION_SECONDS = 10f;
@@ -55,9 +57,6 @@ public class AnalyticsFragment extends Fragment {
     private float weeklyAverageUprightMinutes = 0f;
     private float bestDayUprightMinutes = 0f;
 
-    // Cleanup tracking - only once per session
-    private static boolean hasCleanedUpThisSession = false;
-
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
@@ -70,45 +69,14 @@ public class AnalyticsFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        postureAnalyzer = new PostureAnalyzer();
+        postureAnalyzer = new PostureAnalyzer(requireContext());
+        analyticsCache = AnalyticsCache.getInstance(requireContext());
         binding.btnAnalyzePosture.setOnClickListener(v -> analyzePostureData());
 
-        // ✅ Run cleanup first, then load data
-        if (!hasCleanedUpThisSession) {
-            runCleanupThenLoad();
-        } else {
-            autoAnalyzeIfNeeded();
-            loadAnalyticsData();
-        }
-    }
-
-    /**
-     * ✅ Clean up old sessions before loading analytics
-     */
-    private void runCleanupThenLoad() {
-        postureAnalyzer.cleanupOldSessions(new PostureAnalyzer.OnCleanupCompleteListener() {
-            @Override
-            public void onCleanupComplete(int deletedCount) {
-                hasCleanedUpThisSession = true;
-                if (deletedCount > 0) {
-                    Log.d(TAG, "✓ Cleaned " + deletedCount + " old sessions");
-                }
-                if (isAdded()) {
-                    autoAnalyzeIfNeeded();
-                    loadAnalyticsData();
-                }
-            }
-
-            @Override
-            public void onCleanupError(String error) {
-                hasCleanedUpThisSession = true;
-                Log.e(TAG, "Cleanup error: " + error);
-                if (isAdded()) {
-                    autoAnalyzeIfNeeded();
-                    loadAnalyticsData();
-                }
-            }
-        });
+        // Draw the last known values right away, then revalidate
+        showCachedAnalytics();
+        autoAnalyzeIfNeeded();
+        loadAnalyticsData();
     }
 
     /**
@@ -117,12 +85,9 @@ public class AnalyticsFragment extends Fragment {
     private void autoAnalyzeIfNeeded() {
         String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
 
-        DatabaseReference sessionsRef = FirebaseDatabase.getInstance()
-                .getReference("posture_sessions")
-                .child(userId);
-
-        sessionsRef.orderByChild("analyzed").equalTo(false)
-                .limitToLast(1)  // ✅ Only check if any exist
+        // ✅ Only check if the pending queue has any entry
+        PostureAnalyzer.pendingAnalysisRef(userId)
+                .limitToFirst(1)
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
@@ -188,118 +153,168 @@ public class AnalyticsFragment extends Fragment {
     }
 
     /**
-     * ✅ OPTIMIZED: Load ALL analytics from daily_stats (lightweight)
-     * Instead of querying posture_sessions which has large sensor arrays
+     * Monday..Sunday date keys of the current week
      */
-    private void loadAnalyticsData() {
-        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+    private static String[] currentWeekDays() {
+        Calendar cal = Calendar.getInstance();
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
 
-        // ✅ Use daily_stats - much smaller than posture_sessions!
-        DatabaseReference statsRef = FirebaseDatabase.getInstance()
-                .getReference("daily_stats")
-                .child(userId);
+        int currentDayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
+        int daysToMonday = (currentDayOfWeek == Calendar.SUNDAY) ? 6 : currentDayOfWeek - Calendar.MONDAY;
+        cal.add(Calendar.DAY_OF_YEAR, -daysToMonday);
 
-        statsRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                if (!isAdded() || getActivity() == null) return;
+        String[] weekDays = new String[7];
+        for (int i = 0; i < 7; i++) {
+            weekDays[i] = sdf.format(cal.getTime());
+            cal.add(Calendar.DAY_OF_YEAR, 1);
+        }
+        return weekDays;
+    }
 
-                // Calculate ALL totals from daily_stats in a single pass
-                int totalGoodPosture = 0;
-                int totalSlouching = 0;
+    /**
+     * Renders whatever AnalyticsCache holds; nothing is drawn if the screen was never loaded
+     */
+    private void showCachedAnalytics() {
+        AnalyticsCache.Counts total = analyticsCache.getCounts(AnalyticsCache.TOTAL);
+        if (total != null) {
+            String[] weekDays = currentWeekDays();
+            AnalyticsCache.Counts[] week = new AnalyticsCache.Counts[7];
+            for (int i = 0; i < 7; i++) {
+                AnalyticsCache.Counts day = analyticsCache.getCounts(AnalyticsCache.day(weekDays[i]));
+                week[i] = day != null ? day : AnalyticsCache.Counts.EMPTY;
+            }
+            showAnalytics(total, week);
+        }
 
-                // Weekly data
-                Calendar cal = Calendar.getInstance();
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        Float totalHours = analyticsCache.getFloat(AnalyticsCache.CONNECTION_TIME);
+        if (totalHours != null) {
+            binding.tvTotalValue.setText(String.format(Locale.US, "%.2fh", totalHours));
+        }
+    }
 
-                int currentDayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
-                int daysToMonday = (currentDayOfWeek == Calendar.SUNDAY) ? 6 : currentDayOfWeek - Calendar.MONDAY;
-                cal.add(Calendar.DAY_OF_YEAR, -daysToMonday);
+    /**
+     * ✅ OPTIMIZED: All-time totals from posture_rollups, the current week from daily_stats
+     * Reads one total node and at most 7 day nodes, however long the history is.
+     * Only redraws if something differs from what AnalyticsCache already showed.
+     */
+    private void loadAnalyticsData() {
+        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        String[] weekDays = currentWeekDays();
 
-                String[] weekDays = new String[7];
-                int[] weeklyGoodSessions = new int[7];
-                int[] weeklySlouchSessions = new int[7];
+        DatabaseReference totalRef = FirebaseDatabase.getInstance()
+                .getReference(PostureRollups.ROOT)
+                .child(userId)
+                .child(PostureRollups.TOTAL);
+        DatabaseReference statsRef = FirebaseDatabase.getInstance()
+                .getReference("daily_stats")
+                .child(userId);
 
-                for (int i = 0; i < 7; i++) {
-                    weekDays[i] = sdf.format(cal.getTime());
-                    cal.add(Calendar.DAY_OF_YEAR, 1);
+        // Both reads land on the main thread; apply once the second arrives
+        DataSnapshot[] results = new DataSnapshot[2];
+        int[] remaining = {2};
+        Runnable onLoaded = () -> {
+            if (--remaining[0] == 0 && isAdded() && getActivity() != null) {
+                applyAnalytics(results[0], results[1], weekDays);
+            }
+        };
+
+        postureAnalyzer.backfillRollups(() -> {
+            totalRef.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    results[0] = snapshot;
+                    onLoaded.run();
                 }
 
-                // Single pass through all daily stats
-                for (DataSnapshot daySnapshot : snapshot.getChildren()) {
-                    String dateKey = daySnapshot.getKey();
-
-                    Integer good = daySnapshot.child("good_posture_sessions").getValue(Integer.class);
-                    Integer slouch = daySnapshot.child("slouching_sessions").getValue(Integer.class);
-
-                    int goodCount = (good != null) ? good : 0;
-                    int slouchCount = (slouch != null) ? slouch : 0;
-
-                    // Add to all-time totals
-                    totalGoodPosture += goodCount;
-                    totalSlouching += slouchCount;
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    Log.e(TAG, "Error loading totals: " + error.getMessage());
+                }
+            });
+
+            statsRef.orderByKey()
+                    .startAt(weekDays[0])
+                    .endAt(weekDays[6])
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override
+                        public void onDataChange(@NonNull DataSnapshot snapshot) {
+                            results[1] = snapshot;
+                            onLoaded.run();
+                        }
 
-                    // Check if in current week for bar chart
-                    for (int i = 0; i < 7; i++) {
-                        if (weekDays[i].equals(dateKey)) {
-                            weeklyGoodSessions[i] = goodCount;
-                            weeklySlouchSessions[i] = slouchCount;
-                            break;
+                        @Override
+                        public void onCancelled(@NonNull DatabaseError error) {
+                            Log.e(TAG, "Error loading analytics: " + error.getMessage());
                         }
-                    }
-                }
+                    });
+        });
 
-                // Calculate minutes from session counts
-                float[] weeklyUprightMinutes = new float[7];
-                float[] weeklySlouchMinutes = new float[7];
+        loadTotalConnectionTime();
+    }
 
-                for (int i = 0; i < 7; i++) {
-                    weeklyUprightMinutes[i] = weeklyGoodSessions[i] * CYCLE_DURATION_SECONDS / 60f;
-                    weeklySlouchMinutes[i] = weeklySlouchSessions[i] * CYCLE_DURATION_SECONDS / 60f;
-                }
+    /**
+     * Stores fresh server values in the cache and redraws if any of them changed
+     */
+    private void applyAnalytics(DataSnapshot totalSnapshot, DataSnapshot weekSnapshot, String[] weekDays) {
+        AnalyticsCache.Counts total;
+        boolean changed = false;
+        if (totalSnapshot.exists()) {
+            total = AnalyticsCache.Counts.of(totalSnapshot);
+            changed = analyticsCache.putCounts(AnalyticsCache.TOTAL, total);
+        } else {
+            // Rollups not rebuilt yet (offline first run) - don't cache a zero over the real total
+            AnalyticsCache.Counts cached = analyticsCache.getCounts(AnalyticsCache.TOTAL);
+            total = cached != null ? cached : AnalyticsCache.Counts.EMPTY;
+        }
 
-                // Weekly stats
-                float totalWeeklyUpright = 0;
-                float maxUpright = 0;
-                for (float minutes : weeklyUprightMinutes) {
-                    totalWeeklyUpright += minutes;
-                    if (minutes > maxUpright) maxUpright = minutes;
-                }
+        AnalyticsCache.Counts[] week = new AnalyticsCache.Counts[7];
+        for (int i = 0; i < 7; i++) {
+            DataSnapshot daySnapshot = weekSnapshot.child(weekDays[i]);
+            week[i] = daySnapshot.exists() ? AnalyticsCache.Counts.of(daySnapshot) : AnalyticsCache.Counts.EMPTY;
+            changed |= analyticsCache.putCounts(AnalyticsCache.day(weekDays[i]), week[i]);
+        }
+        analyticsCache.keepDays(java.util.Arrays.asList(weekDays));
 
-                weeklyAverageUprightMinutes = totalWeeklyUpright / 7.0f;
-                bestDayUprightMinutes = maxUpright;
+        if (changed) {
+            showAnalytics(total, week);
+        }
+        Log.d(TAG, "Analytics revalidated: " + total.sessions + " total sessions"
+                + (changed ? "" : " (unchanged)"));
+    }
 
-                // All-time hours
-                float totalUprightHours = (totalGoodPosture * CYCLE_DURATION_SECONDS / 60f) / 60f;
-                float totalSlouchHours = (totalSlouching * CYCLE_DURATION_SECONDS / 60f) / 60f;
+    private void showAnalytics(AnalyticsCache.Counts total, AnalyticsCache.Counts[] week) {
+        int totalGoodPosture = total.good();
+        int totalSlouching = total.slouching;
 
-                // Final values
-                final int finalGoodPosture = totalGoodPosture;
-                final int finalSlouching = totalSlouching;
-                final float finalUprightHours = totalUprightHours;
-                final float finalSlouchHours = totalSlouchHours;
-                final float[] finalWeeklyUpright = weeklyUprightMinutes;
-                final float[] finalWeeklySlouch = weeklySlouchMinutes;
+        // Calculate minutes from session counts
+        float[] weeklyUprightMinutes = new float[7];
+        float[] weeklySlouchMinutes = new float[7];
 
-                requireActivity().runOnUiThread(() -> {
-                    updatePieChart(finalGoodPosture, finalSlouching);
-                    updateBarChart(finalWeeklyUpright, finalWeeklySlouch);
-                    updatePostureInfoCards(finalUprightHours, finalSlouchHours);
-                    updateDailyAvgCard();
-                    updateBestDayCard();
-                });
+        for (int i = 0; i < 7; i++) {
+            weeklyUprightMinutes[i] = week[i].good() * CYCLE_DURATION_SECONDS / 60f;
+            weeklySlouchMinutes[i] = week[i].slouching * CYCLE_DURATION_SECONDS / 60f;
+        }
 
-                Log.d(TAG, "Analytics loaded from daily_stats: " +
-                        (finalGoodPosture + finalSlouching) + " total sessions");
-            }
+        // Weekly stats
+        float totalWeeklyUpright = 0;
+        float maxUpright = 0;
+        for (float minutes : weeklyUprightMinutes) {
+            totalWeeklyUpright += minutes;
+            if (minutes > maxUpright) maxUpright = minutes;
+        }
 
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Log.e(TAG, "Error loading analytics: " + error.getMessage());
-            }
-        });
+        weeklyAverageUprightMinutes = totalWeeklyUpright / 7.0f;
+        bestDayUprightMinutes = maxUpright;
 
-        loadTotalConnectionTime();
+        // All-time hours
+        float totalUprightHours = (totalGoodPosture * CYCLE_DURATION_SECONDS / 60f) / 60f;
+        float totalSlouchHours = (totalSlouching * CYCLE_DURATION_SECONDS / 60f) / 60f;
+
+        updatePieChart(totalGoodPosture, totalSlouching);
+        updateBarChart(weeklyUprightMinutes, weeklySlouchMinutes);
+        updatePostureInfoCards(totalUprightHours, totalSlouchHours);
+        updateDailyAvgCard();
+        updateBestDayCard();
     }
 
     private void loadTotalConnectionTime() {
@@ -316,10 +331,8 @@ public class AnalyticsFragment extends Fragment {
 
                         if (snapshot.exists()) {
                             Float totalHours = snapshot.getValue(Float.class);
-                            if (totalHours != null) {
-                                requireActivity().runOnUiThread(() -> {
-                                    binding.tvTotalValue.setText(String.format(Locale.US, "%.2fh", totalHours));
-                                });
+                            if (totalHours != null && analyticsCache.putFloat(AnalyticsCache.CONNECTION_TIME, totalHours)) {
+                                binding.tvTotalValue.setText(String.format(Locale.US, "%.2fh", totalHours));
                             }
                         }
                     }
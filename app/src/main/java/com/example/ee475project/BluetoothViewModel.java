@@ -5,9 +5,6 @@ import android.app.Application;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
@@ -15,8 +12,10 @@ import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanResult;
 import android.bluetooth.le.ScanSettings;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -32,18 +31,20 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import java.io.IOException;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -62,29 +63,37 @@ public class BluetoothViewModel extends AndroidViewModel {
     private final MutableLiveData<ImuData> lowerBackData = new MutableLiveData<>();
     private final MutableLiveData<Float> totalConnectionTime = new MutableLiveData<>(0f);
     private final MutableLiveData<Float> activeTime = new MutableLiveData<>(0f);
+    private final MutableLiveData<LinkParameters> linkParameters = new MutableLiveData<>(null);
     private long connectionStartTime;
     private final Handler timerHandler = new Handler(Looper.getMainLooper());
 
     private final MutableLiveData<String> completedSessionId = new MutableLiveData<>(null);
+    private final MutableLiveData<InferenceDispatcher.Result> inferenceResult = new MutableLiveData<>(null);
 
     private final DatabaseReference userDbRef;
-    private final StringBuilder dataBuffer = new StringBuilder();
 
-    private final OkHttpClient httpClient;
-
-    private BluetoothGatt bluetoothGatt;
 
     private static final String TAG = "BluetoothViewModel";
     private static final String DEVICE_NAME_UPPER = "XIAO_Upper_Back";
     private static final String DEVICE_NAME_LOWER = "XIAO_Lower_Back";
     private static final long SCAN_PERIOD = 10000; // Stops scanning after 10 seconds.
     private static final long CONNECTION_TIME = 10000; // 10 seconds
-
-    // Nordic UART Service UUIDs
-    private static final UUID UART_SERVICE_UUID = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
-    private static final UUID UART_TX_CHARACTERISTIC_UUID = UUID.fromString("6E400003-B5A3-F393-E0A9-E50E24DCCA9E");
-    private static final UUID UART_RX_CHARACTERISTIC_UUID = UUID.fromString("6E400002-B5A3-F393-E0A9-E50E24DCCA9E"); // For writing to device
-    private static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    private static final long MAX_PAIR_SKEW_MS = 100; // Dual mode: max time between paired samples
+    private static final long WINDOW_LENGTH = CONNECTION_TIME; // Continuous mode: one session per window
+    private static final long RESCAN_DELAY = 5000; // Continuous mode: retry for a missing sensor
+    // Alignment grid for inference arrays: 0 = the slower sensor's measured rate
+    private static final float ALIGNMENT_RATE_HZ = 0f;
+    private static final int ALIGNMENT_INTERPOLATION = StreamAligner.LINEAR;
+
+    // Session children holding the inference arrays (ImuArrayCodec); older sessions use upperBackArray/lowerBackArray
+    private static final String UPPER_PACKED_KEY = "upperBackPacked";
+    private static final String LOWER_PACKED_KEY = "lowerBackPacked";
+    private static final long DIRECT_CONNECT_TIMEOUT = 4000; // Fall back to scanning after 4 seconds
+
+    // Shared with TrainingViewModel and the settings screen
+    public static final String CONNECTION_PREFS = "ConnectionPrefs";
+    public static final String KEY_DUAL_CONNECTION = "dual_connection";
+    public static final String KEY_CONTINUOUS_MONITORING = "continuous_monitoring";
 
     private final ScanCallback leScanCallback;
     private final Runnable stopScanRunnable;
@@ -92,21 +101,38 @@ public class BluetoothViewModel extends AndroidViewModel {
     private int currentDeviceIndex = 0;
     private final String[] deviceNames = {DEVICE_NAME_UPPER, DEVICE_NAME_LOWER};
 
-    // IMU Data
-    private float tempAccelX, tempAccelY, tempAccelZ;
-    private float tempGyroX, tempGyroY, tempGyroZ;
-    private boolean hasAccelData = false;
-    private boolean hasGyroData = false;
-    private String currentSensor = "";  // "UB" or "LB"
+    // One link per sensor, indexed like deviceNames. Sequential mode only ever has one open.
+    private final SensorLink[] links = new SensorLink[2];
+    private boolean dualMode = false;
+
+    // Continuous mode: links stay up and the stream is cut into sessions on a timer
+    private boolean continuousMode = false;
+    private boolean windowRunning = false;
+    private long nextWindowUptime = 0;
+    private final SamplePairer samplePairer = new SamplePairer(MAX_PAIR_SKEW_MS, this::onPairedSample);
+
+    // Pinned sensor addresses; a failed direct reconnect falls back to scanning for the rest of the cycle
+    private final SensorRegistry sensorRegistry;
+    private final boolean[] directConnectFailed = new boolean[2];
 
     // Firebase Session Tracking
-    private String currentSessionId = null;
+    // Volatile: reassigned on the main thread at cycle/window boundaries, read by recordSample on the sample worker
+    private volatile String currentSessionId = null;
     private long sessionStartTime = 0;
     private DatabaseReference sessionsRef;
+    private String sessionsPath;  // Same node as sessionsRef, for the write batcher
+    private String userPath;
+    private String pendingAnalysisPath;
+    private final FirebaseWriteBatcher writeBatcher;
+    private final RawSampleStore rawSampleStore;
+    private volatile String rawRangeSessionId = null;  // Session whose rawStartTime has been written
 
     // Buffers for inference data collection
     private List<SensorData> inferenceUpperBackBuffer = new ArrayList<>();
     private List<SensorData> inferenceLowerBackBuffer = new ArrayList<>();
+    // Last completed cycle's samples, handed to /predict without a Firebase round trip
+    private volatile InferencePayload latestInferencePayload;
+    private final InferenceDispatcher inferenceDispatcher;
     private long inferenceUpperBackStartTime = 0;
     private long inferenceLowerBackStartTime = 0;
 
@@ -126,16 +152,25 @@ public class BluetoothViewModel extends AndroidViewModel {
         BluetoothManager bluetoothManager = (BluetoothManager) application.getSystemService(Context.BLUETOOTH_SERVICE);
         bluetoothAdapter = bluetoothManager.getAdapter();
         bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-        httpClient = new OkHttpClient();
+        sensorRegistry = new SensorRegistry(application);
+        rawSampleStore = RawSampleStore.getInstance(application);
+        writeBatcher = FirebaseWriteBatcher.getInstance(application);
+        // setValue per result (not postValue, which keeps only the last) so a batch reply reaches observers whole
+        inferenceDispatcher = new InferenceDispatcher(this::uploadInferenceData,
+                result -> handler.post(() -> inferenceResult.setValue(result)),
+                ServerCapabilities.getInstance(application));
         FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
 
 
         if (user != null) {
             userDbRef = FirebaseDatabase.getInstance().getReference("users").child(user.getUid());
+            userPath = "users/" + user.getUid();
             performInitialLoadAndDailyCheck(); // Perform the check on initialization
             sessionsRef = FirebaseDatabase.getInstance()
                     .getReference("posture_sessions")
                     .child(user.getUid());
+            sessionsPath = "posture_sessions/" + user.getUid();
+            pendingAnalysisPath = PostureAnalyzer.PENDING_ANALYSIS + "/" + user.getUid();
         } else {
             userDbRef = null;
         }
@@ -145,25 +180,45 @@ public class BluetoothViewModel extends AndroidViewModel {
             public void onScanResult(int callbackType, ScanResult result) {
                 super.onScanResult(callbackType, result);
 
-                // ✅ GUARD: Skip if already connecting or connected
-                if (isConnecting || Boolean.TRUE.equals(isConnected.getValue())) {
+                BluetoothDevice device = result.getDevice();
+                if (device == null || device.getName() == null) {
                     return;
                 }
 
+                // Same name but not this user's pinned unit (e.g. a coworker's sensor)
+                if (!sensorRegistry.accepts(device, device.getName())) {
+                    return;
+                }
 
-                BluetoothDevice device = result.getDevice();
-                if (device != null && device.getName() != null) {
-                    if (isCycling && device.getName().equals(deviceNames[currentDeviceIndex])) {
-                        isConnecting = true;
-                        handler.removeCallbacks(stopScanRunnable);
-                        bluetoothLeScanner.stopScan(leScanCallback);
-                        connectToDevice(device);
-                    } else if (!isCycling && (device.getName().startsWith(DEVICE_NAME_UPPER) || device.getName().startsWith(DEVICE_NAME_LOWER))) {
-                        isConnecting = true;
+                // Dual mode: connect to each sensor as it shows up, keep scanning for the other
+                if (isCycling && dualMode) {
+                    int index = indexOfDevice(device.getName());
+                    if (index < 0 || links[index] != null) {
+                        return;
+                    }
+                    connectToDevice(index, device);
+                    if (links[0] != null && links[1] != null) {
                         handler.removeCallbacks(stopScanRunnable);
                         bluetoothLeScanner.stopScan(leScanCallback);
-                        connectToDevice(device);
                     }
+                    return;
+                }
+
+                // ✅ GUARD: Skip if already connecting or connected
+                if (isConnecting || Boolean.TRUE.equals(isConnected.getValue())) {
+                    return;
+                }
+
+                if (isCycling && device.getName().equals(deviceNames[currentDeviceIndex])) {
+                    isConnecting = true;
+                    handler.removeCallbacks(stopScanRunnable);
+                    bluetoothLeScanner.stopScan(leScanCallback);
+                    connectToDevice(currentDeviceIndex, device);
+                } else if (!isCycling && (device.getName().startsWith(DEVICE_NAME_UPPER) || device.getName().startsWith(DEVICE_NAME_LOWER))) {
+                    isConnecting = true;
+                    handler.removeCallbacks(stopScanRunnable);
+                    bluetoothLeScanner.stopScan(leScanCallback);
+                    connectToDevice(device.getName().startsWith(DEVICE_NAME_UPPER) ? 0 : 1, device);
                 }
             }
 
@@ -174,6 +229,10 @@ public class BluetoothViewModel extends AndroidViewModel {
                 if (connectionStatus.getValue() != null && connectionStatus.getValue().startsWith("Scanning")) {
                     connectionStatus.setValue("Disconnected");
                 }
+                // Continuous mode: keep looking for a missing sensor while the other one streams
+                if (continuousMode && isCycling && hasConnectedLink()) {
+                    handler.postDelayed(this::scanForMissingDevices, RESCAN_DELAY);
+                }
             }
         };
     }
@@ -197,9 +256,11 @@ public class BluetoothViewModel extends AndroidViewModel {
                         // New day detected, reset all daily values in Firebase and LiveData
                         Log.d(TAG, "New day detected. Resetting daily stats in Firebase.");
                         activeTime.postValue(0f); // Update LiveData
-                        userDbRef.child("active_time").setValue(0f);
-                        userDbRef.child("slouch_time").setValue(0f);
-                        userDbRef.child("last_active_date").setValue(todayKey);
+                        Map<String, Object> reset = new HashMap<>();
+                        reset.put(userPath + "/active_time", 0f);
+                        reset.put(userPath + "/slouch_time", 0f);
+                        reset.put(userPath + "/last_active_date", todayKey);
+                        writeBatcher.setAll(reset);
                     } else {
                         // Same day, load the existing active time
                         Float actTime = snapshot.child("active_time").getValue(Float.class);
@@ -208,10 +269,12 @@ public class BluetoothViewModel extends AndroidViewModel {
                 } else {
                     // First time user, initialize the date and other fields
                     Log.d(TAG, "First time user setup in Firebase.");
-                    userDbRef.child("last_active_date").setValue(todayKey);
-                    userDbRef.child("active_time").setValue(0f);
-                    userDbRef.child("slouch_time").setValue(0f);
-                    userDbRef.child("total_connection_time").setValue(0f);
+                    Map<String, Object> initial = new HashMap<>();
+                    initial.put(userPath + "/last_active_date", todayKey);
+                    initial.put(userPath + "/active_time", 0f);
+                    initial.put(userPath + "/slouch_time", 0f);
+                    initial.put(userPath + "/total_connection_time", 0f);
+                    writeBatcher.setAll(initial);
                 }
             }
 
@@ -230,6 +293,13 @@ public class BluetoothViewModel extends AndroidViewModel {
         return isConnected;
     }
 
+    /**
+     * MTU / PHY / priority negotiated on the most recently connected sensor
+     */
+    public LiveData<LinkParameters> getLinkParameters() {
+        return linkParameters;
+    }
+
     public LiveData<Boolean> getIsCycleComplete() {
         return isCycleComplete;
     }
@@ -250,12 +320,48 @@ public class BluetoothViewModel extends AndroidViewModel {
         return activeTime;
     }
 
+    /**
+     * Dual connection mode keeps both sensors connected at the same time instead
+     * of cycling upper → lower. Takes effect on the next startCycle().
+     */
+    public void setDualConnectionEnabled(boolean enabled) {
+        getApplication().getSharedPreferences(CONNECTION_PREFS, Context.MODE_PRIVATE)
+                .edit()
+                .putBoolean(KEY_DUAL_CONNECTION, enabled)
+                .apply();
+        Log.d(TAG, "Dual connection mode: " + (enabled ? "ENABLED" : "DISABLED"));
+    }
+
+    public boolean isDualConnectionEnabled() {
+        SharedPreferences prefs = getApplication().getSharedPreferences(CONNECTION_PREFS, Context.MODE_PRIVATE);
+        return prefs.getBoolean(KEY_DUAL_CONNECTION, false);
+    }
+
+    /**
+     * Continuous monitoring keeps both sensors connected and emits a session every
+     * WINDOW_LENGTH instead of reconnecting each cycle. Takes effect on the next startCycle().
+     */
+    public void setContinuousMonitoringEnabled(boolean enabled) {
+        getApplication().getSharedPreferences(CONNECTION_PREFS, Context.MODE_PRIVATE)
+                .edit()
+                .putBoolean(KEY_CONTINUOUS_MONITORING, enabled)
+                .apply();
+        Log.d(TAG, "Continuous monitoring: " + (enabled ? "ENABLED" : "DISABLED"));
+    }
+
+    public boolean isContinuousMonitoringEnabled() {
+        SharedPreferences prefs = getApplication().getSharedPreferences(CONNECTION_PREFS, Context.MODE_PRIVATE);
+        return prefs.getBoolean(KEY_CONTINUOUS_MONITORING, false);
+    }
+
     public void startScan() {
         isCycling = false;
+        dualMode = false;
+        continuousMode = false;
         if (bluetoothLeScanner != null && !Boolean.TRUE.equals(isConnected.getValue())) { // prevent scan if already connected
             List<ScanFilter> filters = new ArrayList<>();
-            filters.add(new ScanFilter.Builder().setDeviceName(DEVICE_NAME_UPPER).build());
-            filters.add(new ScanFilter.Builder().setDeviceName(DEVICE_NAME_LOWER).build());
+            filters.add(sensorRegistry.buildScanFilter(DEVICE_NAME_UPPER));
+            filters.add(sensorRegistry.buildScanFilter(DEVICE_NAME_LOWER));
 
             ScanSettings scanSettings = new ScanSettings.Builder()
                     .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
@@ -274,8 +380,17 @@ public class BluetoothViewModel extends AndroidViewModel {
         isCycling = true;
         isConnecting = false;  // ✅ Reset connecting flag
         currentDeviceIndex = 0;
+        continuousMode = isContinuousMonitoringEnabled();
+        dualMode = continuousMode || isDualConnectionEnabled();
         isCycleComplete.setValue(false);
-        scanForNextDevice();
+        directConnectFailed[0] = false;
+        directConnectFailed[1] = false;
+
+        if (dualMode) {
+            scanForMissingDevices();
+        } else {
+            scanForNextDevice();
+        }
     }
 
     private void scanForNextDevice() {
@@ -295,11 +410,15 @@ public class BluetoothViewModel extends AndroidViewModel {
             return;
         }
 
+        if (tryDirectConnect(currentDeviceIndex)) {
+            return;
+        }
+
         String deviceName = deviceNames[currentDeviceIndex];
         Log.d(TAG, "Scanning for: " + deviceName + " (index=" + currentDeviceIndex + ")");
 
         List<ScanFilter> filters = new ArrayList<>();
-        filters.add(new ScanFilter.Builder().setDeviceName(deviceName).build());
+        filters.add(sensorRegistry.buildScanFilter(deviceName));
 
         ScanSettings scanSettings = new ScanSettings.Builder()
                 .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
@@ -311,13 +430,56 @@ public class BluetoothViewModel extends AndroidViewModel {
         handler.postDelayed(stopScanRunnable, SCAN_PERIOD);
     }
 
+    /**
+     * Dual/continuous mode: scan for every sensor without an open link and
+     * connect to each as it is found.
+     */
+    private void scanForMissingDevices() {
+        if (!isCycling) {
+            Log.d(TAG, "scanForMissingDevices: Not cycling, skipping");
+            return;
+        }
+
+        List<ScanFilter> filters = new ArrayList<>();
+        StringBuilder missing = new StringBuilder();
+        for (int i = 0; i < deviceNames.length; i++) {
+            if (links[i] == null && !tryDirectConnect(i)) {
+                filters.add(sensorRegistry.buildScanFilter(deviceNames[i]));
+                if (missing.length() > 0) missing.append(" + ");
+                missing.append(deviceNames[i]);
+            }
+        }
+
+        if (filters.isEmpty()) {
+            Log.d(TAG, "scanForMissingDevices: All links open or reconnecting directly, skipping scan");
+            return;
+        }
+
+        Log.d(TAG, "Scanning for: " + missing + " (dual mode)");
+
+        ScanSettings scanSettings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .build();
+
+        handler.removeCallbacks(stopScanRunnable);
+        bluetoothLeScanner.stopScan(leScanCallback);
+        bluetoothLeScanner.startScan(filters, scanSettings, leScanCallback);
+        if (!hasConnectedLink()) {
+            connectionStatus.setValue("Scanning for " + missing);
+        }
+
+        handler.postDelayed(stopScanRunnable, SCAN_PERIOD);
+    }
+
 
     // Update cancelScan
     public void cancelScan() {
         Log.d(TAG, "cancelScan called");
+        flushSessionWrites();
         isCycling = false;
         isConnecting = false;  // ✅ Reset connecting flag
         isCycleComplete.setValue(false);
+        stopWindowing();
 
         if (scheduledDisconnectRunnable != null) {
             handler.removeCallbacks(scheduledDisconnectRunnable);
@@ -334,26 +496,142 @@ public class BluetoothViewModel extends AndroidViewModel {
     // Update disconnect
     public void disconnect() {
         Log.d(TAG, "disconnect called");
+        flushSessionWrites();
         isCycling = false;
         isConnecting = false;  // ✅ Reset connecting flag
+        stopWindowing();
 
         if (scheduledDisconnectRunnable != null) {
             handler.removeCallbacks(scheduledDisconnectRunnable);
             scheduledDisconnectRunnable = null;
         }
 
-        if (bluetoothGatt != null) {
-            bluetoothGatt.disconnect();
+        for (SensorLink link : links) {
+            if (link != null) {
+                link.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Reconnects straight to the pinned address for this sensor, skipping the scan.
+     * @return false if no sensor is pinned or direct connect already failed this cycle
+     */
+    private boolean tryDirectConnect(int index) {
+        if (directConnectFailed[index]) {
+            return false;
+        }
+        BluetoothDevice device = sensorRegistry.getRegisteredDevice(bluetoothAdapter, deviceNames[index]);
+        if (device == null) {
+            return false;
+        }
+
+        Log.d(TAG, "Direct reconnect to " + deviceNames[index] + " (" + device.getAddress() + ") - skipping scan");
+        if (!dualMode) {
+            isConnecting = true;
         }
+        connectToDevice(index, device);
+
+        SensorLink link = links[index];
+        handler.postDelayed(() -> {
+            if (links[index] == link && !link.isConnected()) {
+                Log.w(TAG, "Direct reconnect to " + deviceNames[index] + " timed out");
+                link.close();
+                fallBackToScan(index);
+            }
+        }, DIRECT_CONNECT_TIMEOUT);
+        return true;
     }
 
-    private void connectToDevice(BluetoothDevice device) {
+    private void fallBackToScan(int index) {
+        links[index] = null;
+        directConnectFailed[index] = true;
+        if (!isCycling) {
+            return;
+        }
+        Log.d(TAG, "Falling back to scanning for " + deviceNames[index]);
+        if (dualMode) {
+            scanForMissingDevices();
+        } else {
+            isConnecting = false;
+            scanForNextDevice();
+        }
+    }
+
+    /**
+     * Unpins the user's sensors so the next scan picks up (and pins) whichever units are found.
+     */
+    public void forgetRegisteredSensors() {
+        for (String deviceName : deviceNames) {
+            sensorRegistry.forget(deviceName);
+        }
+    }
+
+    private void connectToDevice(int index, BluetoothDevice device) {
         if (device != null) {
-            connectionStatus.setValue("Connecting to " + device.getName());
-            bluetoothGatt = device.connectGatt(getApplication(), false, gattCallback);
+            connectionStatus.setValue("Connecting to " + deviceNames[index]);
+            SensorLink link = new SensorLink(getApplication(), device, deviceNames[index], linkListener);
+            link.setConnectionPriority(getConnectionPriorityPolicy());
+            links[index] = link;
+            link.connect();
         }
     }
 
+    /**
+     * Monitoring never asks for HIGH: samples are timestamped on arrival and scored
+     * once per cycle, so per-sample latency doesn't matter, and the ~16 Hz stream
+     * fits comfortably in a BALANCED interval (about 30-50 ms) without the radio cost
+     * of HIGH. Short cycles use BALANCED so a brief window still drains promptly;
+     * continuous monitoring stays connected for hours and drops to LOW_POWER.
+     * (Training requests HIGH: it collects every sample of a pose while the user waits.)
+     */
+    private int getConnectionPriorityPolicy() {
+        return continuousMode
+                ? BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER
+                : BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+    }
+
+    private int indexOfDevice(String deviceName) {
+        for (int i = 0; i < deviceNames.length; i++) {
+            if (deviceNames[i].equals(deviceName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfLink(SensorLink link) {
+        for (int i = 0; i < links.length; i++) {
+            if (links[i] == link) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasConnectedLink() {
+        for (SensorLink link : links) {
+            if (link != null && link.isConnected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * e.g. "XIAO_Upper_Back + XIAO_Lower_Back" - the settings screen matches on the names
+     */
+    private String describeConnectedLinks() {
+        StringBuilder names = new StringBuilder();
+        for (SensorLink link : links) {
+            if (link != null && link.isConnected()) {
+                if (names.length() > 0) names.append(" + ");
+                names.append(link.getDeviceName());
+            }
+        }
+        return names.toString();
+    }
+
     private final Runnable timerRunnable = new Runnable() {
         @Override
         public void run() {
@@ -367,14 +645,14 @@ public class BluetoothViewModel extends AndroidViewModel {
             float newActiveTime = currentActive + minutes;
 
             activeTime.postValue(newActiveTime);
-            userDbRef.child("active_time").setValue(newActiveTime);
+            writeBatcher.set(userPath + "/active_time", newActiveTime);
 
             // Also update total connection time
             Float currentTotal = totalConnectionTime.getValue();
             if (currentTotal == null) currentTotal = 0f;
             float newTotalTime = currentTotal + (minutes / 60); // minutes to hours
             totalConnectionTime.postValue(newTotalTime);
-            userDbRef.child("total_connection_time").setValue(newTotalTime);
+            writeBatcher.set(userPath + "/total_connection_time", newTotalTime);
 
             connectionStartTime = System.currentTimeMillis(); // Reset start time for next interval
             timerHandler.postDelayed(this, 1000); // Update every second
@@ -382,359 +660,532 @@ public class BluetoothViewModel extends AndroidViewModel {
     };
 
 
-    // Replace your onConnectionStateChange method:
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+    // Link events arrive on binder threads; connection bookkeeping runs on the main thread
+    private final SensorLink.Listener linkListener = new SensorLink.Listener() {
         @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            String deviceName = gatt.getDevice().getName();
-
-            if (newState == BluetoothGatt.STATE_CONNECTED) {
-                // ✅ Cancel any pending disconnect from previous connection
-                if (scheduledDisconnectRunnable != null) {
-                    handler.removeCallbacks(scheduledDisconnectRunnable);
-                    scheduledDisconnectRunnable = null;
-                }
+        public void onLinkConnected(SensorLink link) {
+            handler.post(() -> handleLinkConnected(link));
+        }
 
-                Log.d(TAG, "════════════════════════════════════════");
-                Log.d(TAG, "CONNECTED to: " + deviceName + " (index=" + currentDeviceIndex + ")");
-                Log.d(TAG, "════════════════════════════════════════");
-                Log.d(TAG, "📋 Current session ID: " + currentSessionId);
-
-                // ✅ CREATE NEW SESSION at the START of a cycle (when upper back connects)
-                if (isCycling && currentDeviceIndex == 0 && sessionsRef != null) {
-                    String oldSessionId = currentSessionId;
-                    currentSessionId = generateSessionId();
-                    sessionStartTime = System.currentTimeMillis();
-
-                    PostureSession session = new PostureSession(
-                            currentSessionId,
-                            FirebaseAuth.getInstance().getCurrentUser().getUid(),
-                            sessionStartTime
-                    );
-
-                    sessionsRef.child(currentSessionId).setValue(session)
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d(TAG, "✓ NEW SESSION: " + currentSessionId);
-                            })
-                            .addOnFailureListener(e ->
-                                    Log.e(TAG, "✗ Failed to create session: " + e.getMessage()));
-
-                    inferenceUpperBackBuffer.clear();
-                    inferenceLowerBackBuffer.clear();
-                    inferenceUpperBackStartTime = 0;
-                    inferenceLowerBackStartTime = 0;
-                }
+        @Override
+        public void onLinkNegotiated(SensorLink link, LinkParameters parameters) {
+            linkParameters.postValue(parameters);
+        }
 
-                connectionStatus.postValue("Connected to " + deviceName);
-                isConnected.postValue(true);
-                isConnecting = false;  // ✅ Clear connecting flag - now connected
+        @Override
+        public void onLinkReady(SensorLink link) {
+            Log.d(TAG, "✓ Notifications enabled on " + link.getDeviceName());
+        }
 
-                connectionStartTime = System.currentTimeMillis();
-                timerHandler.post(timerRunnable);
+        @Override
+        public void onLinkSample(SensorLink link, int sensor, int sequence, long timestampNanos,
+                                 float ax, float ay, float az,
+                                 float gx, float gy, float gz) {
+            // Monotonic, drift-corrected sample time rather than wall time at parse
+            long currentTime = SampleClock.toEpochMillis(timestampNanos);
+            if (dualMode) {
+                samplePairer.add(sensor, currentTime, ax, ay, az, gx, gy, gz);
+            } else {
+                recordSample(sensor, currentTime, ax, ay, az, gx, gy, gz);
+            }
+        }
 
-                bluetoothGatt = gatt;
-                gatt.discoverServices();
+        @Override
+        public void onLinkDisconnected(SensorLink link, int status) {
+            handler.post(() -> handleLinkDisconnected(link));
+        }
+    };
 
-                if (isCycling) {
-                    final BluetoothGatt gattToDisconnect = gatt;
-                    scheduledDisconnectRunnable = () -> {
-                        Log.d(TAG, "Scheduled disconnect for: " + deviceName);
-                        if (gattToDisconnect != null && gattToDisconnect == bluetoothGatt) {
-                            gattToDisconnect.disconnect();
-                        }
-                    };
-                    handler.postDelayed(scheduledDisconnectRunnable, CONNECTION_TIME);
-                }
+    private void handleLinkConnected(SensorLink link) {
+        if (indexOfLink(link) < 0) {
+            // Link was dropped (e.g. cancelled) before it finished connecting
+            link.close();
+            return;
+        }
 
-            } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
-                // ✅ Cancel scheduled disconnect
-                if (scheduledDisconnectRunnable != null) {
-                    handler.removeCallbacks(scheduledDisconnectRunnable);
-                    scheduledDisconnectRunnable = null;
-                }
+        String deviceName = link.getDeviceName();
+        boolean firstLinkOfCycle = !dualMode || !otherLinkConnected(link);
 
-                Log.d(TAG, "DISCONNECTED from: " + deviceName + " (index=" + currentDeviceIndex + ")");
+        // First successful connect pins this unit to the user
+        sensorRegistry.registerIfAbsent(deviceName, link.getDevice().getAddress());
 
-                timerHandler.removeCallbacks(timerRunnable);
-                synchronized (dataBuffer) {
-                    dataBuffer.setLength(0);
-                }
-                connectionStatus.postValue("Disconnected from " + deviceName);
-                isConnected.postValue(false);
-                isConnecting = false;  // ✅ Clear connecting flag
+        // ✅ Cancel any pending disconnect from previous connection
+        if (scheduledDisconnectRunnable != null) {
+            handler.removeCallbacks(scheduledDisconnectRunnable);
+            scheduledDisconnectRunnable = null;
+        }
+
+        Log.d(TAG, "════════════════════════════════════════");
+        Log.d(TAG, "CONNECTED to: " + deviceName + " (index=" + currentDeviceIndex + ", dual=" + dualMode + ")");
+        Log.d(TAG, "════════════════════════════════════════");
+        Log.d(TAG, "📋 Current session ID: " + currentSessionId);
+
+        // ✅ CREATE NEW SESSION at the START of a cycle (upper back connects, or first sensor in dual mode)
+        boolean cycleStart = dualMode ? firstLinkOfCycle : currentDeviceIndex == 0;
+        if (continuousMode) {
+            // Sessions come from the window timer; only start it if it isn't already running
+            if (isCycling && !windowRunning && sessionsRef != null) {
+                startWindowing();
+            }
+        } else if (isCycling && cycleStart && sessionsRef != null) {
+            startNewSession();
+        }
+
+        connectionStatus.setValue("Connected to " + describeConnectedLinks());
+        isConnected.setValue(true);
+        isConnecting = false;  // ✅ Clear connecting flag - now connected
 
-                gatt.close();
+        if (firstLinkOfCycle) {
+            connectionStartTime = System.currentTimeMillis();
+            timerHandler.removeCallbacks(timerRunnable);
+            timerHandler.post(timerRunnable);
+        }
 
-                if (bluetoothGatt == gatt) {
-                    bluetoothGatt = null;
+        if (isCycling && !continuousMode) {
+            // Dual mode: the window starts once both sensors stream. If the second sensor never
+            // shows up, end the cycle after a scan period plus the normal window anyway.
+            boolean bothConnected = links[0] != null && links[0].isConnected()
+                    && links[1] != null && links[1].isConnected();
+            long delay = (!dualMode || bothConnected) ? CONNECTION_TIME : CONNECTION_TIME + SCAN_PERIOD;
+
+            scheduledDisconnectRunnable = () -> {
+                Log.d(TAG, "Scheduled disconnect for: " + describeConnectedLinks());
+                for (SensorLink open : links) {
+                    if (open != null) {
+                        open.disconnect();
+                    }
                 }
+            };
+            handler.postDelayed(scheduledDisconnectRunnable, delay);
+        }
+    }
+
+    private boolean otherLinkConnected(SensorLink link) {
+        for (SensorLink other : links) {
+            if (other != null && other != link && other.isConnected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startNewSession() {
+        currentSessionId = generateSessionId();
+        sessionStartTime = System.currentTimeMillis();
+
+        // Same fields as new PostureSession(...) - the batcher only takes plain values
+        Map<String, Object> session = new HashMap<>();
+        session.put("sessionId", currentSessionId);
+        session.put("userId", FirebaseAuth.getInstance().getCurrentUser().getUid());
+        session.put("timestamp", sessionStartTime);
+        session.put("analyzed", false);
+
+        // The session and its pending_analysis entry are created together
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(sessionsPath + "/" + currentSessionId, session);
+        updates.put(pendingAnalysisPath + "/" + currentSessionId, sessionStartTime);
+        writeBatcher.setAll(updates);
+        Log.d(TAG, "✓ NEW SESSION: " + currentSessionId);
+
+        synchronized (this) {
+            inferenceUpperBackBuffer.clear();
+            inferenceLowerBackBuffer.clear();
+            inferenceUpperBackStartTime = 0;
+            inferenceLowerBackStartTime = 0;
+        }
+        samplePairer.reset();
+    }
+
+    private void handleLinkDisconnected(SensorLink link) {
+        int index = indexOfLink(link);
+        if (index >= 0 && !link.hasEverConnected() && isCycling && !directConnectFailed[index]
+                && sensorRegistry.isRegistered(link.getDeviceName())) {
+            // Direct reconnect failed outright (e.g. status 133) - scan for the pinned address instead
+            Log.w(TAG, "Direct reconnect to " + link.getDeviceName() + " failed");
+            fallBackToScan(index);
+            return;
+        }
+        if (index >= 0) {
+            links[index] = null;
+        }
+
+        String deviceName = link.getDeviceName();
+        Log.d(TAG, "DISCONNECTED from: " + deviceName + " (index=" + currentDeviceIndex + ")");
 
-                if (isCycling) {
-                    int previousIndex = currentDeviceIndex;
-                    currentDeviceIndex = (currentDeviceIndex + 1) % deviceNames.length;
+        if (continuousMode && isCycling) {
+            handleContinuousLinkLost(deviceName);
+            return;
+        }
 
-                    Log.d(TAG, "Cycle index: " + previousIndex + " → " + currentDeviceIndex);
+        boolean anyLinkLeft = links[0] != null || links[1] != null;
+        if (anyLinkLeft) {
+            // Dual mode: the other sensor keeps streaming until the window ends
+            String remaining = describeConnectedLinks();
+            connectionStatus.setValue(remaining.isEmpty()
+                    ? "Disconnected from " + deviceName
+                    : "Connected to " + remaining);
+            return;
+        }
 
-                    if (currentDeviceIndex == 0) {
-                        // CYCLE COMPLETE
-                        Log.d(TAG, "════════════════════════════════════════");
-                        Log.d(TAG, "✓ CYCLE COMPLETE: " + currentSessionId);
-                        Log.d(TAG, "════════════════════════════════════════");
+        // ✅ Cancel scheduled disconnect
+        if (scheduledDisconnectRunnable != null) {
+            handler.removeCallbacks(scheduledDisconnectRunnable);
+            scheduledDisconnectRunnable = null;
+        }
 
-                        saveInferenceDataToFirebase();
-                        completedSessionId.postValue(currentSessionId);
-                        isCycleComplete.postValue(true);
+        timerHandler.removeCallbacks(timerRunnable);
+        connectionStatus.setValue("Disconnected from " + deviceName);
+        isConnected.setValue(false);
+        isConnecting = false;  // ✅ Clear connecting flag
 
-                        handler.postDelayed(() -> {
-                            if (isCycling && !isConnecting && !Boolean.TRUE.equals(isConnected.getValue())) {
-                                Log.d(TAG, "Starting new cycle...");
-                                scanForNextDevice();
-                            }
-                        }, 3500);  // ✅ Increased delay to 3.5s for stability
+        if (!isCycling) {
+            return;
+        }
 
+        int previousIndex = currentDeviceIndex;
+        currentDeviceIndex = dualMode ? 0 : (currentDeviceIndex + 1) % deviceNames.length;
+
+        Log.d(TAG, "Cycle index: " + previousIndex + " → " + currentDeviceIndex);
+
+        if (currentDeviceIndex == 0) {
+            // CYCLE COMPLETE
+            Log.d(TAG, "════════════════════════════════════════");
+            Log.d(TAG, "✓ CYCLE COMPLETE: " + currentSessionId);
+            if (dualMode) {
+                Log.d(TAG, "  Paired samples: " + samplePairer.getPairCount()
+                        + ", unpaired dropped: " + samplePairer.getDroppedCount());
+            }
+            Log.d(TAG, "════════════════════════════════════════");
+
+            captureInferenceData();
+            flushSessionWrites();
+            completedSessionId.setValue(currentSessionId);
+            isCycleComplete.setValue(true);
+
+            handler.postDelayed(() -> {
+                if (isCycling && !isConnecting && !hasConnectedLink()) {
+                    Log.d(TAG, "Starting new cycle...");
+                    if (dualMode) {
+                        scanForMissingDevices();
                     } else {
-                        // Continue to lower back
-                        handler.postDelayed(() -> {
-                            if (isCycling && !isConnecting && !Boolean.TRUE.equals(isConnected.getValue())) {
-                                scanForNextDevice();
-                            }
-                        }, 1500);  // ✅ Increased delay to 1.5s
+                        scanForNextDevice();
                     }
                 }
-            }
+            }, 3500);  // ✅ Increased delay to 3.5s for stability
+
+        } else {
+            // Continue to lower back
+            handler.postDelayed(() -> {
+                if (isCycling && !isConnecting && !Boolean.TRUE.equals(isConnected.getValue())) {
+                    scanForNextDevice();
+                }
+            }, 1500);  // ✅ Increased delay to 1.5s
         }
+    }
 
-        /*
-         * Save collected inference data arrays to Firebase
-         * ONLY saves if ML inference is enabled - otherwise skips for performance
-         */
-        private void saveInferenceDataToFirebase() {
-            if (currentSessionId == null || sessionsRef == null) {
-                Log.w(TAG, "Cannot save inference data - no session or reference");
-                return;
-            }
+    /**
+     * Continuous mode: a sensor dropped out. The window keeps running on whatever is
+     * still connected and we rescan for the missing sensor; if everything is gone the
+     * current window is closed early and we go back to scanning.
+     */
+    private void handleContinuousLinkLost(String deviceName) {
+        if (hasConnectedLink()) {
+            connectionStatus.setValue("Connected to " + describeConnectedLinks());
+            handler.postDelayed(this::scanForMissingDevices, 1500);
+            return;
+        }
 
-            // PERFORMANCE OPTIMIZATION: Skip array saving if ML inference is disabled
-            if (!isMLInferenceEnabled) {
-                Log.d(TAG, "⚡ Skipping array save (ML inference disabled) - performance optimized");
+        Log.w(TAG, "All sensors lost - closing window early");
+        timerHandler.removeCallbacks(timerRunnable);
+        connectionStatus.setValue("Disconnected from " + deviceName);
+        isConnected.setValue(false);
+        isConnecting = false;
 
-                // Clear buffers to free memory
-                inferenceUpperBackBuffer.clear();
-                inferenceLowerBackBuffer.clear();
-                inferenceUpperBackStartTime = 0;
-                inferenceLowerBackStartTime = 0;
+        if (windowRunning) {
+            stopWindowing();
+            emitWindow();
+        }
 
-                return;
+        handler.postDelayed(() -> {
+            if (isCycling && continuousMode && !hasConnectedLink()) {
+                scanForMissingDevices();
             }
+        }, 3500);
+    }
+
+    private void startWindowing() {
+        startNewSession();
+        windowRunning = true;
+        // Schedule on absolute uptime so windows don't drift with handler latency
+        nextWindowUptime = SystemClock.uptimeMillis() + WINDOW_LENGTH;
+        handler.postAtTime(windowRunnable, nextWindowUptime);
+        Log.d(TAG, "Continuous monitoring: windows every " + (WINDOW_LENGTH / 1000) + "s");
+    }
+
+    private void stopWindowing() {
+        handler.removeCallbacks(windowRunnable);
+        windowRunning = false;
+    }
 
-            if (inferenceUpperBackBuffer.isEmpty() || inferenceLowerBackBuffer.isEmpty()) {
-                Log.w(TAG, "Cannot save inference data - buffers are empty");
-                return;
+    private final Runnable windowRunnable = new Runnable() {
+        @Override
+        public void run() {
+            emitWindow();
+
+            if (isCycling && hasConnectedLink() && sessionsRef != null) {
+                startNewSession();
+                nextWindowUptime += WINDOW_LENGTH;
+                handler.postAtTime(this, nextWindowUptime);
+            } else {
+                windowRunning = false;
             }
+        }
+    };
+
+    /**
+     * Hands the finished window to the rest of the app exactly like a completed cycle.
+     */
+    private void emitWindow() {
+        Log.d(TAG, "════════════════════════════════════════");
+        Log.d(TAG, "✓ WINDOW COMPLETE: " + currentSessionId);
+        Log.d(TAG, "  Paired samples: " + samplePairer.getPairCount()
+                + ", unpaired dropped: " + samplePairer.getDroppedCount());
+        Log.d(TAG, "════════════════════════════════════════");
+
+        captureInferenceData();
+        flushSessionWrites();
+        completedSessionId.setValue(currentSessionId);
+        isCycleComplete.setValue(true);
+    }
 
-            Log.d(TAG, "💾 Saving inference arrays to Firebase (ML inference enabled):");
-            Log.d(TAG, "  Upper back: " + inferenceUpperBackBuffer.size() + " samples");
-            Log.d(TAG, "  Lower back: " + inferenceLowerBackBuffer.size() + " samples");
-
-            DatabaseReference sessionRef = sessionsRef.child(currentSessionId);
-
-            // ✅ Save arrays for ML inference
-            sessionRef.child("upperBackArray").setValue(inferenceUpperBackBuffer)
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "✓ Upper back array saved (for ML inference)");
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "✗ Failed to save upper back array: " + e.getMessage());
-                    });
-
-            sessionRef.child("lowerBackArray").setValue(inferenceLowerBackBuffer)
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "✓ Lower back array saved (for ML inference)");
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "✗ Failed to save lower back array: " + e.getMessage());
-                    });
-
-            // ✅ Clear buffers for next cycle
+    /**
+     * Sends the latest upperBack/lowerBack (and arrays) now, e.g. before the session is analyzed.
+     */
+    private void flushSessionWrites() {
+        writeBatcher.flush();
+        Log.d(TAG, "Firebase writes: " + writeBatcher.getStats());
+    }
+
+    /*
+     * Turn the cycle's inference buffers into the /predict payload and archive them to Firebase
+     * ONLY runs if ML inference is enabled - otherwise skips for performance
+     */
+    private synchronized void captureInferenceData() {
+        if (currentSessionId == null || sessionsRef == null) {
+            Log.w(TAG, "Cannot save inference data - no session or reference");
+            return;
+        }
+
+        // PERFORMANCE OPTIMIZATION: Skip array saving if ML inference is disabled
+        if (!isMLInferenceEnabled) {
+            Log.d(TAG, "⚡ Skipping array save (ML inference disabled) - performance optimized");
+
+            // Clear buffers to free memory
             inferenceUpperBackBuffer.clear();
             inferenceLowerBackBuffer.clear();
             inferenceUpperBackStartTime = 0;
             inferenceLowerBackStartTime = 0;
+
+            return;
         }
 
+        if (inferenceUpperBackBuffer.isEmpty() || inferenceLowerBackBuffer.isEmpty()) {
+            Log.w(TAG, "Cannot save inference data - buffers are empty");
+            return;
+        }
 
+        Log.d(TAG, "💾 Capturing inference arrays (ML inference enabled):");
+        Log.d(TAG, "  Upper back: " + inferenceUpperBackBuffer.size() + " samples");
+        Log.d(TAG, "  Lower back: " + inferenceLowerBackBuffer.size() + " samples");
+
+        // Resample onto one grid so the model gets index-paired samples
+        InferencePayload payload = alignInferenceBuffers();
+        latestInferencePayload = payload;
+
+        // ✅ Archive as compact quantized blobs; /predict no longer waits on this write
+        String sessionPath = sessionsPath + "/" + currentSessionId;
+        Map<String, Object> arrays = new HashMap<>();
+        arrays.put(sessionPath + "/" + UPPER_PACKED_KEY, payload.packUpper());
+        arrays.put(sessionPath + "/" + LOWER_PACKED_KEY, payload.packLower());
+        writeBatcher.setAll(arrays);
+
+        // ✅ Clear buffers for next cycle
+        inferenceUpperBackBuffer.clear();
+        inferenceLowerBackBuffer.clear();
+        inferenceUpperBackStartTime = 0;
+        inferenceLowerBackStartTime = 0;
+    }
 
-        @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                BluetoothGattCharacteristic characteristic = gatt.getService(UART_SERVICE_UUID).getCharacteristic(UART_TX_CHARACTERISTIC_UUID);
-                if (characteristic != null) {
-                    gatt.setCharacteristicNotification(characteristic, true);
-                    BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG);
-                    if (descriptor != null) {
-                        descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                        gatt.writeDescriptor(descriptor);
-                    }
-                }
-            }
+    /**
+     * The inference buffers resampled onto a shared grid. Sequential cycles are
+     * lined up by start time first. Falls back to the raw buffers if the streams
+     * can't be aligned.
+     */
+    private InferencePayload alignInferenceBuffers() {
+        int upperCount = inferenceUpperBackBuffer.size();
+        int lowerCount = inferenceLowerBackBuffer.size();
+        long timeOffset = dualMode ? 0
+                : inferenceLowerBackBuffer.get(0).timestamp - inferenceUpperBackBuffer.get(0).timestamp;
+
+        long[] upperTimes = new long[upperCount];
+        float[] upperData = new float[upperCount * StreamAligner.CHANNELS];
+        InferencePayload.toArrays(inferenceUpperBackBuffer, upperTimes, upperData);
+        long[] lowerTimes = new long[lowerCount];
+        float[] lowerData = new float[lowerCount * StreamAligner.CHANNELS];
+        InferencePayload.toArrays(inferenceLowerBackBuffer, lowerTimes, lowerData);
+
+        String userId = FirebaseAuth.getInstance().getCurrentUser() != null ?
+                FirebaseAuth.getInstance().getCurrentUser().getUid() : "unknown_user";
+
+        StreamAligner.Result aligned = new StreamAligner(ALIGNMENT_RATE_HZ, ALIGNMENT_INTERPOLATION)
+                .align(upperTimes, upperData, upperCount, lowerTimes, lowerData, lowerCount, timeOffset);
+        if (aligned == null) {
+            Log.w(TAG, "Could not align inference buffers - saving them unaligned");
+            return new InferencePayload(currentSessionId, userId,
+                    upperTimes, upperData, upperCount, lowerTimes, lowerData, lowerCount);
         }
 
-        @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            byte[] data = characteristic.getValue();
-            String dataChunk = new String(data);
-
-            synchronized (dataBuffer) {
-                dataBuffer.append(dataChunk);
-
-                String bufferContent = dataBuffer.toString();
-                if (bufferContent.contains("\r") || bufferContent.contains("\n")) {
-                    bufferContent = bufferContent.replace("\r\n", "\n").replace("\r", "\n");
-                    dataBuffer.setLength(0);
-                    dataBuffer.append(bufferContent);
-
-                    int newlineIndex;
-                    while ((newlineIndex = dataBuffer.indexOf("\n")) != -1) {
-                        final String dataString = dataBuffer.substring(0, newlineIndex).trim();
-                        dataBuffer.delete(0, newlineIndex + 1);
-
-                        if (dataString.isEmpty()) {
-                            continue;
-                        }
+        long[] times = new long[aligned.length];
+        for (int i = 0; i < aligned.length; i++) {
+            times[i] = aligned.timeAt(i);
+        }
+        Log.d(TAG, "  Aligned to " + aligned.length + " samples per sensor at "
+                + String.format(Locale.US, "%.2f", aligned.rateHz) + " Hz");
+        return new InferencePayload(currentSessionId, userId,
+                times, aligned.upper, aligned.length, times, aligned.lower, aligned.length);
+    }
 
-                        parseSplitMessage(dataString);
-                    }
-                }
+    private static SensorData toSensorData(long timestamp, float[] data, int index) {
+        int base = index * StreamAligner.CHANNELS;
+        return new SensorData(data[base], data[base + 1], data[base + 2],
+                data[base + 3], data[base + 4], data[base + 5], timestamp);
+    }
+
+    /**
+     * Reads a session's inference array, packed or in the legacy one-object-per-sample form
+     */
+    private static List<SensorData> readSensorArray(DataSnapshot sessionSnapshot,
+                                                    String packedKey, String legacyKey) {
+        List<SensorData> samples = new ArrayList<>();
+        DataSnapshot packed = sessionSnapshot.child(packedKey);
+        if (packed.exists()) {
+            ImuArrayCodec.Decoded decoded = ImuArrayCodec.decode(packed.getValue());
+            for (int i = 0; i < decoded.count; i++) {
+                samples.add(toSensorData(decoded.times[i], decoded.data, i));
+            }
+            return samples;
+        }
+
+        for (DataSnapshot reading : sessionSnapshot.child(legacyKey).getChildren()) {
+            SensorData data = reading.getValue(SensorData.class);
+            if (data != null) {
+                samples.add(data);
             }
         }
-    };  // END of gattCallback
+        return samples;
+    }
 
     private String generateSessionId() {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
         return "session_" + sdf.format(new Date());
     }
 
-    private void parseSplitMessage(String dataString) {
-//        Log.d(TAG, "📥 RAW DATA: " + dataString);  // ← ADD THIS LINE
-        try {
-            String[] parts = dataString.split("\\|");
+    /**
+     * Dual mode: one upper + lower sample taken at the same instant
+     */
+    private void onPairedSample(long timestamp, float[] upper, float[] lower) {
+        recordSample(ImuLineFramer.SENSOR_UPPER_BACK, timestamp,
+                upper[0], upper[1], upper[2], upper[3], upper[4], upper[5]);
+        recordSample(ImuLineFramer.SENSOR_LOWER_BACK, timestamp,
+                lower[0], lower[1], lower[2], lower[3], lower[4], lower[5]);
+    }
 
-            if (parts.length != 2) {
-                Log.w(TAG, "Malformed data packet (expected 2 parts): " + dataString);
-                return;
+    /**
+     * Handles one complete accel + gyro sample from a sensor link.
+     */
+    private void recordSample(int sensor, long currentTime,
+                              float ax, float ay, float az,
+                              float gx, float gy, float gz) {
+        ImuData imuData = new ImuData(ax, ay, az, gx, gy, gz);
+
+        // Every sample goes to the on-device store, whether or not ML arrays are uploaded
+        rawSampleStore.append(sensor, currentTime, ax, ay, az, gx, gy, gz);
+
+        // One read per sample, so a boundary can't split it across two sessions
+        String sessionId = currentSessionId;
+        if (sessionId != null && sessionsPath != null) {
+            if (!sessionId.equals(rawRangeSessionId)) {
+                rawRangeSessionId = sessionId;
+                writeBatcher.set(sessionsPath + "/" + sessionId + "/rawStartTime", currentTime);
             }
+            writeBatcher.set(sessionsPath + "/" + sessionId + "/rawEndTime", currentTime);
+        }
 
-            String identifier = parts[0];
-            String dataType = parts[1].substring(0, 1);
-            String[] values = parts[1].substring(2).split(",");
+        if (sessionId != null) {
+            SensorData sensorData = new SensorData(ax, ay, az, gx, gy, gz, currentTime);
 
-            if (values.length != 3) {
-                Log.w(TAG, "Malformed data values (expected 3 values): " + dataString);
-                return;
+            // Latest sample only - the batcher sends it with the next flush
+            if (sensor == ImuLineFramer.SENSOR_UPPER_BACK) {
+                writeBatcher.set(sessionsPath + "/" + sessionId + "/upperBack", sensorData.toMap());
+                upperBackData.postValue(imuData);
+            } else if (sensor == ImuLineFramer.SENSOR_LOWER_BACK) {
+                writeBatcher.set(sessionsPath + "/" + sessionId + "/lowerBack", sensorData.toMap());
+                lowerBackData.postValue(imuData);
             }
 
-            float x = Float.parseFloat(values[0]);
-            float y = Float.parseFloat(values[1]);
-            float z = Float.parseFloat(values[2]);
-
-            if (dataType.equals("A")) {
-                tempAccelX = x;
-                tempAccelY = y;
-                tempAccelZ = z;
-                hasAccelData = true;
-                currentSensor = identifier;
-
-            } else if (dataType.equals("G")) {
-                tempGyroX = x;
-                tempGyroY = y;
-                tempGyroZ = z;
-                hasGyroData = true;
-
-                if (hasAccelData && hasGyroData && currentSensor.equals(identifier)) {
-                    ImuData imuData = new ImuData(
-                            tempAccelX, tempAccelY, tempAccelZ,
-                            tempGyroX, tempGyroY, tempGyroZ
-                    );
-
-                    if (currentSessionId != null) {
-                        long currentTime = System.currentTimeMillis();
-
-                        SensorData sensorData = new SensorData(
-                                tempAccelX, tempAccelY, tempAccelZ,
-                                tempGyroX, tempGyroY, tempGyroZ,
-                                currentTime
-                        );
-
-                        // ✅ Save to Firebase with debug logging
-                        DatabaseReference sensorRef = sessionsRef.child(currentSessionId);
-                        if (identifier.equals("UB")) {
-                            Log.d(TAG, "💾 SAVING upperBack to session: " + currentSessionId);
-                            sensorRef.child("upperBack").setValue(sensorData)
-                                    .addOnSuccessListener(aVoid -> Log.d(TAG, "✓ upperBack SAVED"))
-                                    .addOnFailureListener(e -> Log.e(TAG, "✗ upperBack FAILED: " + e.getMessage()));
-                            upperBackData.postValue(imuData);
-                        } else if (identifier.equals("LB")) {
-//                            Log.d(TAG, "💾 SAVING lowerBack to session: " + currentSessionId);
-                            sensorRef.child("lowerBack").setValue(sensorData)
-                                    .addOnSuccessListener(aVoid -> Log.d(TAG, "✓ lowerBack SAVED"))
-                                    .addOnFailureListener(e -> Log.e(TAG, "✗ lowerBack FAILED: " + e.getMessage()));
-                            lowerBackData.postValue(imuData);
-                        }
+            // ✅ NEW: ALSO add to inference buffers (separate system)
+            synchronized (this) {
+                if (sensor == ImuLineFramer.SENSOR_UPPER_BACK) {
+                    if (inferenceUpperBackBuffer.isEmpty()) {
+                        inferenceUpperBackStartTime = currentTime;
+                    }
+                    inferenceUpperBackBuffer.add(sensorData);
 
-                        // ✅ NEW: ALSO add to inference buffers (separate system)
-                        if (identifier.equals("UB")) {
-                            if (inferenceUpperBackBuffer.isEmpty()) {
-                                inferenceUpperBackStartTime = currentTime;
-                            }
-                            inferenceUpperBackBuffer.add(sensorData);
-
-                        } else if (identifier.equals("LB")) {
-                            if (inferenceLowerBackBuffer.isEmpty()) {
-                                inferenceLowerBackStartTime = currentTime;
-                            }
-                            inferenceLowerBackBuffer.add(sensorData);
-                        }
+                } else if (sensor == ImuLineFramer.SENSOR_LOWER_BACK) {
+                    if (inferenceLowerBackBuffer.isEmpty()) {
+                        inferenceLowerBackStartTime = currentTime;
                     }
-                    hasAccelData = false;
-                    hasGyroData = false;
-                    currentSensor = "";
+                    inferenceLowerBackBuffer.add(sensorData);
                 }
             }
-        } catch (NumberFormatException e) {
-            Log.e(TAG, "Error parsing float values from: " + dataString, e);
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing split message: " + dataString, e);
         }
     }
 
+    /**
+     * Link used for commands - the upper back sensor when it is connected
+     */
+    private SensorLink getCommandLink() {
+        for (SensorLink link : links) {
+            if (link != null && link.isConnected()) {
+                return link;
+            }
+        }
+        return null;
+    }
+
     // ===== NEW: Send haptic feedback command to device =====
     /**
      * Sends a haptic feedback command to the currently connected device
      * @return true if command was queued successfully, false otherwise
      */
     public boolean sendHapticCommand() {
-        if (bluetoothGatt == null) {
+        SensorLink link = getCommandLink();
+        if (link == null) {
             Log.w(TAG, "Cannot send haptic command - not connected");
             return false;
         }
 
         try {
-            BluetoothGattCharacteristic rxCharacteristic = bluetoothGatt.getService(UART_SERVICE_UUID)
-                    .getCharacteristic(UART_RX_CHARACTERISTIC_UUID);
-
-            if (rxCharacteristic == null) {
-                Log.e(TAG, "RX characteristic not found!");
-                return false;
-            }
-
             // Simple command: "HAPTIC\n" (8 bytes)
             String command = "HAPTIC\n";
-            rxCharacteristic.setValue(command.getBytes());
-
-            boolean success = bluetoothGatt.writeCharacteristic(rxCharacteristic);
+            boolean success = link.writeCommand(command.getBytes(StandardCharsets.US_ASCII), delivered -> {
+                if (!delivered) {
+                    Log.e(TAG, "✗ Haptic command was not acknowledged by " + link.getDeviceName());
+                }
+            });
 
             if (success) {
-                Log.d(TAG, "✓ Haptic command sent: " + command.trim());
+                Log.d(TAG, "✓ Haptic command queued: " + command.trim());
             } else {
                 Log.e(TAG, "✗ Failed to send haptic command");
             }
@@ -749,196 +1200,29 @@ public class BluetoothViewModel extends AndroidViewModel {
 
     /**
      * Get the name of the currently connected device
+     * (the upper back sensor when both are connected)
      * @return device name or null if not connected
      */
     public String getDeviceName() {
-        if (bluetoothGatt != null && bluetoothGatt.getDevice() != null) {
-            return bluetoothGatt.getDevice().getName();
-        }
-        return null;
+        SensorLink link = getCommandLink();
+        return link != null ? link.getDeviceName() : null;
     }
 
     /**
-     * Callback for inference JSON generation
+     * Callback for inference payload loading
      */
-    public interface OnInferenceJSONGeneratedListener {
-        void onJSONGenerated(String json);
+    public interface OnInferencePayloadListener {
+        void onPayload(InferencePayload payload);
         void onError(String error);
     }
 
     /**
-     * Generate inference JSON from MOST RECENT session data (async)
-     * Uses the arrays saved during the last cycle
-     * Format: { user_id, sample_rate_hz, duration_seconds, sample_count, upper_back[], lower_back[] }
+     * The samples of a just-completed cycle, straight from memory
+     * @return null if {@code sessionId} isn't the last captured cycle
      */
-    public void generateInferenceJSON(OnInferenceJSONGeneratedListener listener) {
-        if (sessionsRef == null) {
-            Log.w(TAG, "No sessions reference available");
-            if (listener != null) {
-                listener.onError("No sessions reference");
-            }
-            return;
-        }
-
-        // Get current user ID
-        String userId = FirebaseAuth.getInstance().getCurrentUser() != null ?
-                FirebaseAuth.getInstance().getCurrentUser().getUid() : "unknown_user";
-
-        Log.d(TAG, "═══════════════════════════════════════════════════════════");
-        Log.d(TAG, "generateInferenceJSON called");
-        Log.d(TAG, "Current session ID in memory: " + currentSessionId);
-        Log.d(TAG, "═══════════════════════════════════════════════════════════");
-
-        // ✅ Find the MOST RECENT session with inference arrays
-        sessionsRef.orderByChild("timestamp").limitToLast(1)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        if (!snapshot.exists() || snapshot.getChildrenCount() == 0) {
-                            Log.e(TAG, "No sessions found in Firebase");
-                            if (listener != null) {
-                                listener.onError("No sessions found");
-                            }
-                            return;
-                        }
-
-                        // Get the most recent session
-                        DataSnapshot sessionSnapshot = null;
-                        for (DataSnapshot child : snapshot.getChildren()) {
-                            sessionSnapshot = child;  // Will be the last (most recent) one
-                        }
-
-                        if (sessionSnapshot == null) {
-                            if (listener != null) {
-                                listener.onError("No session data");
-                            }
-                            return;
-                        }
-
-                        String sessionId = sessionSnapshot.getKey();
-                        Log.d(TAG, "Generating inference JSON from session: " + sessionId);
-
-                        Log.d(TAG, "═══════════════════════════════════════════════════════════");
-                        Log.d(TAG, "INFERENCE SESSION FROM FIREBASE: " + sessionId);
-                        Log.d(TAG, "═══════════════════════════════════════════════════════════");
-
-                        try {
-                            // Get arrays from Firebase
-                            List<SensorData> upperBackArray = new ArrayList<>();
-                            List<SensorData> lowerBackArray = new ArrayList<>();
-
-                            DataSnapshot upperArraySnapshot = sessionSnapshot.child("upperBackArray");
-                            DataSnapshot lowerArraySnapshot = sessionSnapshot.child("lowerBackArray");
-
-                            // Parse upper back array
-                            for (DataSnapshot reading : upperArraySnapshot.getChildren()) {
-                                SensorData data = reading.getValue(SensorData.class);
-                                if (data != null) {
-                                    upperBackArray.add(data);
-                                }
-                            }
-
-                            // Parse lower back array
-                            for (DataSnapshot reading : lowerArraySnapshot.getChildren()) {
-                                SensorData data = reading.getValue(SensorData.class);
-                                if (data != null) {
-                                    lowerBackArray.add(data);
-                                }
-                            }
-
-                            if (upperBackArray.isEmpty() || lowerBackArray.isEmpty()) {
-                                Log.e(TAG, "No array data found for inference");
-                                if (listener != null) {
-                                    listener.onError("No sensor data arrays found");
-                                }
-                                return;
-                            }
-
-                            // Calculate metadata
-                            int sampleCount = upperBackArray.size();
-
-                            long firstTimestamp = upperBackArray.get(0).timestamp;
-                            long lastTimestamp = upperBackArray.get(upperBackArray.size() - 1).timestamp;
-                            long durationMs = lastTimestamp - firstTimestamp;
-
-                            float sampleRateHz = durationMs > 0 ?
-                                    (sampleCount * 1000f) / durationMs : 0f;
-                            float durationSeconds = durationMs / 1000f;
-
-                            // Build JSON
-                            StringBuilder json = new StringBuilder();
-                            json.append("{\n");
-                            json.append("  \"user_id\": \"").append(userId).append("\",\n");
-                            json.append("  \"sample_rate_hz\": ").append(String.format(Locale.US, "%.2f", sampleRateHz)).append(",\n");
-                            json.append("  \"duration_seconds\": ").append(String.format(Locale.US, "%.2f", durationSeconds)).append(",\n");
-                            json.append("  \"sample_count\": ").append(sampleCount).append(",\n");
-
-                            // Upper back array (without timestamps)
-                            json.append("  \"upper_back\": [\n");
-                            for (int i = 0; i < upperBackArray.size(); i++) {
-                                SensorData reading = upperBackArray.get(i);
-                                json.append("    {");
-                                json.append("\"ax\": ").append(String.format(Locale.US, "%.4f", reading.accelX)).append(", ");
-                                json.append("\"ay\": ").append(String.format(Locale.US, "%.4f", reading.accelY)).append(", ");
-                                json.append("\"az\": ").append(String.format(Locale.US, "%.4f", reading.accelZ)).append(", ");
-                                json.append("\"gx\": ").append(String.format(Locale.US, "%.4f", reading.gyroX)).append(", ");
-                                json.append("\"gy\": ").append(String.format(Locale.US, "%.4f", reading.gyroY)).append(", ");
-                                json.append("\"gz\": ").append(String.format(Locale.US, "%.4f", reading.gyroZ));
-                                json.append("}");
-                                if (i < upperBackArray.size() - 1) {
-                                    json.append(",");
-                                }
-                                json.append("\n");
-                            }
-                            json.append("  ],\n");
-
-                            // Lower back array (without timestamps)
-                            json.append("  \"lower_back\": [\n");
-                            for (int i = 0; i < lowerBackArray.size(); i++) {
-                                SensorData reading = lowerBackArray.get(i);
-                                json.append("    {");
-                                json.append("\"ax\": ").append(String.format(Locale.US, "%.4f", reading.accelX)).append(", ");
-                                json.append("\"ay\": ").append(String.format(Locale.US, "%.4f", reading.accelY)).append(", ");
-                                json.append("\"az\": ").append(String.format(Locale.US, "%.4f", reading.accelZ)).append(", ");
-                                json.append("\"gx\": ").append(String.format(Locale.US, "%.4f", reading.gyroX)).append(", ");
-                                json.append("\"gy\": ").append(String.format(Locale.US, "%.4f", reading.gyroY)).append(", ");
-                                json.append("\"gz\": ").append(String.format(Locale.US, "%.4f", reading.gyroZ));
-                                json.append("}");
-                                if (i < lowerBackArray.size() - 1) {
-                                    json.append(",");
-                                }
-                                json.append("\n");
-                            }
-                            json.append("  ]\n");
-                            json.append("}");
-
-                            Log.d(TAG, "✓ Inference JSON generated:");
-                            Log.d(TAG, "  Session: " + sessionId);
-                            Log.d(TAG, "  Sample count: " + sampleCount);
-                            Log.d(TAG, "  Sample rate: " + String.format(Locale.US, "%.2f", sampleRateHz) + " Hz");
-                            Log.d(TAG, "  Duration: " + String.format(Locale.US, "%.2f", durationSeconds) + " seconds");
-                            Log.d(TAG, "  JSON size: " + json.length() + " characters");
-
-                            if (listener != null) {
-                                listener.onJSONGenerated(json.toString());
-                            }
-
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error generating inference JSON: " + e.getMessage(), e);
-                            if (listener != null) {
-                                listener.onError(e.getMessage());
-                            }
-                        }
-                    }
-
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        Log.e(TAG, "Error reading session for inference: " + error.getMessage());
-                        if (listener != null) {
-                            listener.onError(error.getMessage());
-                        }
-                    }
-                });
+    InferencePayload getInferencePayload(String sessionId) {
+        InferencePayload payload = latestInferencePayload;
+        return payload != null && payload.sessionId.equals(sessionId) ? payload : null;
     }
 
     /**
@@ -946,20 +1230,40 @@ public class BluetoothViewModel extends AndroidViewModel {
      */
     public interface OnInferenceUploadListener {
         void onUploadSuccess(String response);
-        void onUploadFailure(String error);
+
+        /**
+         * @param retryable false if the server answered and rejected the request
+         */
+        void onUploadFailure(String error, boolean retryable);
+    }
+
+    /**
+     * Hands a completed cycle to the inference dispatcher; results arrive on getInferenceResult()
+     */
+    void dispatchInference(String serverUrl, InferencePayload payload) {
+        inferenceDispatcher.submit(serverUrl, payload);
+    }
+
+    /**
+     * Latest /predict outcome; a fallback result means the server is being skipped for now
+     */
+    LiveData<InferenceDispatcher.Result> getInferenceResult() {
+        return inferenceResult;
     }
 
     /**
-     * Upload inference JSON to Python backend
+     * Upload inference data to Python backend
      * @param serverUrl The backend server URL (e.g., "https://abcd-1234.ngrok-free.app")
-     * @param inferenceJSON The JSON string to upload
+     * @param cycles The cycles to send; more than one only if the server accepts batches
+     * @param budgetMs Whole-call deadline, after which OkHttp cancels the request
      * @param listener Callback for result
      */
-    public void uploadInferenceData(String serverUrl, String inferenceJSON, OnInferenceUploadListener listener) {
+    void uploadInferenceData(String serverUrl, List<InferencePayload> cycles, long budgetMs,
+                             OnInferenceUploadListener listener) {
         if (serverUrl == null || serverUrl.isEmpty()) {
             Log.e(TAG, "Server URL is empty");
             if (listener != null) {
-                listener.onUploadFailure("Server URL not configured");
+                listener.onUploadFailure("Server URL not configured", false);
             }
             return;
         }
@@ -978,24 +1282,43 @@ public class BluetoothViewModel extends AndroidViewModel {
             }
         }
 
-        Log.d(TAG, "Uploading inference data to: " + serverUrl);
+        // Binary and/or gzip bodies only for servers that advertised them via /test
+        ServerCapabilities capabilities = ServerCapabilities.getInstance(getApplication());
+        if (!capabilities.isKnown(serverUrl)) {
+            capabilities.probe(serverUrl, MLHttpClient.forTest());
+        }
+        boolean binary = cycles.size() == 1 && capabilities.supports(serverUrl, ServerCapabilities.IMU_BINARY);
+        boolean gzip = capabilities.supports(serverUrl, ServerCapabilities.GZIP);
+
+        Log.d(TAG, "Uploading " + cycles.size() + " cycle(s) of inference data to: " + serverUrl
+                + " (" + (binary ? "binary" : "json") + (gzip ? ", gzip" : "") + ")");
 
         try {
-            okhttp3.MediaType JSON = okhttp3.MediaType.get("application/json; charset=utf-8");
-            okhttp3.RequestBody body = okhttp3.RequestBody.create(inferenceJSON, JSON);
+            okhttp3.RequestBody body;
+            if (cycles.size() > 1) {
+                body = InferencePayload.asBatchRequestBody(cycles);
+            } else if (binary) {
+                body = cycles.get(0).asBinaryRequestBody();
+            } else {
+                body = cycles.get(0).asRequestBody();
+            }
 
-            okhttp3.Request request = new okhttp3.Request.Builder()
-                    .url(serverUrl)
-                    .post(body)
-                    .build();
+            okhttp3.Request.Builder requestBuilder = new okhttp3.Request.Builder().url(serverUrl);
+            if (gzip) {
+                requestBuilder.header("Content-Encoding", "gzip");
+                body = ServerCapabilities.gzip(body);
+            }
+            okhttp3.Request request = requestBuilder.post(body).build();
 
             // Send request asynchronously
-            httpClient.newCall(request).enqueue(new okhttp3.Callback() {
+            okhttp3.Call call = MLHttpClient.forPredict().newCall(request);
+            call.timeout().timeout(budgetMs, TimeUnit.MILLISECONDS);
+            call.enqueue(new okhttp3.Callback() {
                 @Override
                 public void onFailure(@NonNull okhttp3.Call call, @NonNull IOException e) {
                     Log.e(TAG, "Inference upload failed: " + e.getMessage(), e);
                     if (listener != null) {
-                        listener.onUploadFailure(e.getMessage());
+                        listener.onUploadFailure(e.getMessage(), true);
                     }
                 }
 
@@ -1011,7 +1334,9 @@ public class BluetoothViewModel extends AndroidViewModel {
                         }
                     } else {
                         if (listener != null) {
-                            listener.onUploadFailure("Server error: " + response.code());
+                            // 5xx/429: server unhealthy or overloaded, worth retrying
+                            int code = response.code();
+                            listener.onUploadFailure("Server error: " + code, code >= 500 || code == 429);
                         }
                     }
                 }
@@ -1020,7 +1345,7 @@ public class BluetoothViewModel extends AndroidViewModel {
         } catch (Exception e) {
             Log.e(TAG, "Error creating inference request: " + e.getMessage(), e);
             if (listener != null) {
-                listener.onUploadFailure(e.getMessage());
+                listener.onUploadFailure(e.getMessage(), false);
             }
         }
     }
@@ -1030,7 +1355,8 @@ public class BluetoothViewModel extends AndroidViewModel {
      * @return true if command sent successfully, false otherwise
      */
     public boolean sendSlouchIndicator() {
-        if (bluetoothGatt == null) {
+        SensorLink link = getCommandLink();
+        if (link == null) {
             Log.w(TAG, "Cannot send slouch indicator - not connected");
             return false;
         }
@@ -1041,22 +1367,16 @@ public class BluetoothViewModel extends AndroidViewModel {
         }
 
         try {
-            BluetoothGattCharacteristic rxCharacteristic = bluetoothGatt.getService(UART_SERVICE_UUID)
-                    .getCharacteristic(UART_RX_CHARACTERISTIC_UUID);
-
-            if (rxCharacteristic == null) {
-                Log.e(TAG, "RX characteristic not found!");
-                return false;
-            }
-
             // Simple command: "SLOUCH\n"
             String command = "SLOUCH\n";
-            rxCharacteristic.setValue(command.getBytes());
-
-            boolean success = bluetoothGatt.writeCharacteristic(rxCharacteristic);
+            boolean success = link.writeCommand(command.getBytes(StandardCharsets.US_ASCII), delivered -> {
+                if (!delivered) {
+                    Log.e(TAG, "✗ Slouch indicator was not acknowledged by " + link.getDeviceName());
+                }
+            });
 
             if (success) {
-                Log.d(TAG, "✓ Slouch indicator command sent: " + command.trim());
+                Log.d(TAG, "✓ Slouch indicator command queued: " + command.trim());
             } else {
                 Log.e(TAG, "✗ Failed to send slouch indicator command");
             }
@@ -1082,10 +1402,16 @@ public class BluetoothViewModel extends AndroidViewModel {
         return completedSessionId;
     }
 
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        inferenceDispatcher.shutdown();
+    }
+
     /**
-     * Generate inference JSON from a SPECIFIC session (not querying)
+     * Loads a SPECIFIC session's archived arrays, for when the cycle is no longer in memory
      */
-    public void generateInferenceJSONForSession(String sessionId, OnInferenceJSONGeneratedListener listener) {
+    void loadInferencePayload(String sessionId, OnInferencePayloadListener listener) {
         if (sessionsRef == null || sessionId == null) {
             Log.w(TAG, "No sessions reference or sessionId");
             if (listener != null) {
@@ -1097,9 +1423,7 @@ public class BluetoothViewModel extends AndroidViewModel {
         String userId = FirebaseAuth.getInstance().getCurrentUser() != null ?
                 FirebaseAuth.getInstance().getCurrentUser().getUid() : "unknown_user";
 
-        Log.d(TAG, "═══════════════════════════════════════════════════════════");
-        Log.d(TAG, "generateInferenceJSONForSession: " + sessionId);
-        Log.d(TAG, "═══════════════════════════════════════════════════════════");
+        Log.d(TAG, "loadInferencePayload: " + sessionId);
 
         // Fetch the SPECIFIC session by ID
         sessionsRef.child(sessionId).addListenerForSingleValueEvent(new ValueEventListener() {
@@ -1115,104 +1439,26 @@ public class BluetoothViewModel extends AndroidViewModel {
 
                 try {
                     // Get arrays from Firebase
-                    List<SensorData> upperBackArray = new ArrayList<>();
-                    List<SensorData> lowerBackArray = new ArrayList<>();
-
-                    DataSnapshot upperArraySnapshot = sessionSnapshot.child("upperBackArray");
-                    DataSnapshot lowerArraySnapshot = sessionSnapshot.child("lowerBackArray");
-
-                    Log.d(TAG, "upperBackArray count: " + upperArraySnapshot.getChildrenCount());
-                    Log.d(TAG, "lowerBackArray count: " + lowerArraySnapshot.getChildrenCount());
-
-                    // Parse upper back array
-                    for (DataSnapshot reading : upperArraySnapshot.getChildren()) {
-                        SensorData data = reading.getValue(SensorData.class);
-                        if (data != null) {
-                            upperBackArray.add(data);
-                        }
-                    }
+                    InferencePayload payload = InferencePayload.fromSamples(sessionId, userId,
+                            readSensorArray(sessionSnapshot, UPPER_PACKED_KEY, "upperBackArray"),
+                            readSensorArray(sessionSnapshot, LOWER_PACKED_KEY, "lowerBackArray"));
 
-                    // Parse lower back array
-                    for (DataSnapshot reading : lowerArraySnapshot.getChildren()) {
-                        SensorData data = reading.getValue(SensorData.class);
-                        if (data != null) {
-                            lowerBackArray.add(data);
-                        }
-                    }
-
-                    if (upperBackArray.isEmpty() || lowerBackArray.isEmpty()) {
+                    if (payload.isEmpty()) {
                         Log.e(TAG, "No array data found for session: " + sessionId);
-                        Log.e(TAG, "  upperBackArray size: " + upperBackArray.size());
-                        Log.e(TAG, "  lowerBackArray size: " + lowerBackArray.size());
                         if (listener != null) {
                             listener.onError("No sensor data arrays found for this session");
                         }
                         return;
                     }
 
-                    // Calculate metadata
-                    int sampleCount = upperBackArray.size();
-
-                    long firstTimestamp = upperBackArray.get(0).timestamp;
-                    long lastTimestamp = upperBackArray.get(upperBackArray.size() - 1).timestamp;
-                    long durationMs = lastTimestamp - firstTimestamp;
-
-                    float sampleRateHz = durationMs > 0 ?
-                            (sampleCount * 1000f) / durationMs : 0f;
-                    float durationSeconds = durationMs / 1000f;
-
-                    // Build JSON (same as before)
-                    StringBuilder json = new StringBuilder();
-                    json.append("{\n");
-                    json.append("  \"user_id\": \"").append(userId).append("\",\n");
-                    json.append("  \"sample_rate_hz\": ").append(String.format(Locale.US, "%.2f", sampleRateHz)).append(",\n");
-                    json.append("  \"duration_seconds\": ").append(String.format(Locale.US, "%.2f", durationSeconds)).append(",\n");
-                    json.append("  \"sample_count\": ").append(sampleCount).append(",\n");
-
-                    // Upper back array
-                    json.append("  \"upper_back\": [\n");
-                    for (int i = 0; i < upperBackArray.size(); i++) {
-                        SensorData reading = upperBackArray.get(i);
-                        json.append("    {");
-                        json.append("\"ax\": ").append(String.format(Locale.US, "%.4f", reading.accelX)).append(", ");
-                        json.append("\"ay\": ").append(String.format(Locale.US, "%.4f", reading.accelY)).append(", ");
-                        json.append("\"az\": ").append(String.format(Locale.US, "%.4f", reading.accelZ)).append(", ");
-                        json.append("\"gx\": ").append(String.format(Locale.US, "%.4f", reading.gyroX)).append(", ");
-                        json.append("\"gy\": ").append(String.format(Locale.US, "%.4f", reading.gyroY)).append(", ");
-                        json.append("\"gz\": ").append(String.format(Locale.US, "%.4f", reading.gyroZ));
-                        json.append("}");
-                        if (i < upperBackArray.size() - 1) json.append(",");
-                        json.append("\n");
-                    }
-                    json.append("  ],\n");
-
-                    // Lower back array
-                    json.append("  \"lower_back\": [\n");
-                    for (int i = 0; i < lowerBackArray.size(); i++) {
-                        SensorData reading = lowerBackArray.get(i);
-                        json.append("    {");
-                        json.append("\"ax\": ").append(String.format(Locale.US, "%.4f", reading.accelX)).append(", ");
-                        json.append("\"ay\": ").append(String.format(Locale.US, "%.4f", reading.accelY)).append(", ");
-                        json.append("\"az\": ").append(String.format(Locale.US, "%.4f", reading.accelZ)).append(", ");
-                        json.append("\"gx\": ").append(String.format(Locale.US, "%.4f", reading.gyroX)).append(", ");
-                        json.append("\"gy\": ").append(String.format(Locale.US, "%.4f", reading.gyroY)).append(", ");
-                        json.append("\"gz\": ").append(String.format(Locale.US, "%.4f", reading.gyroZ));
-                        json.append("}");
-                        if (i < lowerBackArray.size() - 1) json.append(",");
-                        json.append("\n");
-                    }
-                    json.append("  ]\n");
-                    json.append("}");
-
-                    Log.d(TAG, "✓ Inference JSON generated for session: " + sessionId);
-                    Log.d(TAG, "  Sample count: " + sampleCount);
-
+                    Log.d(TAG, "✓ Inference payload loaded for session: " + sessionId
+                            + " (" + payload.getSampleCount() + " samples)");
                     if (listener != null) {
-                        listener.onJSONGenerated(json.toString());
+                        listener.onPayload(payload);
                     }
 
                 } catch (Exception e) {
-                    Log.e(TAG, "Error generating inference JSON: " + e.getMessage(), e);
+                    Log.e(TAG, "Error reading inference arrays: " + e.getMessage(), e);
                     if (listener != null) {
                         listener.onError(e.getMessage());
                     }
@@ -1228,6 +1474,4 @@ public class BluetoothViewModel extends AndroidViewModel {
             }
         });
     }
-
-
-}
\ No newline at end of file
+}
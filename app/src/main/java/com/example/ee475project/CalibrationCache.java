@@ -0,0 +1,253 @@
+package com.example.ee475project;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide copy of the signed-in user's calibration_data.
+ *
+ * The last known calibration is kept in memory and in SharedPreferences, so
+ * analysis can start without a network round trip. A persistent listener on
+ * calibration_data/{uid} keeps it fresh; a new calibrationTimestamp replaces the
+ * cached copy. CalibrationHelper pushes a freshly saved calibration in directly.
+ *
+ * Callbacks run on the main thread.
+ */
+class CalibrationCache {
+
+    private static final String TAG = "CalibrationCache";
+    private static final String PREFS_NAME = "CalibrationCache";
+
+    private static volatile CalibrationCache instance;
+
+    /**
+     * data is null when the user hasn't calibrated
+     */
+    interface Callback {
+        void onCalibration(CalibrationData data);
+
+        void onError(String error);
+    }
+
+    private final SharedPreferences prefs;
+    private final List<Callback> waiting = new ArrayList<>();
+
+    private String userId;
+    private DatabaseReference calibrationRef;
+    private ValueEventListener calibrationListener;
+
+    private CalibrationData calibration;
+    private boolean known = false;  // calibration reflects disk or server state (null = none)
+
+    static CalibrationCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CalibrationCache.class) {
+                if (instance == null) {
+                    instance = new CalibrationCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private CalibrationCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Hands over the calibration right away if known, otherwise after the first server read.
+     */
+    synchronized void get(Callback callback) {
+        ensureUser();
+        if (known) {
+            callback.onCalibration(calibration);
+        } else {
+            waiting.add(callback);
+        }
+    }
+
+    /**
+     * Starts the listener (and disk load) early, e.g. when the home screen opens.
+     */
+    synchronized void prefetch() {
+        ensureUser();
+    }
+
+    /**
+     * A calibration that was just saved; skips waiting for the listener to echo it.
+     */
+    synchronized void put(CalibrationData data) {
+        ensureUser();
+        update(data);
+    }
+
+    /**
+     * Calibration was reset.
+     */
+    synchronized void clear() {
+        ensureUser();
+        update(null);
+    }
+
+    /** Re-targets the cache when the signed-in user changes. Caller holds the lock. */
+    private void ensureUser() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        String uid = user != null ? user.getUid() : null;
+        if (uid == null ? userId == null : uid.equals(userId)) {
+            return;
+        }
+
+        if (calibrationRef != null) {
+            calibrationRef.removeEventListener(calibrationListener);
+        }
+        userId = uid;
+        calibration = null;
+        known = false;
+        calibrationRef = null;
+        if (uid == null) {
+            return;
+        }
+
+        loadFromDisk();
+
+        calibrationRef = FirebaseDatabase.getInstance()
+                .getReference("calibration_data")
+                .child(uid);
+        calibrationListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                CalibrationData data = snapshot.exists() ? snapshot.getValue(CalibrationData.class) : null;
+                synchronized (CalibrationCache.this) {
+                    if (uid.equals(userId)) {
+                        update(data);
+                    }
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Calibration listener cancelled: " + error.getMessage());
+                List<Callback> failed;
+                synchronized (CalibrationCache.this) {
+                    failed = new ArrayList<>(waiting);
+                    waiting.clear();
+                }
+                for (Callback callback : failed) {
+                    callback.onError("Failed to load calibration: " + error.getMessage());
+                }
+            }
+        };
+        calibrationRef.addValueEventListener(calibrationListener);
+    }
+
+    /** Caller holds the lock. */
+    private void update(CalibrationData data) {
+        boolean changed = !known
+                || (calibration == null) != (data == null)
+                || (data != null && data.calibrationTimestamp != calibration.calibrationTimestamp);
+        calibration = data;
+        known = true;
+
+        if (changed) {
+            Log.d(TAG, data != null
+                    ? "✓ Calibration cached (timestamp " + data.calibrationTimestamp + ")"
+                    : "No calibration for this user");
+            saveToDisk();
+        }
+
+        for (Callback callback : waiting) {
+            callback.onCalibration(data);
+        }
+        waiting.clear();
+    }
+
+    // ===== Disk copy =====
+
+    private void saveToDisk() {
+        SharedPreferences.Editor editor = prefs.edit();
+        if (calibration == null) {
+            editor.putString(userId, "");
+        } else {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("upperBackUpright", toJson(calibration.upperBackUpright));
+                json.put("upperBackSlouch", toJson(calibration.upperBackSlouch));
+                json.put("lowerBackUpright", toJson(calibration.lowerBackUpright));
+                json.put("lowerBackSlouch", toJson(calibration.lowerBackSlouch));
+                json.put("upperBackThreshold", calibration.upperBackThreshold);
+                json.put("lowerBackThreshold", calibration.lowerBackThreshold);
+                json.put("calibrationTimestamp", calibration.calibrationTimestamp);
+                json.put("isCalibrated", calibration.isCalibrated);
+                editor.putString(userId, json.toString());
+            } catch (JSONException e) {
+                Log.e(TAG, "Failed to store calibration: " + e.getMessage());
+                editor.remove(userId);
+            }
+        }
+        editor.apply();
+    }
+
+    private void loadFromDisk() {
+        String stored = prefs.getString(userId, null);
+        if (stored == null) {
+            return;  // Never seen - wait for the server
+        }
+        if (stored.isEmpty()) {
+            known = true;  // Last known state: not calibrated
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(stored);
+            CalibrationData data = new CalibrationData();
+            data.upperBackUpright = fromJson(json.optJSONObject("upperBackUpright"));
+            data.upperBackSlouch = fromJson(json.optJSONObject("upperBackSlouch"));
+            data.lowerBackUpright = fromJson(json.optJSONObject("lowerBackUpright"));
+            data.lowerBackSlouch = fromJson(json.optJSONObject("lowerBackSlouch"));
+            data.upperBackThreshold = (float) json.getDouble("upperBackThreshold");
+            data.lowerBackThreshold = (float) json.getDouble("lowerBackThreshold");
+            data.calibrationTimestamp = json.getLong("calibrationTimestamp");
+            data.isCalibrated = json.getBoolean("isCalibrated");
+            calibration = data;
+            known = true;
+            Log.d(TAG, "💾 Calibration loaded from disk (timestamp " + data.calibrationTimestamp + ")");
+        } catch (JSONException e) {
+            Log.e(TAG, "Discarding stored calibration: " + e.getMessage());
+        }
+    }
+
+    private static Object toJson(SensorAngles angles) throws JSONException {
+        if (angles == null) {
+            return JSONObject.NULL;
+        }
+        JSONObject json = new JSONObject();
+        json.put("roll", angles.roll);
+        json.put("pitch", angles.pitch);
+        json.put("yaw", angles.yaw);
+        return json;
+    }
+
+    private static SensorAngles fromJson(JSONObject json) {
+        if (json == null) {
+            return null;
+        }
+        return new SensorAngles((float) json.optDouble("roll"), (float) json.optDouble("pitch"),
+                (float) json.optDouble("yaw"));
+    }
+}
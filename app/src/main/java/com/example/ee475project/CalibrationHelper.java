@@ -551,6 +551,7 @@ public class CalibrationHelper {
         calibrationRef.setValue(calibrationData)
                 .addOnSuccessListener(aVoid -> {
                     Log.d(TAG, "✓ Calibration saved to Firebase successfully!");
+                    CalibrationCache.getInstance(context).put(calibrationData);
 
                     currentStep = CalibrationStep.COMPLETE;
 
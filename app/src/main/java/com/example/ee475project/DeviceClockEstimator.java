@@ -0,0 +1,160 @@
+package com.example.ee475project;
+
+/**
+ * Maps a sensor-side tick counter onto the phone's elapsedRealtimeNanos clock.
+ *
+ * Samples reach the phone in bursts, one per BLE connection event, so arrival
+ * time alone is jittery. The sensor's own counter is evenly spaced, so this
+ * fits a line through recent (tick, arrival) points:
+ *  - slope: least squares over the last WINDOW points. This is the tick period
+ *    in nanoseconds and absorbs the crystal drift between the two clocks.
+ *  - offset: the lower envelope of the points, i.e. the smallest transport delay
+ *    seen in the window. Delay is always positive, so the fastest packet is the
+ *    best estimate of when samples were actually taken.
+ *
+ * The tick can be a device timestamp in microseconds or just the sample sequence
+ * number; the fitted slope is the real period either way. Without ticks the
+ * arrival time is used as-is. Output never goes backwards and never runs ahead
+ * of the arrival time.
+ *
+ * Not thread-safe: use one instance per sensor stream.
+ */
+class DeviceClockEstimator {
+
+    static final long NO_TICK = Long.MIN_VALUE;
+
+    private static final int WINDOW = 256;          // Points in the fit
+    private static final int MIN_POINTS = 16;       // Use arrival time until the fit has this many
+    private static final int REFIT_INTERVAL = 16;   // Points between offset (envelope) updates
+
+    // Points relative to the first one, to keep the doubles precise
+    private final double[] ticks = new double[WINDOW];
+    private final double[] hosts = new double[WINDOW];
+    private int count = 0;
+    private int next = 0;
+    private int sinceRefit = 0;
+
+    private long originTick = NO_TICK;
+    private long originHost;
+
+    // Current fit: host = originHost + offset + slope * (tick - originTick)
+    private double slope = 0;
+    private double offset = 0;
+    private boolean fitted = false;
+
+    private long lastTick = NO_TICK;
+    private long lastOutput = Long.MIN_VALUE;
+
+    /**
+     * Best estimate of when the sample was taken, in elapsedRealtimeNanos.
+     * @param tick unwrapped device counter, or {@link #NO_TICK}
+     * @param arrivalNanos elapsedRealtimeNanos when the notification arrived
+     */
+    long toHostNanos(long tick, long arrivalNanos) {
+        long estimate = arrivalNanos;
+        if (tick != NO_TICK) {
+            if (lastTick != NO_TICK && tick < lastTick) {
+                reset();  // Counter went backwards: the sensor restarted
+            }
+            lastTick = tick;
+            addPoint(tick, arrivalNanos);
+            if (fitted) {
+                estimate = originHost + Math.round(offset + slope * (tick - originTick));
+                if (estimate > arrivalNanos) {
+                    estimate = arrivalNanos;  // Can't have been sampled after it arrived
+                }
+            }
+        }
+
+        if (estimate <= lastOutput) {
+            estimate = lastOutput + 1;
+        }
+        lastOutput = estimate;
+        return estimate;
+    }
+
+    /**
+     * Ticks per second of phone time, or 0 before the fit converges.
+     * With sequence numbers as ticks this is the true sample rate.
+     */
+    double getTickRateHz() {
+        return fitted && slope > 0 ? 1e9 / slope : 0;
+    }
+
+    boolean isFitted() {
+        return fitted;
+    }
+
+    /**
+     * Drops the fit (e.g. new connection or counter). Output stays monotonic across resets.
+     */
+    void reset() {
+        count = 0;
+        next = 0;
+        sinceRefit = 0;
+        originTick = NO_TICK;
+        lastTick = NO_TICK;
+        fitted = false;
+    }
+
+    private void addPoint(long tick, long hostNanos) {
+        if (originTick == NO_TICK) {
+            originTick = tick;
+            originHost = hostNanos;
+        }
+        double t = tick - originTick;
+        double h = hostNanos - originHost;
+
+        ticks[next] = t;
+        hosts[next] = h;
+        next = (next + 1) % WINDOW;
+        if (count < WINDOW) {
+            count++;
+        }
+
+        if (count >= MIN_POINTS && (!fitted || ++sinceRefit >= REFIT_INTERVAL)) {
+            refit();
+            sinceRefit = 0;
+        }
+    }
+
+    private void refit() {
+        // Two-pass (mean-centred) least squares stays precise after hours of ticks
+        double meanT = 0;
+        double meanH = 0;
+        for (int i = 0; i < count; i++) {
+            meanT += ticks[i];
+            meanH += hosts[i];
+        }
+        meanT /= count;
+        meanH /= count;
+
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < count; i++) {
+            double dt = ticks[i] - meanT;
+            covariance += dt * (hosts[i] - meanH);
+            variance += dt * dt;
+        }
+        if (variance <= 0) {
+            return;  // All ticks identical - nothing to fit yet
+        }
+        double newSlope = covariance / variance;
+        if (newSlope <= 0) {
+            return;
+        }
+
+        // Lower envelope: the point with the least delay sets the offset
+        double minResidual = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double residual = hosts[i] - newSlope * ticks[i];
+            if (residual < minResidual) {
+                minResidual = residual;
+            }
+        }
+
+        slope = newSlope;
+        offset = minResidual;
+        fitted = true;
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.ee475project;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.ValueEventListener;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single funnel for Realtime Database writes.
+ *
+ * Callers hand over (path, value) pairs relative to the database root; only the
+ * newest value per path is kept (ServerValue.increment()s to one path are summed). Pending values go out as one multi-location
+ * updateChildren() at the root when the flush interval elapses, when
+ * MAX_BATCH_PATHS are pending, or when a caller forces {@link #flush()}.
+ * {@link #setAll} puts a group of paths in the same update, so they commit
+ * atomically (e.g. session result + daily stats).
+ *
+ * Offline, batches are handed to the database client the same way: with
+ * persistence enabled (MainActivity) it keeps them on disk and sends them on
+ * reconnect, and local reads see them straight away.
+ *
+ * Values must be plain JSON types (Map, List, String, Number, Boolean, or null to
+ * delete), not POJOs. Safe to call from any thread; sends run on the main looper.
+ */
+class FirebaseWriteBatcher {
+
+    private static final String TAG = "FirebaseWriteBatcher";
+
+    static final long FLUSH_INTERVAL = 5000;    // Longest a write waits
+    static final int MAX_BATCH_PATHS = 200;     // Flush early once this many paths are pending
+    // Left behind by versions that kept their own offline queue
+    private static final String LEGACY_QUEUE_FILE = "pending_writes.json";
+
+    private static volatile FirebaseWriteBatcher instance;
+
+    private final DatabaseReference root;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    // Closed batches waiting to be sent (oldest first), then the open one
+    private final ArrayDeque<Map<String, Object>> sealed = new ArrayDeque<>();
+    private Map<String, Object> pending = new LinkedHashMap<>();
+
+    private boolean connected = false;
+    private boolean flushScheduled = false;
+    private final List<Runnable> connectWaiters = new ArrayList<>();
+
+    private long putCount = 0;
+    private long writeCount = 0;
+
+    static FirebaseWriteBatcher getInstance(Context context) {
+        if (instance == null) {
+            synchronized (FirebaseWriteBatcher.class) {
+                if (instance == null) {
+                    instance = new FirebaseWriteBatcher(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private FirebaseWriteBatcher(Context context) {
+        FirebaseDatabase database = FirebaseDatabase.getInstance();
+        root = database.getReference();
+        File legacyQueue = new File(context.getFilesDir(), LEGACY_QUEUE_FILE);
+        if (legacyQueue.exists() && !legacyQueue.delete()) {
+            Log.w(TAG, "Could not delete " + legacyQueue);
+        }
+
+        database.getReference(".info/connected").addValueEventListener(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Boolean value = snapshot.getValue(Boolean.class);
+                setConnected(value != null && value);
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Connection state listener cancelled: " + error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Queues a write; replaces any pending value for the same path.
+     * @param path slash-separated path from the database root
+     */
+    void set(String path, Object value) {
+        synchronized (this) {
+            if (conflicts(path)) {
+                seal();
+            }
+            pending.put(path, merge(pending.get(path), value));
+            putCount++;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Queues a group of writes that must land in the same update.
+     * Paths in the group must not be ancestors of one another.
+     */
+    void setAll(Map<String, Object> updates) {
+        synchronized (this) {
+            for (String path : updates.keySet()) {
+                if (conflicts(path)) {
+                    seal();
+                    break;
+                }
+            }
+            for (Map.Entry<String, Object> update : updates.entrySet()) {
+                pending.put(update.getKey(), merge(pending.get(update.getKey()), update.getValue()));
+            }
+            putCount += updates.size();
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Hands everything queued to the database client now.
+     */
+    void flush() {
+        List<Map<String, Object>> batches;
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+
+            seal();
+            if (sealed.isEmpty()) {
+                return;
+            }
+            batches = new ArrayList<>(sealed);
+            sealed.clear();
+            writeCount += batches.size();
+        }
+
+        for (Map<String, Object> batch : batches) {
+            int size = batch.size();
+            root.updateChildren(batch)
+                    .addOnSuccessListener(aVoid -> Log.d(TAG, "✓ Wrote " + size + " path(s)"))
+                    .addOnFailureListener(e -> Log.e(TAG, "✗ Batched write FAILED (" + size + " paths): " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Whether the database currently reports a server connection
+     */
+    synchronized boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Runs {@code task} on the main looper once the database reports a connection (now, if it does)
+     */
+    void runWhenConnected(Runnable task) {
+        synchronized (this) {
+            if (!connected) {
+                connectWaiters.add(task);
+                return;
+            }
+        }
+        handler.post(task);
+    }
+
+    /**
+     * Values handed in vs. updates actually sent
+     */
+    synchronized String getStats() {
+        return putCount + " puts → " + writeCount + " writes";
+    }
+
+    private void setConnected(boolean value) {
+        List<Runnable> waiters;
+        synchronized (this) {
+            if (connected == value) {
+                return;
+            }
+            connected = value;
+            waiters = value ? new ArrayList<>(connectWaiters) : new ArrayList<>();
+            if (value) {
+                connectWaiters.clear();
+            }
+        }
+        Log.d(TAG, value ? "Connected" : "Disconnected - the database client keeps writes until reconnect");
+        for (Runnable waiter : waiters) {
+            handler.post(waiter);
+        }
+    }
+
+    private void scheduleFlush() {
+        boolean now;
+        boolean schedule;
+        synchronized (this) {
+            now = pending.size() >= MAX_BATCH_PATHS;
+            schedule = !now && !flushScheduled;
+            flushScheduled |= schedule;
+        }
+        if (now) {
+            handler.post(flushRunnable);
+        } else if (schedule) {
+            handler.postDelayed(flushRunnable, FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * Newest value wins, except that two pending ServerValue.increment()s add up
+     */
+    private static Object merge(Object existing, Object value) {
+        Number previous = incrementOf(existing);
+        Number delta = incrementOf(value);
+        if (previous == null || delta == null) {
+            return value;
+        }
+        if (previous instanceof Double || previous instanceof Float
+                || delta instanceof Double || delta instanceof Float) {
+            return ServerValue.increment(previous.doubleValue() + delta.doubleValue());
+        }
+        return ServerValue.increment(previous.longValue() + delta.longValue());
+    }
+
+    /** The amount of a {".sv": {"increment": n}} placeholder, or null for any other value */
+    private static Number incrementOf(Object value) {
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        Object sv = ((Map<?, ?>) value).get(".sv");
+        if (!(sv instanceof Map)) {
+            return null;
+        }
+        Object amount = ((Map<?, ?>) sv).get("increment");
+        return amount instanceof Number ? (Number) amount : null;
+    }
+
+    /**
+     * A multi-location update can't hold a path and one of its ancestors
+     */
+    private boolean conflicts(String path) {
+        for (String existing : pending.keySet()) {
+            if (isAncestor(existing, path) || isAncestor(path, existing)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAncestor(String parent, String child) {
+        return child.length() > parent.length()
+                && child.startsWith(parent)
+                && child.charAt(parent.length()) == '/';
+    }
+
+    /** Closes the open batch so later writes can't merge into it. Caller holds the lock. */
+    private void seal() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        sealed.addLast(pending);
+        pending = new LinkedHashMap<>();
+    }
+}
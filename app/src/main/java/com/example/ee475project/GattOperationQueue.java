@@ -0,0 +1,304 @@
+package com.example.ee475project;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs GATT writes for one connection strictly one at a time.
+ *
+ * Android drops a GATT request issued while another is still outstanding, so every
+ * descriptor and characteristic write goes through here. The next operation starts
+ * only when the stack reports the previous one in onDescriptorWrite /
+ * onCharacteristicWrite, or when it times out. Failed operations are retried up to
+ * MAX_ATTEMPTS times. A write that is identical to one still waiting in the queue is
+ * merged into it instead of being sent twice.
+ *
+ * Completions are called without the queue lock held, on whichever thread finished
+ * the operation (binder thread or main thread for timeouts).
+ */
+@SuppressLint("MissingPermission")
+class GattOperationQueue {
+
+    private static final String TAG = "GattOperationQueue";
+
+    static final long OPERATION_TIMEOUT = 2000; // 2 seconds per attempt
+    static final long RETRY_DELAY = 100;
+    static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Called once per enqueued write with the final outcome.
+     */
+    interface Completion {
+        void onComplete(boolean success);
+    }
+
+    private static final class Operation {
+        final UUID serviceUuid;
+        final UUID characteristicUuid;
+        final UUID descriptorUuid;  // null for characteristic writes
+        final byte[] value;
+        final List<Completion> completions = new ArrayList<>(1);
+        int attempts = 0;
+
+        Operation(UUID serviceUuid, UUID characteristicUuid, UUID descriptorUuid, byte[] value) {
+            this.serviceUuid = serviceUuid;
+            this.characteristicUuid = characteristicUuid;
+            this.descriptorUuid = descriptorUuid;
+            this.value = value;
+        }
+
+        boolean sameTarget(UUID characteristic, UUID descriptor) {
+            return characteristicUuid.equals(characteristic)
+                    && (descriptorUuid == null ? descriptor == null : descriptorUuid.equals(descriptor));
+        }
+
+        boolean isDuplicateOf(Operation other) {
+            return sameTarget(other.characteristicUuid, other.descriptorUuid)
+                    && Arrays.equals(value, other.value);
+        }
+    }
+
+    private final String deviceName;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final ArrayDeque<Operation> pending = new ArrayDeque<>();
+    private Operation inFlight;
+    private BluetoothGatt gatt;
+    private boolean running = false;
+
+    private long completedCount = 0;
+    private long failedCount = 0;
+    private long coalescedCount = 0;
+
+    GattOperationQueue(String deviceName) {
+        this.deviceName = deviceName;
+    }
+
+    /**
+     * Starts executing queued operations against the given connection.
+     */
+    void start(BluetoothGatt g) {
+        synchronized (this) {
+            gatt = g;
+            running = true;
+        }
+        executeNext();
+    }
+
+    /**
+     * Drops everything (connection lost or closed); outstanding completions get false.
+     */
+    void clear() {
+        List<Completion> failed = new ArrayList<>();
+        synchronized (this) {
+            running = false;
+            gatt = null;
+            handler.removeCallbacksAndMessages(null);
+            if (inFlight != null) {
+                failed.addAll(inFlight.completions);
+                inFlight = null;
+            }
+            for (Operation op : pending) {
+                failed.addAll(op.completions);
+            }
+            pending.clear();
+        }
+        complete(failed, false);
+    }
+
+    void writeCharacteristic(UUID service, UUID characteristic, byte[] value, Completion completion) {
+        enqueue(new Operation(service, characteristic, null, value), completion);
+    }
+
+    void writeDescriptor(UUID service, UUID characteristic, UUID descriptor, byte[] value, Completion completion) {
+        enqueue(new Operation(service, characteristic, descriptor, value), completion);
+    }
+
+    /**
+     * Call from onCharacteristicWrite.
+     */
+    void onCharacteristicWrite(UUID characteristic, int status) {
+        onOperationComplete(characteristic, null, status);
+    }
+
+    /**
+     * Call from onDescriptorWrite.
+     */
+    void onDescriptorWrite(UUID characteristic, UUID descriptor, int status) {
+        onOperationComplete(characteristic, descriptor, status);
+    }
+
+    synchronized int size() {
+        return pending.size() + (inFlight != null ? 1 : 0);
+    }
+
+    synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    private void enqueue(Operation op, Completion completion) {
+        synchronized (this) {
+            if (completion != null) {
+                op.completions.add(completion);
+            }
+
+            // Same bytes to the same attribute still waiting to go out - send it once
+            for (Operation queued : pending) {
+                if (queued.isDuplicateOf(op)) {
+                    queued.completions.addAll(op.completions);
+                    coalescedCount++;
+                    return;
+                }
+            }
+            pending.add(op);
+        }
+        executeNext();
+    }
+
+    private void executeNext() {
+        Operation op;
+        BluetoothGatt g;
+        synchronized (this) {
+            if (!running || inFlight != null || pending.isEmpty()) {
+                return;
+            }
+            op = pending.poll();
+            inFlight = op;
+            g = gatt;
+        }
+        execute(g, op);
+    }
+
+    private void execute(BluetoothGatt g, Operation op) {
+        boolean issued;
+        synchronized (this) {
+            if (inFlight != op) {
+                return;  // Cleared or already finished by a late callback
+            }
+            op.attempts++;
+            issued = issue(g, op);
+            if (issued) {
+                handler.postDelayed(() -> onTimeout(op), OPERATION_TIMEOUT);
+            }
+        }
+
+        if (!issued) {
+            // Stack refused the request (usually still busy) - back off and try again
+            retryOrFail(op, "request rejected");
+        }
+    }
+
+    private boolean issue(BluetoothGatt g, Operation op) {
+        BluetoothGattService service = g.getService(op.serviceUuid);
+        BluetoothGattCharacteristic characteristic = service != null
+                ? service.getCharacteristic(op.characteristicUuid) : null;
+        if (characteristic == null) {
+            Log.e(TAG, "Characteristic " + op.characteristicUuid + " not found on " + deviceName);
+            return false;
+        }
+
+        if (op.descriptorUuid == null) {
+            characteristic.setValue(op.value);
+            return g.writeCharacteristic(characteristic);
+        }
+
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptor(op.descriptorUuid);
+        if (descriptor == null) {
+            Log.e(TAG, "Descriptor " + op.descriptorUuid + " not found on " + deviceName);
+            return false;
+        }
+        descriptor.setValue(op.value);
+        return g.writeDescriptor(descriptor);
+    }
+
+    private void onOperationComplete(UUID characteristic, UUID descriptor, int status) {
+        Operation op;
+        synchronized (this) {
+            op = inFlight;
+            if (op == null || !op.sameTarget(characteristic, descriptor)) {
+                return;  // Not ours (e.g. a write that already timed out)
+            }
+            handler.removeCallbacksAndMessages(null);
+        }
+
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            finish(op, true);
+        } else {
+            retryOrFail(op, "status " + status);
+        }
+    }
+
+    private void onTimeout(Operation op) {
+        synchronized (this) {
+            if (inFlight != op) {
+                return;
+            }
+        }
+        retryOrFail(op, "timed out");
+    }
+
+    private void retryOrFail(Operation op, String reason) {
+        BluetoothGatt g;
+        synchronized (this) {
+            if (inFlight != op) {
+                return;
+            }
+            if (op.attempts < MAX_ATTEMPTS && running) {
+                Log.w(TAG, "GATT write on " + deviceName + " " + reason
+                        + " - retry " + op.attempts + "/" + (MAX_ATTEMPTS - 1));
+                g = gatt;
+            } else {
+                g = null;
+            }
+        }
+
+        if (g != null) {
+            handler.postDelayed(() -> execute(g, op), RETRY_DELAY);
+        } else {
+            Log.e(TAG, "✗ GATT write on " + deviceName + " failed after " + op.attempts + " attempt(s): " + reason);
+            finish(op, false);
+        }
+    }
+
+    private void finish(Operation op, boolean success) {
+        synchronized (this) {
+            if (inFlight != op) {
+                return;
+            }
+            inFlight = null;
+            if (success) {
+                completedCount++;
+            } else {
+                failedCount++;
+            }
+        }
+        complete(op.completions, success);
+        executeNext();
+    }
+
+    private static void complete(List<Completion> completions, boolean success) {
+        for (Completion completion : completions) {
+            completion.onComplete(success);
+        }
+    }
+}
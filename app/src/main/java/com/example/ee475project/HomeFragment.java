@@ -60,7 +60,6 @@ import android.Manifest;
 
 
 
-import okhttp3.OkHttpClient;
 
 
 public class HomeFragment extends Fragment {
@@ -84,10 +83,13 @@ public class HomeFragment extends Fragment {
 
     private BluetoothViewModel bluetoothViewModel;
     private SharedViewModel sharedViewModel;
+    private PostureAnalyzer postureAnalyzer;  // One per screen; calibration comes from CalibrationCache
 
     // Status card Firebase listener - FIXED: Use Query instead of DatabaseReference
     private ValueEventListener statusListener;
     private Query statusQuery;  // Changed from DatabaseReference to Query
+    private DatabaseReference todayStatsRef;
+    private ValueEventListener todayStatsListener;
 
     private float currentActiveTime = 0f;
     private int currentDailyGoal = 480; // Default 480 minutes (8 hours)
@@ -95,7 +97,6 @@ public class HomeFragment extends Fragment {
 
     private EditText homeServerUrlInput;
     private SwitchCompat mlInferenceSwitch;
-    private OkHttpClient httpClient;
     private static final String PREFS_NAME = "MLInferencePrefs";
     private static final String PREF_SERVER_URL = "server_url";
     private static final String PREF_ML_ENABLED = "ml_inference_enabled";
@@ -120,15 +121,13 @@ public class HomeFragment extends Fragment {
     private static final String BATTERY_PREFS = "BatteryEstimation";
     private static final String PREF_LAST_NOON_RESET = "last_noon_reset";
 
-    private static final String CLEANUP_PREFS = "SessionCleanup";
-    private static final String PREF_LAST_CLEANUP = "last_cleanup_timestamp";
-    private static final long CLEANUP_INTERVAL_MS = 60 * 60 * 1000; // 1 hr
-
     // ML Status card views
     private ConstraintLayout mlStatusWidget;
     private ImageView mlStatusIcon;
     private TextView mlStatusText;
     private TextView mlStatusSuggestion;
+    private Boolean thresholdVerdict = null;  // Latest PostureAnalyzer result (slouching?), null if none yet
+    private boolean mlFallbackActive = false;  // ML card shows thresholdVerdict while the server is skipped
 
 
 
@@ -166,7 +165,7 @@ public class HomeFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        checkAndRunCleanup();
+        postureAnalyzer = new PostureAnalyzer(requireContext());  // Also starts the calibration prefetch
 
 
         // Initialize views
@@ -194,7 +193,6 @@ public class HomeFragment extends Fragment {
         // http request init
         homeServerUrlInput = view.findViewById(R.id.home_server_url_input);
         mlInferenceSwitch = view.findViewById(R.id.ml_inference_switch);
-        httpClient = new OkHttpClient();
         loadMLInferencePreferences();
 
         // Battery Text Init
@@ -232,6 +230,9 @@ public class HomeFragment extends Fragment {
                             "⚠️ Please enter server URL first",
                             Toast.LENGTH_SHORT).show();
                     mlInferenceSwitch.setChecked(false);
+                } else {
+                    // Have a connection open before the first cycle's /predict
+                    MLHttpClient.prewarm(url);
                 }
             }
         });
@@ -274,6 +275,18 @@ public class HomeFragment extends Fragment {
         });
 
         // ===== Observe cycle completion to trigger analysis AND ML inference =====
+        // ML results come from the dispatcher, which falls back to the threshold verdict while the server is down
+        bluetoothViewModel.getInferenceResult().observe(getViewLifecycleOwner(), result -> {
+            if (result == null) return;
+            if (result.isFallback()) {
+                mlFallbackActive = true;
+                showThresholdFallback();
+            } else {
+                mlFallbackActive = false;
+                updateMLStatusCard(result.prediction);
+            }
+        });
+
         bluetoothViewModel.getIsCycleComplete().observe(getViewLifecycleOwner(), isComplete -> {
             if (isComplete != null && isComplete) {
                 String sessionId = bluetoothViewModel.getCompletedSessionId().getValue();
@@ -284,8 +297,7 @@ public class HomeFragment extends Fragment {
 
                 new android.os.Handler().postDelayed(() -> {
                     if (isAdded() && sessionId != null) {
-                        PostureAnalyzer analyzer = new PostureAnalyzer();
-                        analyzer.analyzeSpecificSession(sessionId,
+                        postureAnalyzer.analyzeSpecificSession(sessionId,
                                 new PostureAnalyzer.OnAnalysisCompleteListener() {
                                     @Override
                                     public void onAnalysisComplete(int analyzed, int slouching) {
@@ -326,13 +338,9 @@ public class HomeFragment extends Fragment {
                                 });
                     }
                 }, 1000);
-                // ✅ ML inference (if enabled)
+                // ✅ ML inference (if enabled) - samples come from memory, no wait for Firebase
                 if (mlEnabled) {
-                    new android.os.Handler().postDelayed(() -> {
-                        if (isAdded()) {
-                            sendInferenceToMLServer(sessionId);
-                        }
-                    }, 1500);
+                    sendInferenceToMLServer(sessionId);
                 }
             }
         });
@@ -437,8 +445,7 @@ public class HomeFragment extends Fragment {
             return;
         }
 
-        PostureAnalyzer analyzer = new PostureAnalyzer();
-        analyzer.analyzeUnprocessedSessions(new PostureAnalyzer.OnAnalysisCompleteListener() {
+        postureAnalyzer.analyzeUnprocessedSessions(new PostureAnalyzer.OnAnalysisCompleteListener() {
             @Override
             public void onAnalysisComplete(int sessionsAnalyzed, int slouchingSessions) {
                 if (!isAdded()) return;
@@ -533,6 +540,11 @@ public class HomeFragment extends Fragment {
 
         Log.d(TAG, "Updating status card: isSlouchingNow = " + isSlouchingNow);
 
+        thresholdVerdict = isSlouchingNow;
+        if (mlFallbackActive) {
+            showThresholdFallback();
+        }
+
         if (isSlouchingNow == null) {
             // No data - show grey/neutral state
             statusWidget.setBackgroundResource(R.drawable.rounded_corner_white);
@@ -591,40 +603,23 @@ public class HomeFragment extends Fragment {
         Log.d(TAG, "ML INFERENCE for session: " + sessionId);
         Log.d(TAG, "═══════════════════════════════════════════════════════════");
 
-        // Use the specific session ID
-        bluetoothViewModel.generateInferenceJSONForSession(sessionId,
-                new BluetoothViewModel.OnInferenceJSONGeneratedListener() {
-                    @Override
-                    public void onJSONGenerated(String json) {
-                        Log.d(TAG, "Inference JSON generated, uploading to server...");
-
-                        bluetoothViewModel.uploadInferenceData(serverUrl, json,
-                                new BluetoothViewModel.OnInferenceUploadListener() {
-                                    @Override
-                                    public void onUploadSuccess(String response) {
-                                        Log.d(TAG, "✅ ML Inference successful: " + response);
-
-                                        try {
-                                            org.json.JSONObject jsonResponse = new org.json.JSONObject(response);
-                                            String finalPrediction = jsonResponse.optString("final_prediction", "Unknown");
-                                            updateMLStatusCard(finalPrediction);
-                                        } catch (org.json.JSONException e) {
-                                            Log.e(TAG, "Error parsing ML response: " + e.getMessage());
-                                            updateMLStatusCard("Error");
-                                        }
-                                    }
+        InferencePayload payload = bluetoothViewModel.getInferencePayload(sessionId);
+        if (payload != null) {
+            bluetoothViewModel.dispatchInference(serverUrl, payload);
+            return;
+        }
 
-                                    @Override
-                                    public void onUploadFailure(String error) {
-                                        Log.e(TAG, "❌ ML Inference failed: " + error);
-                                        updateMLStatusCard("Connection Error");
-                                    }
-                                });
+        // Not the cycle held in memory - read its archived arrays
+        bluetoothViewModel.loadInferencePayload(sessionId,
+                new BluetoothViewModel.OnInferencePayloadListener() {
+                    @Override
+                    public void onPayload(InferencePayload loaded) {
+                        bluetoothViewModel.dispatchInference(serverUrl, loaded);
                     }
 
                     @Override
                     public void onError(String error) {
-                        Log.e(TAG, "Failed to generate inference JSON: " + error);
+                        Log.e(TAG, "Failed to load inference data: " + error);
                     }
                 });
     }
@@ -681,41 +676,59 @@ public class HomeFragment extends Fragment {
             statusQuery.removeEventListener(statusListener);
             Log.d(TAG, "Status listener removed");
         }
+        if (todayStatsRef != null && todayStatsListener != null) {
+            todayStatsRef.removeEventListener(todayStatsListener);
+            todayStatsListener = null;
+        }
     }
 
+    /**
+     * Shows the cached percentage for today at once, then keeps one listener on
+     * today's daily_stats node; repeated calls only re-attach when the day changed.
+     */
     private void loadTodaySlouchPercentage() {
-        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
         String todayKey = getTodayDateKey();
+        AnalyticsCache analyticsCache = AnalyticsCache.getInstance(requireContext());
+
+        AnalyticsCache.Counts cached = analyticsCache.getCounts(AnalyticsCache.day(todayKey));
+        currentSlouchPercentage = cached != null ? cached.slouchPercentage() : 0.0;
+        updateSlouchTime();
+        updateDailyGoalProgress();
 
-        DatabaseReference statsRef = FirebaseDatabase.getInstance()
+        if (todayStatsListener != null) {
+            if (todayKey.equals(todayStatsRef.getKey())) {
+                return;  // Already listening - changes arrive on their own
+            }
+            todayStatsRef.removeEventListener(todayStatsListener);
+        }
+
+        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        todayStatsRef = FirebaseDatabase.getInstance()
                 .getReference("daily_stats")
                 .child(userId)
                 .child(todayKey);
 
-        statsRef.addValueEventListener(new ValueEventListener() {
+        todayStatsListener = new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    Double slouchPercentage = snapshot.child("slouch_percentage").getValue(Double.class);
-
-                    if (slouchPercentage != null) {
-                        currentSlouchPercentage = slouchPercentage;
-                        Log.d(TAG, "Today's slouch percentage: " + currentSlouchPercentage + "%");
-                        updateSlouchTime();
-                        updateDailyGoalProgress();
-                    }
-                } else {
-                    currentSlouchPercentage = 0.0;
-                    updateSlouchTime();
-                    updateDailyGoalProgress();
+                AnalyticsCache.Counts counts = snapshot.exists()
+                        ? AnalyticsCache.Counts.of(snapshot)
+                        : AnalyticsCache.Counts.EMPTY;
+                if (!analyticsCache.putCounts(AnalyticsCache.day(todayKey), counts)) {
+                    return;  // Same as what's already shown
                 }
+                currentSlouchPercentage = counts.slouchPercentage();
+                Log.d(TAG, "Today's slouch percentage: " + currentSlouchPercentage + "%");
+                updateSlouchTime();
+                updateDailyGoalProgress();
             }
 
             @Override
             public void onCancelled(@NonNull DatabaseError error) {
                 Log.e(TAG, "Error loading slouch percentage: " + error.getMessage());
             }
-        });
+        };
+        todayStatsRef.addValueEventListener(todayStatsListener);
     }
 
     @Override
@@ -741,12 +754,8 @@ public class HomeFragment extends Fragment {
     private void checkAndAnalyzeIfNeeded() {
         String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
 
-        DatabaseReference sessionsRef = FirebaseDatabase.getInstance()
-                .getReference("posture_sessions")
-                .child(userId);
-
-        sessionsRef.orderByChild("analyzed").equalTo(false)
-                .limitToLast(1)
+        PostureAnalyzer.pendingAnalysisRef(userId)
+                .limitToFirst(1)
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
@@ -841,6 +850,10 @@ public class HomeFragment extends Fragment {
         boolean mlEnabled = prefs.getBoolean(PREF_ML_ENABLED, false);
         mlInferenceSwitch.setChecked(mlEnabled);
 
+        if (mlEnabled) {
+            MLHttpClient.prewarm(savedUrl);
+        }
+
         Log.d(TAG, "Loaded ML preferences - URL: " + savedUrl + ", Enabled: " + mlEnabled);
     }
 
@@ -1068,29 +1081,21 @@ public class HomeFragment extends Fragment {
         if (currentTimeMillis >= noonTodayMillis && lastResetMillis < noonTodayMillis) {
 //            Log.d(TAG, "🔋 Noon reached - Resetting battery to 100%");
 
-            // Reset via Firebase (same as your existing daily reset system)
+            // Through the batcher, so it replaces (and is ordered after) any queued active_time update
             String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
-            DatabaseReference userRef = FirebaseDatabase.getInstance()
-                    .getReference("users")
-                    .child(userId);
-
-            userRef.child("active_time").setValue(0f)
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "✓ Battery reset successful (active_time = 0)");
-
-                        // Save reset timestamp
-                        prefs.edit()
-                                .putLong(PREF_LAST_NOON_RESET, currentTimeMillis)
-                                .apply();
-
-                        // Update battery display
-                        currentActiveTime = 0f;
-                        updateBatteryEstimates();
-
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "✗ Failed to reset battery: " + e.getMessage());
-                    });
+            FirebaseWriteBatcher writeBatcher = FirebaseWriteBatcher.getInstance(requireContext());
+            writeBatcher.set("users/" + userId + "/active_time", 0f);
+            writeBatcher.flush();
+            Log.d(TAG, "✓ Battery reset queued (active_time = 0)");
+
+            // Save reset timestamp
+            prefs.edit()
+                    .putLong(PREF_LAST_NOON_RESET, currentTimeMillis)
+                    .apply();
+
+            // Update battery display
+            currentActiveTime = 0f;
+            updateBatteryEstimates();
         }
     }
 
@@ -1101,35 +1106,6 @@ public class HomeFragment extends Fragment {
         return mlInferenceSwitch != null && mlInferenceSwitch.isChecked();
     }
 
-    private void checkAndRunCleanup() {
-        if (getContext() == null) return;
-
-        android.content.SharedPreferences prefs = getContext().getSharedPreferences(
-                CLEANUP_PREFS, android.content.Context.MODE_PRIVATE);
-        long lastCleanup = prefs.getLong(PREF_LAST_CLEANUP, 0);
-        long currentTime = System.currentTimeMillis();
-
-        if (currentTime - lastCleanup > CLEANUP_INTERVAL_MS) {
-            Log.d(TAG, "Running session cleanup...");
-
-            PostureAnalyzer analyzer = new PostureAnalyzer();
-            analyzer.cleanupIncompleteSessions(new PostureAnalyzer.OnCleanupCompleteListener() {
-                @Override
-                public void onCleanupComplete(int deletedCount) {
-                    Log.d(TAG, "✓ Cleaned up " + deletedCount + " incomplete sessions");
-                    if (getContext() != null) {
-                        prefs.edit().putLong(PREF_LAST_CLEANUP, System.currentTimeMillis()).apply();
-                    }
-                }
-
-                @Override
-                public void onCleanupError(String error) {
-                    Log.e(TAG, "Cleanup error: " + error);
-                }
-            });
-        }
-    }
-
     /**
      * Update the ML status card based on prediction result
      * @param prediction The prediction string from ML server (e.g., "Sitting", "Standing", "Walking")
@@ -1166,4 +1142,29 @@ public class HomeFragment extends Fragment {
     }
 
 
+    /**
+     * ML card while the server is being skipped: PostureAnalyzer's threshold verdict instead
+     */
+    private void showThresholdFallback() {
+        if (!isAdded() || getContext() == null) return;
+        if (mlStatusText == null || mlStatusIcon == null || mlStatusSuggestion == null) return;
+
+        int color;
+        if (thresholdVerdict == null) {
+            mlStatusText.setText("Unavailable");
+            color = ContextCompat.getColor(requireContext(), R.color.ios_text_secondary);
+        } else if (thresholdVerdict) {
+            mlStatusText.setText("Slouching");
+            color = ContextCompat.getColor(requireContext(), R.color.ios_red);
+        } else {
+            mlStatusText.setText("Good Posture");
+            color = ContextCompat.getColor(requireContext(), R.color.green);
+        }
+        mlStatusIcon.setImageResource(android.R.drawable.ic_menu_info_details);
+        mlStatusIcon.setColorFilter(color);
+        mlStatusText.setTextColor(color);
+        mlStatusSuggestion.setText("ML server unavailable - showing threshold result");
+    }
+
+
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+package com.example.ee475project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact Firebase representation for arrays of IMU samples.
+ *
+ * Instead of one JSON object per sample, the array is stored as a single node:
+ *  - each of the six channels is quantized to int16 with its own scale
+ *    (largest magnitude in the array maps to 32767),
+ *  - consecutive samples are stored as zig-zag varint deltas,
+ *  - the bytes are base64'd into one string per CHUNK_SIZE samples.
+ *
+ * Timestamps are optional and stored the same way (delta varints in ms). Every
+ * chunk restarts its deltas, so chunks decode independently.
+ *
+ * Node layout: {format, count, chunkSize, scale: [6], startTime?, chunks: [..]}
+ * An empty array has no chunks node at all (Firebase doesn't store empty lists).
+ */
+class ImuArrayCodec {
+
+    static final String FORMAT = "q16d1";
+    static final int CHANNELS = StreamAligner.CHANNELS;
+    static final int CHUNK_SIZE = 1024;   // Samples per base64 string
+
+    private static final int QUANT_MAX = 32767;
+
+    static final String KEY_FORMAT = "format";
+    static final String KEY_COUNT = "count";
+    static final String KEY_CHUNK_SIZE = "chunkSize";
+    static final String KEY_SCALE = "scale";
+    static final String KEY_START_TIME = "startTime";
+    static final String KEY_CHUNKS = "chunks";
+
+    /**
+     * Decoded array: {@code count} samples of CHANNELS floats; times is null if none were stored.
+     */
+    static final class Decoded {
+        final int count;
+        final float[] data;
+        final long[] times;
+
+        private Decoded(int count, float[] data, long[] times) {
+            this.count = count;
+            this.data = data;
+            this.times = times;
+        }
+    }
+
+    private ImuArrayCodec() {}
+
+    /**
+     * @param data count * CHANNELS floats (ax, ay, az, gx, gy, gz per sample)
+     * @param times per-sample timestamps in ms, or null to leave them out
+     * @return a value ready for setValue()/updateChildren()
+     */
+    static Map<String, Object> encode(float[] data, long[] times, int count) {
+        double[] scale = new double[CHANNELS];
+        for (int i = 0; i < count; i++) {
+            int base = i * CHANNELS;
+            for (int c = 0; c < CHANNELS; c++) {
+                float value = data[base + c];
+                if (!Float.isNaN(value)) {
+                    scale[c] = Math.max(scale[c], Math.abs(value));
+                }
+            }
+        }
+        List<Object> scaleList = new ArrayList<>(CHANNELS);
+        for (int c = 0; c < CHANNELS; c++) {
+            // Stored scale is read back as a double, so quantize with exactly that value
+            scale[c] = scale[c] > 0 ? scale[c] / QUANT_MAX : 1.0;
+            scaleList.add(scale[c]);
+        }
+
+        long startTime = times != null && count > 0 ? times[0] : 0;
+        List<Object> chunks = new ArrayList<>();
+        byte[] buffer = new byte[CHUNK_SIZE * (CHANNELS * 3 + 10)];
+        int[] previous = new int[CHANNELS];
+
+        for (int chunkStart = 0; chunkStart < count; chunkStart += CHUNK_SIZE) {
+            int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, count);
+            int pos = 0;
+            long previousTime = startTime;
+            Arrays.fill(previous, 0);
+
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                if (times != null) {
+                    pos = writeVarint(buffer, pos, zigZag(times[i] - previousTime));
+                    previousTime = times[i];
+                }
+                int base = i * CHANNELS;
+                for (int c = 0; c < CHANNELS; c++) {
+                    int q = quantize(data[base + c], scale[c]);
+                    pos = writeVarint(buffer, pos, zigZag(q - previous[c]));
+                    previous[c] = q;
+                }
+            }
+            chunks.add(Base64.getEncoder().encodeToString(Arrays.copyOf(buffer, pos)));
+        }
+
+        Map<String, Object> node = new HashMap<>();
+        node.put(KEY_FORMAT, FORMAT);
+        node.put(KEY_COUNT, count);
+        node.put(KEY_CHUNK_SIZE, CHUNK_SIZE);
+        node.put(KEY_SCALE, scaleList);
+        if (times != null) {
+            node.put(KEY_START_TIME, startTime);
+        }
+        if (count > 0) {
+            node.put(KEY_CHUNKS, chunks);
+        }
+        return node;
+    }
+
+    /**
+     * Decodes a node written by {@link #encode} (the value of DataSnapshot.getValue()).
+     * @throws IllegalArgumentException if the node isn't in this format or is truncated
+     */
+    static Decoded decode(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Not an encoded IMU array");
+        }
+        Map<?, ?> node = (Map<?, ?>) value;
+        if (!FORMAT.equals(node.get(KEY_FORMAT))) {
+            throw new IllegalArgumentException("Unknown IMU array format: " + node.get(KEY_FORMAT));
+        }
+
+        int count = toNumber(node.get(KEY_COUNT)).intValue();
+        int chunkSize = toNumber(node.get(KEY_CHUNK_SIZE)).intValue();
+        boolean hasTimes = node.get(KEY_START_TIME) != null;
+        if (count == 0) {
+            return new Decoded(0, new float[0], hasTimes ? new long[0] : null);
+        }
+        List<Object> scaleList = toList(node.get(KEY_SCALE));
+        List<Object> chunks = toList(node.get(KEY_CHUNKS));
+        if (count < 0 || chunkSize <= 0 || scaleList.size() != CHANNELS
+                || chunks.size() != (count + chunkSize - 1) / chunkSize) {
+            throw new IllegalArgumentException("Corrupt IMU array header");
+        }
+
+        double[] scale = new double[CHANNELS];
+        for (int c = 0; c < CHANNELS; c++) {
+            scale[c] = toNumber(scaleList.get(c)).doubleValue();
+        }
+        long startTime = hasTimes ? toNumber(node.get(KEY_START_TIME)).longValue() : 0;
+
+        float[] data = new float[count * CHANNELS];
+        long[] times = hasTimes ? new long[count] : null;
+        int[] previous = new int[CHANNELS];
+        long[] cursor = new long[1];
+
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            byte[] bytes = Base64.getDecoder().decode((String) chunks.get(chunk));
+            int chunkStart = chunk * chunkSize;
+            int chunkEnd = Math.min(chunkStart + chunkSize, count);
+            int pos = 0;
+            long previousTime = startTime;
+            Arrays.fill(previous, 0);
+
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                if (hasTimes) {
+                    pos = readVarint(bytes, pos, cursor);
+                    previousTime += unZigZag(cursor[0]);
+                    times[i] = previousTime;
+                }
+                int base = i * CHANNELS;
+                for (int c = 0; c < CHANNELS; c++) {
+                    pos = readVarint(bytes, pos, cursor);
+                    previous[c] += (int) unZigZag(cursor[0]);
+                    data[base + c] = (float) (previous[c] * scale[c]);
+                }
+            }
+        }
+        return new Decoded(count, data, times);
+    }
+
+    /**
+     * True if the snapshot value looks like an encoded array (vs. a legacy list of objects)
+     */
+    static boolean isEncoded(Object value) {
+        return value instanceof Map && FORMAT.equals(((Map<?, ?>) value).get(KEY_FORMAT));
+    }
+
+    private static int quantize(float value, double scale) {
+        if (Float.isNaN(value)) {
+            return 0;
+        }
+        long q = Math.round(value / scale);
+        return (int) Math.max(-QUANT_MAX, Math.min(QUANT_MAX, q));
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarint(byte[] buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int readVarint(byte[] bytes, int pos, long[] out) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (pos >= bytes.length || shift > 63) {
+                throw new IllegalArgumentException("Truncated IMU array chunk");
+            }
+            byte b = bytes[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        out[0] = value;
+        return pos;
+    }
+
+    private static Number toNumber(Object value) {
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Expected a number, got " + value);
+        }
+        return (Number) value;
+    }
+
+    /**
+     * Firebase returns array-like children as a List, or as a Map when keys are sparse
+     */
+    private static List<Object> toList(Object value) {
+        if (value instanceof List) {
+            return new ArrayList<>((List<?>) value);
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            List<Object> list = new ArrayList<>(map.size());
+            for (int i = 0; i < map.size(); i++) {
+                Object item = map.get(String.valueOf(i));
+                if (item == null) {
+                    throw new IllegalArgumentException("Missing array element " + i);
+                }
+                list.add(item);
+            }
+            return list;
+        }
+        throw new IllegalArgumentException("Expected a list, got " + value);
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.ee475project;
+
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte-level framer for the sensor UART stream.
+ * Splits raw notification bytes on CR/LF into a preallocated line buffer and
+ * parses "UB|A:x,y,z" frames straight into primitives - no Strings on the hot path.
+ * Not thread-safe: use one instance per GATT connection.
+ */
+class ImuLineFramer {
+
+    private static final String TAG = "ImuLineFramer";
+
+    static final int SENSOR_UNKNOWN = -1;
+    static final int SENSOR_UPPER_BACK = 0;
+    static final int SENSOR_LOWER_BACK = 1;
+
+    static final byte TYPE_ACCEL = 'A';
+    static final byte TYPE_GYRO = 'G';
+
+    // Longest sane line is ~40 bytes ("UB|A:-1234.5678,-1234.5678,-1234.5678")
+    private static final int MAX_LINE_LENGTH = 128;
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    /**
+     * Receives one parsed line. Called on the thread that calls {@link #feed}.
+     */
+    interface FrameListener {
+        void onFrame(int sensor, byte type, float x, float y, float z);
+    }
+
+    private final FrameListener listener;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength = 0;
+    private boolean lineOverflowed = false;
+
+    // Scratch state for the number parser (avoids returning boxed/array results)
+    private int parsePos;
+    private float parsedValue;
+
+    private int frameCount = 0;
+    private int malformedCount = 0;
+
+    ImuLineFramer(FrameListener listener) {
+        this.listener = listener;
+    }
+
+    void feed(byte[] data) {
+        if (data != null) {
+            feed(data, 0, data.length);
+        }
+    }
+
+    /**
+     * Appends a notification payload. Every complete line is parsed and
+     * delivered to the listener before this returns; a trailing partial line
+     * is kept for the next call.
+     */
+    void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (b == '\n' || b == '\r') {
+                // "\r\n" simply yields an empty second line, which is skipped
+                if (lineOverflowed) {
+                    malformedCount++;
+                    Log.w(TAG, "Dropped over-long line (" + MAX_LINE_LENGTH + "+ bytes)");
+                } else if (lineLength > 0) {
+                    parseLine();
+                }
+                lineLength = 0;
+                lineOverflowed = false;
+            } else if (lineLength < MAX_LINE_LENGTH) {
+                line[lineLength++] = b;
+            } else {
+                lineOverflowed = true;
+            }
+        }
+    }
+
+    /**
+     * Drops any partial line, e.g. after a disconnect.
+     */
+    void reset() {
+        lineLength = 0;
+        lineOverflowed = false;
+    }
+
+    int getFrameCount() {
+        return frameCount;
+    }
+
+    int getMalformedCount() {
+        return malformedCount;
+    }
+
+    private void parseLine() {
+        int start = 0;
+        int end = lineLength;
+        while (start < end && isWhitespace(line[start])) start++;
+        while (end > start && isWhitespace(line[end - 1])) end--;
+        if (start == end) {
+            return;
+        }
+
+        // "ID|T:x,y,z" - ID is two letters, T is the reading type
+        if (end - start < 5 || line[start + 2] != '|' || line[start + 4] != ':') {
+            rejectLine(start, end, "Malformed data packet");
+            return;
+        }
+
+        int sensor = sensorFromId(line[start], line[start + 1]);
+        if (sensor == SENSOR_UNKNOWN) {
+            rejectLine(start, end, "Unknown sensor id");
+            return;
+        }
+
+        byte type = line[start + 3];
+        if (type != TYPE_ACCEL && type != TYPE_GYRO) {
+            rejectLine(start, end, "Unknown data type");
+            return;
+        }
+
+        parsePos = start + 5;
+        if (!parseFloat(end) || !expect(',', end)) {
+            rejectLine(start, end, "Malformed data values");
+            return;
+        }
+        float x = parsedValue;
+        if (!parseFloat(end) || !expect(',', end)) {
+            rejectLine(start, end, "Malformed data values");
+            return;
+        }
+        float y = parsedValue;
+        if (!parseFloat(end) || parsePos != end) {
+            rejectLine(start, end, "Malformed data values");
+            return;
+        }
+        float z = parsedValue;
+
+        frameCount++;
+        listener.onFrame(sensor, type, x, y, z);
+    }
+
+    private boolean expect(char c, int end) {
+        if (parsePos < end && line[parsePos] == c) {
+            parsePos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses [+-]digits[.digits][e[+-]digits] starting at parsePos into parsedValue.
+     */
+    private boolean parseFloat(int end) {
+        int pos = parsePos;
+        while (pos < end && line[pos] == ' ') pos++;
+
+        boolean negative = false;
+        if (pos < end && (line[pos] == '-' || line[pos] == '+')) {
+            negative = line[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int decimalExponent = 0;
+        boolean sawDigit = false;
+
+        while (pos < end && isDigit(line[pos])) {
+            if (significantDigits < MAX_SIGNIFICANT_DIGITS) {
+                mantissa = mantissa * 10 + (line[pos] - '0');
+                if (mantissa != 0) significantDigits++;
+            } else {
+                decimalExponent++;
+            }
+            sawDigit = true;
+            pos++;
+        }
+
+        if (pos < end && line[pos] == '.') {
+            pos++;
+            while (pos < end && isDigit(line[pos])) {
+                if (significantDigits < MAX_SIGNIFICANT_DIGITS) {
+                    mantissa = mantissa * 10 + (line[pos] - '0');
+                    if (mantissa != 0) significantDigits++;
+                    decimalExponent--;
+                }
+                sawDigit = true;
+                pos++;
+            }
+        }
+
+        if (!sawDigit) {
+            return false;
+        }
+
+        if (pos < end && (line[pos] == 'e' || line[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (line[pos] == '-' || line[pos] == '+')) {
+                negativeExponent = line[pos] == '-';
+                pos++;
+            }
+            if (pos >= end || !isDigit(line[pos])) {
+                return false;
+            }
+            int exponent = 0;
+            while (pos < end && isDigit(line[pos])) {
+                if (exponent < 1000) exponent = exponent * 10 + (line[pos] - '0');
+                pos++;
+            }
+            decimalExponent += negativeExponent ? -exponent : exponent;
+        }
+
+        while (pos < end && line[pos] == ' ') pos++;
+
+        double value = mantissa;
+        if (decimalExponent < 0) {
+            int e = -decimalExponent;
+            value = e < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[e] : value / Math.pow(10, e);
+        } else if (decimalExponent > 0) {
+            value = decimalExponent < POWERS_OF_TEN.length
+                    ? value * POWERS_OF_TEN[decimalExponent]
+                    : value * Math.pow(10, decimalExponent);
+        }
+
+        parsedValue = (float) (negative ? -value : value);
+        parsePos = pos;
+        return true;
+    }
+
+    private void rejectLine(int start, int end, String reason) {
+        malformedCount++;
+        // Only pay for a String on the error path
+        Log.w(TAG, reason + ": " + new String(line, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    static int sensorFromId(byte first, byte second) {
+        if (second != 'B') return SENSOR_UNKNOWN;
+        if (first == 'U') return SENSOR_UPPER_BACK;
+        if (first == 'L') return SENSOR_LOWER_BACK;
+        return SENSOR_UNKNOWN;
+    }
+
+    static String sensorName(int sensor) {
+        switch (sensor) {
+            case SENSOR_UPPER_BACK: return "UB";
+            case SENSOR_LOWER_BACK: return "LB";
+            default: return "??";
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == 0;
+    }
+}
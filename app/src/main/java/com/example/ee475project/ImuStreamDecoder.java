@@ -0,0 +1,202 @@
+package com.example.ee475project;
+
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns raw UART notifications into complete IMU samples.
+ *
+ * Two wire formats are supported and detected per notification:
+ *  - Text (legacy): "UB|A:x,y,z" and "UB|G:x,y,z" lines, paired here into one sample.
+ *  - Binary: fixed 16-byte little-endian frames, one per sample:
+ *      [0]     0xA5 sync byte (never valid ASCII, so it can't start a text line)
+ *      [1]     sensor id (0 = upper back, 1 = lower back)
+ *      [2..3]  uint16 sequence number
+ *      [4..15] int16 ax, ay, az (1 LSB = 0.001 g), gx, gy, gz (1 LSB = 0.1 dps)
+ *  - Timed binary: the same 16 bytes with sync 0xA6, followed by
+ *      [16..19] uint32 device timestamp in microseconds (wraps every ~71 minutes)
+ *
+ * Sensors stay in text mode until the app writes {@link #BINARY_MODE_COMMAND}
+ * to the RX characteristic; firmware without binary support ignores it.
+ * Not thread-safe: use one instance per GATT connection.
+ */
+class ImuStreamDecoder implements ImuLineFramer.FrameListener {
+
+    private static final String TAG = "ImuStreamDecoder";
+
+    static final int NO_SEQUENCE = -1;
+    static final long NO_DEVICE_TIME = -1;
+
+    static final byte BINARY_SYNC = (byte) 0xA5;
+    static final int BINARY_FRAME_SIZE = 16;
+    static final byte TIMED_BINARY_SYNC = (byte) 0xA6;
+    static final int TIMED_BINARY_FRAME_SIZE = 20;
+    static final float ACCEL_LSB = 0.001f;
+    static final float GYRO_LSB = 0.1f;
+
+    static final byte[] BINARY_MODE_COMMAND = "BIN\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Receives one complete accel + gyro sample. sequence is NO_SEQUENCE for text
+     * lines; deviceTimeUs is NO_DEVICE_TIME unless the frame carried a timestamp.
+     */
+    interface SampleListener {
+        void onSample(int sensor, int sequence, long deviceTimeUs,
+                      float ax, float ay, float az,
+                      float gx, float gy, float gz);
+    }
+
+    private final SampleListener listener;
+    private final ImuLineFramer lineFramer = new ImuLineFramer(this);
+
+    // Text mode: accel line waiting for its gyro line
+    private float pendingAx, pendingAy, pendingAz;
+    private int pendingSensor = ImuLineFramer.SENSOR_UNKNOWN;
+
+    // Binary mode bookkeeping
+    private boolean binaryMode = false;
+    private final int[] lastSequence = {NO_SEQUENCE, NO_SEQUENCE};
+    private long sampleCount = 0;
+    private long missedFrames = 0;
+    private long malformedFrames = 0;
+
+    ImuStreamDecoder(SampleListener listener) {
+        this.listener = listener;
+    }
+
+    void feed(byte[] data) {
+        if (data != null) {
+            feed(data, 0, data.length);
+        }
+    }
+
+    /**
+     * Decodes one notification held in {@code data[offset, offset + length)}.
+     */
+    void feed(byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+
+        int frameSize = 0;
+        if (data[offset] == BINARY_SYNC && length % BINARY_FRAME_SIZE == 0) {
+            frameSize = BINARY_FRAME_SIZE;
+        } else if (data[offset] == TIMED_BINARY_SYNC && length % TIMED_BINARY_FRAME_SIZE == 0) {
+            frameSize = TIMED_BINARY_FRAME_SIZE;
+        }
+
+        if (frameSize > 0) {
+            if (!binaryMode) {
+                Log.d(TAG, "✓ Binary IMU frames detected" + (frameSize == TIMED_BINARY_FRAME_SIZE ? " (with device time)" : ""));
+                binaryMode = true;
+                lineFramer.reset();
+                pendingSensor = ImuLineFramer.SENSOR_UNKNOWN;
+            }
+            int end = offset + length;
+            for (int frame = offset; frame < end; frame += frameSize) {
+                decodeBinaryFrame(data, frame, frameSize);
+            }
+        } else {
+            lineFramer.feed(data, offset, length);
+        }
+    }
+
+    /**
+     * Clears partial lines and sequence tracking, e.g. after a disconnect.
+     * The sensor falls back to text on reconnect, so binary mode is cleared too.
+     */
+    void reset() {
+        lineFramer.reset();
+        pendingSensor = ImuLineFramer.SENSOR_UNKNOWN;
+        binaryMode = false;
+        lastSequence[0] = NO_SEQUENCE;
+        lastSequence[1] = NO_SEQUENCE;
+    }
+
+    boolean isBinaryMode() {
+        return binaryMode;
+    }
+
+    long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Frames lost in transit, inferred from binary sequence number gaps.
+     */
+    long getMissedFrames() {
+        return missedFrames;
+    }
+
+    long getMalformedFrames() {
+        return malformedFrames + lineFramer.getMalformedCount();
+    }
+
+    private void decodeBinaryFrame(byte[] data, int offset, int frameSize) {
+        byte expectedSync = frameSize == TIMED_BINARY_FRAME_SIZE ? TIMED_BINARY_SYNC : BINARY_SYNC;
+        if (data[offset] != expectedSync) {
+            malformedFrames++;
+            return;
+        }
+
+        int sensor = data[offset + 1];
+        if (sensor != ImuLineFramer.SENSOR_UPPER_BACK && sensor != ImuLineFramer.SENSOR_LOWER_BACK) {
+            malformedFrames++;
+            return;
+        }
+
+        int sequence = readUint16(data, offset + 2);
+        int previous = lastSequence[sensor];
+        if (previous != NO_SEQUENCE) {
+            int gap = (sequence - previous - 1) & 0xFFFF;
+            // A huge "gap" is really a duplicate/out-of-order frame; don't count it
+            if (gap > 0 && gap < 0x8000) {
+                missedFrames += gap;
+            }
+        }
+        lastSequence[sensor] = sequence;
+
+        long deviceTimeUs = frameSize == TIMED_BINARY_FRAME_SIZE ? readUint32(data, offset + 16) : NO_DEVICE_TIME;
+
+        sampleCount++;
+        listener.onSample(sensor, sequence, deviceTimeUs,
+                readInt16(data, offset + 4) * ACCEL_LSB,
+                readInt16(data, offset + 6) * ACCEL_LSB,
+                readInt16(data, offset + 8) * ACCEL_LSB,
+                readInt16(data, offset + 10) * GYRO_LSB,
+                readInt16(data, offset + 12) * GYRO_LSB,
+                readInt16(data, offset + 14) * GYRO_LSB);
+    }
+
+    @Override
+    public void onFrame(int sensor, byte type, float x, float y, float z) {
+        if (type == ImuLineFramer.TYPE_ACCEL) {
+            pendingAx = x;
+            pendingAy = y;
+            pendingAz = z;
+            pendingSensor = sensor;
+        } else if (type == ImuLineFramer.TYPE_GYRO) {
+            // A gyro line only completes a sample if it follows an accel line from the same sensor
+            if (pendingSensor == sensor) {
+                sampleCount++;
+                listener.onSample(sensor, NO_SEQUENCE, NO_DEVICE_TIME,
+                        pendingAx, pendingAy, pendingAz,
+                        x, y, z);
+            }
+            pendingSensor = ImuLineFramer.SENSOR_UNKNOWN;
+        }
+    }
+
+    private static int readUint16(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    private static short readInt16(byte[] data, int offset) {
+        return (short) readUint16(data, offset);
+    }
+
+    private static long readUint32(byte[] data, int offset) {
+        return (readUint16(data, offset) | ((long) readUint16(data, offset + 2) << 16)) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.ee475project;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends completed cycles to /predict without ever holding up monitoring.
+ *
+ * - Each request has a latency budget (REQUEST_BUDGET_MS), after which OkHttp cancels it.
+ * - Failed requests are retried with exponential backoff and jitter.
+ * - After FAILURE_THRESHOLD failures in a row the circuit opens: nothing is sent
+ *   for a cool-down (doubling up to MAX_COOLDOWN_MS), then one trial request
+ *   decides whether it closes again.
+ * - Cycles wait in a bounded queue (oldest dropped); once the server answers
+ *   again they go out together in one request if it accepts batches
+ *   (ServerCapabilities.PREDICT_BATCH), otherwise one after another.
+ * - While the circuit is open (or half-open) every new cycle gets a fallback
+ *   result straight away, so the screen can show PostureAnalyzer's threshold
+ *   verdict instead.
+ *
+ * All state is confined to the dispatcher's single thread.
+ */
+class InferenceDispatcher {
+
+    private static final String TAG = "InferenceDispatcher";
+
+    static final long REQUEST_BUDGET_MS = 8000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long BASE_COOLDOWN_MS = 15_000;
+    private static final long MAX_COOLDOWN_MS = 5 * 60_000;
+    private static final int MAX_QUEUED = 6;
+
+    /**
+     * Sends one or more cycles to the server's /predict in a single request
+     */
+    interface Transport {
+        void send(String serverUrl, List<InferencePayload> cycles, long budgetMs,
+                  BluetoothViewModel.OnInferenceUploadListener listener);
+    }
+
+    /**
+     * Outcome for one cycle; {@code prediction} is null when it is a fallback
+     */
+    static final class Result {
+        final String sessionId;
+        final String prediction;
+
+        Result(String sessionId, String prediction) {
+            this.sessionId = sessionId;
+            this.prediction = prediction;
+        }
+
+        boolean isFallback() {
+            return prediction == null;
+        }
+    }
+
+    /**
+     * Called on the dispatcher thread, once per cycle (several in a row for a batch reply)
+     */
+    interface Listener {
+        void onResult(Result result);
+    }
+
+    private final Transport transport;
+    private final Listener listener;
+    private final ServerCapabilities capabilities;
+    private final ScheduledExecutorService executor;
+    private final ArrayDeque<InferencePayload> queue = new ArrayDeque<>();
+
+    private String serverUrl;
+    private boolean inFlight = false;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;  // elapsedRealtime; 0 while the circuit is closed
+    private long cooldownMs = BASE_COOLDOWN_MS;
+
+    InferenceDispatcher(Transport transport, Listener listener, ServerCapabilities capabilities) {
+        this.transport = transport;
+        this.listener = listener;
+        this.capabilities = capabilities;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                runnable -> new Thread(runnable, "inference-dispatcher"));
+    }
+
+    /**
+     * Queues a completed cycle; returns immediately
+     */
+    void submit(String serverUrl, InferencePayload payload) {
+        executor.execute(() -> {
+            this.serverUrl = serverUrl;
+            if (queue.size() == MAX_QUEUED) {
+                InferencePayload dropped = queue.removeFirst();
+                Log.w(TAG, "Queue full, dropping cycle " + dropped.sessionId);
+            }
+            queue.addLast(payload);
+
+            if (openUntil != 0) {
+                Log.d(TAG, "Circuit open, threshold fallback for " + payload.sessionId
+                        + " (" + queue.size() + " queued)");
+                listener.onResult(new Result(payload.sessionId, null));
+            }
+            pump();
+        });
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Replies can arrive after shutdown(); they are dropped. */
+    private void runOnDispatcher(Runnable task) {
+        if (!executor.isShutdown()) {
+            executor.execute(task);
+        }
+    }
+
+    private void runOnDispatcherLater(Runnable task, long delayMs) {
+        try {
+            executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Shut down, not rescheduling");
+        }
+    }
+
+    private boolean isOpen() {
+        return openUntil != 0 && SystemClock.elapsedRealtime() < openUntil;
+    }
+
+    private void pump() {
+        if (inFlight || queue.isEmpty() || isOpen()) {
+            return;
+        }
+        boolean halfOpen = openUntil != 0;
+        boolean batch = !halfOpen && queue.size() > 1
+                && capabilities.supports(serverUrl, ServerCapabilities.PREDICT_BATCH);
+
+        List<InferencePayload> cycles = new ArrayList<>();
+        if (batch) {
+            cycles.addAll(queue);
+        } else {
+            cycles.add(queue.peekFirst());
+        }
+        inFlight = true;
+        attempt(cycles, 1, halfOpen);
+    }
+
+    private void attempt(List<InferencePayload> cycles, int attempt, boolean trial) {
+        if (trial) {
+            Log.d(TAG, "Circuit half-open, trying " + cycles.get(0).sessionId);
+        }
+        transport.send(serverUrl, cycles, REQUEST_BUDGET_MS, new BluetoothViewModel.OnInferenceUploadListener() {
+            @Override
+            public void onUploadSuccess(String response) {
+                runOnDispatcher(() -> onSuccess(cycles, response));
+            }
+
+            @Override
+            public void onUploadFailure(String error, boolean retryable) {
+                runOnDispatcher(() -> onFailure(cycles, attempt, trial, error, retryable));
+            }
+        });
+    }
+
+    private void onSuccess(List<InferencePayload> cycles, String response) {
+        close();
+
+        List<String> predictions = parsePredictions(response, cycles.size());
+        for (int i = 0; i < cycles.size(); i++) {
+            queue.remove(cycles.get(i));
+            listener.onResult(new Result(cycles.get(i).sessionId, predictions.get(i)));
+        }
+        inFlight = false;
+        pump();
+    }
+
+    private void onFailure(List<InferencePayload> cycles, int attempt, boolean trial,
+                           String error, boolean retryable) {
+        if (!retryable) {
+            // The server answered; it just didn't like this request
+            Log.e(TAG, "✗ Rejected: " + error);
+            close();
+            for (InferencePayload cycle : cycles) {
+                queue.remove(cycle);
+                listener.onResult(new Result(cycle.sessionId, "Error"));
+            }
+            inFlight = false;
+            pump();
+            return;
+        }
+
+        consecutiveFailures++;
+        Log.w(TAG, "✗ Attempt " + attempt + " failed (" + consecutiveFailures + " in a row): " + error);
+
+        if (!trial && attempt < MAX_ATTEMPTS && consecutiveFailures < FAILURE_THRESHOLD) {
+            long backoff = BASE_BACKOFF_MS << (attempt - 1);
+            backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            runOnDispatcherLater(() -> attempt(cycles, attempt + 1, false), backoff);
+            return;
+        }
+        open();
+    }
+
+    private void close() {
+        if (openUntil != 0) {
+            Log.d(TAG, "✓ Server answering again, circuit closed");
+        }
+        consecutiveFailures = 0;
+        openUntil = 0;
+        cooldownMs = BASE_COOLDOWN_MS;
+    }
+
+    /**
+     * Stops calling the server for a cool-down; the cycles stay queued for when it is back
+     */
+    private void open() {
+        boolean wasOpen = openUntil != 0;
+        openUntil = SystemClock.elapsedRealtime() + cooldownMs;
+        Log.w(TAG, "Circuit open for " + cooldownMs / 1000 + "s (" + queue.size() + " queued)");
+        runOnDispatcherLater(this::pump, cooldownMs);
+        cooldownMs = Math.min(cooldownMs * 2, MAX_COOLDOWN_MS);
+        inFlight = false;
+
+        if (!wasOpen) {
+            // Cycles queued while it was closed haven't had a result yet
+            for (InferencePayload cycle : queue) {
+                listener.onResult(new Result(cycle.sessionId, null));
+            }
+        }
+    }
+
+    /**
+     * final_prediction of a single reply, or of each entry of a batch reply's "predictions"
+     */
+    static List<String> parsePredictions(String response, int count) {
+        List<String> predictions = new ArrayList<>();
+        try {
+            JSONObject json = new JSONObject(response);
+            if (count == 1) {
+                predictions.add(json.optString("final_prediction", "Unknown"));
+            } else {
+                JSONArray list = json.getJSONArray("predictions");
+                for (int i = 0; i < count; i++) {
+                    JSONObject entry = list.optJSONObject(i);
+                    predictions.add(entry != null ? entry.optString("final_prediction", "Unknown") : "Unknown");
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing ML response: " + e.getMessage());
+            while (predictions.size() < count) {
+                predictions.add("Error");
+            }
+        }
+        return predictions;
+    }
+}
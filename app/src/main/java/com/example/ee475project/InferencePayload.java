@@ -0,0 +1,235 @@
+package com.example.ee475project;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * One cycle's upper/lower back samples, ready for /predict.
+ *
+ * Samples are kept as flat arrays (CHANNELS floats per sample, the StreamAligner
+ * layout) and written straight into the request body, so encoding allocates
+ * nothing per sample. The same arrays are packed for the Firebase archive.
+ *
+ * JSON body: { user_id, sample_rate_hz, duration_seconds, sample_count, upper_back[], lower_back[] }
+ * with sample points as {ax, ay, az, gx, gy, gz} (no timestamps), written compact
+ * (no whitespace). Batches wrap several of these as {"cycles":[...]}.
+ *
+ * Binary body (ServerCapabilities.IMU_BINARY), big-endian:
+ *   "IMUB", u8 version (1), u8 channels (6),
+ *   f32 sample_rate_hz, f32 duration_seconds,
+ *   u16 user_id length + UTF-8 bytes,
+ *   u32 upper count + count * channels f32, u32 lower count + count * channels f32
+ */
+class InferencePayload {
+
+    static final MediaType BINARY = MediaType.get("application/x-imu-binary");
+    private static final int BINARY_VERSION = 1;
+
+    private static final int CHANNELS = StreamAligner.CHANNELS;
+    private static final String[] CHANNEL_KEYS = {"ax", "ay", "az", "gx", "gy", "gz"};
+
+    final String sessionId;
+    private final String userId;
+    private final long[] upperTimes;
+    private final float[] upper;
+    private final int upperCount;
+    private final long[] lowerTimes;
+    private final float[] lower;
+    private final int lowerCount;
+
+    /**
+     * Takes ownership of the arrays; the caller must not modify them afterwards
+     */
+    InferencePayload(String sessionId, String userId,
+                     long[] upperTimes, float[] upper, int upperCount,
+                     long[] lowerTimes, float[] lower, int lowerCount) {
+        this.sessionId = sessionId;
+        this.userId = userId;
+        this.upperTimes = upperTimes;
+        this.upper = upper;
+        this.upperCount = upperCount;
+        this.lowerTimes = lowerTimes;
+        this.lower = lower;
+        this.lowerCount = lowerCount;
+    }
+
+    /**
+     * From sample lists, e.g. arrays read back from Firebase
+     */
+    static InferencePayload fromSamples(String sessionId, String userId,
+                                        List<SensorData> upperSamples, List<SensorData> lowerSamples) {
+        long[] upperTimes = new long[upperSamples.size()];
+        float[] upper = new float[upperSamples.size() * CHANNELS];
+        toArrays(upperSamples, upperTimes, upper);
+        long[] lowerTimes = new long[lowerSamples.size()];
+        float[] lower = new float[lowerSamples.size() * CHANNELS];
+        toArrays(lowerSamples, lowerTimes, lower);
+        return new InferencePayload(sessionId, userId, upperTimes, upper, upperSamples.size(),
+                lowerTimes, lower, lowerSamples.size());
+    }
+
+    static void toArrays(List<SensorData> samples, long[] times, float[] data) {
+        for (int i = 0; i < samples.size(); i++) {
+            SensorData sample = samples.get(i);
+            int base = i * CHANNELS;
+            times[i] = sample.timestamp;
+            data[base] = sample.accelX;
+            data[base + 1] = sample.accelY;
+            data[base + 2] = sample.accelZ;
+            data[base + 3] = sample.gyroX;
+            data[base + 4] = sample.gyroY;
+            data[base + 5] = sample.gyroZ;
+        }
+    }
+
+    boolean isEmpty() {
+        return upperCount == 0 || lowerCount == 0;
+    }
+
+    int getSampleCount() {
+        return upperCount;
+    }
+
+    float getSampleRateHz() {
+        return SampleClock.sampleRateHz(upperCount, upperTimes[0], upperTimes[upperCount - 1]);
+    }
+
+    float getDurationSeconds() {
+        return (upperTimes[upperCount - 1] - upperTimes[0]) / 1000f;
+    }
+
+    /**
+     * Packed forms for the session's archive copy (see ImuArrayCodec)
+     */
+    Map<String, Object> packUpper() {
+        return ImuArrayCodec.encode(upper, upperTimes, upperCount);
+    }
+
+    Map<String, Object> packLower() {
+        return ImuArrayCodec.encode(lower, lowerTimes, lowerCount);
+    }
+
+    /**
+     * Body encoded while OkHttp sends it; can be written more than once
+     */
+    RequestBody asRequestBody() {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return TrainingPayloadWriter.JSON;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                InferencePayload.this.writeTo(sink);
+            }
+        };
+    }
+
+    /**
+     * Several cycles in one JSON body, {"cycles": [...]}, for ServerCapabilities.PREDICT_BATCH
+     */
+    static RequestBody asBatchRequestBody(List<InferencePayload> cycles) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return TrainingPayloadWriter.JSON;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.writeUtf8("{\"cycles\":[");
+                for (int i = 0; i < cycles.size(); i++) {
+                    if (i > 0) {
+                        sink.writeByte(',');
+                    }
+                    cycles.get(i).writeTo(sink);
+                }
+                sink.writeUtf8("]}");
+                sink.flush();
+            }
+        };
+    }
+
+    /**
+     * Binary form of the same body, about a third of the JSON size before compression
+     */
+    RequestBody asBinaryRequestBody() {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return BINARY;
+            }
+
+            @Override
+            public long contentLength() {
+                return 4 + 2 + 8 + 2 + okio.Utf8.size(userId)
+                        + 8 + 4L * CHANNELS * ((long) upperCount + lowerCount);
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                writeBinary(sink);
+            }
+        };
+    }
+
+    void writeBinary(BufferedSink sink) throws IOException {
+        sink.writeUtf8("IMUB").writeByte(BINARY_VERSION).writeByte(CHANNELS);
+        sink.writeInt(Float.floatToIntBits(getSampleRateHz()));
+        sink.writeInt(Float.floatToIntBits(getDurationSeconds()));
+        sink.writeShort((int) okio.Utf8.size(userId)).writeUtf8(userId);
+        writeFloats(sink, upper, upperCount);
+        writeFloats(sink, lower, lowerCount);
+        sink.flush();
+    }
+
+    private static void writeFloats(BufferedSink sink, float[] data, int count) throws IOException {
+        sink.writeInt(count);
+        for (int i = 0; i < count * CHANNELS; i++) {
+            sink.writeInt(Float.floatToIntBits(data[i]));
+        }
+    }
+
+    void writeTo(BufferedSink sink) throws IOException {
+        sink.writeUtf8("{\"user_id\":");
+        TrainingPayloadWriter.writeString(sink, userId);
+        sink.writeUtf8(",\"sample_rate_hz\":");
+        TrainingPayloadWriter.writeFixed(sink, getSampleRateHz(), 2);
+        sink.writeUtf8(",\"duration_seconds\":");
+        TrainingPayloadWriter.writeFixed(sink, getDurationSeconds(), 2);
+        sink.writeUtf8(",\"sample_count\":").writeDecimalLong(upperCount);
+
+        sink.writeUtf8(",\"upper_back\":");
+        writeSamples(sink, upper, upperCount);
+        sink.writeUtf8(",\"lower_back\":");
+        writeSamples(sink, lower, lowerCount);
+        sink.writeByte('}');
+        sink.flush();
+    }
+
+    private static void writeSamples(BufferedSink sink, float[] data, int count) throws IOException {
+        sink.writeByte('[');
+        for (int i = 0; i < count; i++) {
+            int base = i * CHANNELS;
+            if (i > 0) {
+                sink.writeByte(',');
+            }
+            sink.writeByte('{');
+            for (int c = 0; c < CHANNELS; c++) {
+                if (c > 0) {
+                    sink.writeByte(',');
+                }
+                sink.writeByte('"').writeUtf8(CHANNEL_KEYS[c]).writeUtf8("\":");
+                TrainingPayloadWriter.writeFixed(sink, data[base + c], 4);
+            }
+            sink.writeByte('}');
+        }
+        sink.writeByte(']');
+    }
+}
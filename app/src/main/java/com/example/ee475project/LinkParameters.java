@@ -0,0 +1,56 @@
+package com.example.ee475project;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+
+import java.util.Locale;
+
+/**
+ * Values negotiated for one sensor link after connect (MTU, PHY, connection priority).
+ */
+public class LinkParameters {
+    public final String deviceName;
+    public final int mtu;
+    public final int txPhy;
+    public final int rxPhy;
+    public final int connectionPriority;
+
+    public LinkParameters(String deviceName, int mtu, int txPhy, int rxPhy, int connectionPriority) {
+        this.deviceName = deviceName;
+        this.mtu = mtu;
+        this.txPhy = txPhy;
+        this.rxPhy = rxPhy;
+        this.connectionPriority = connectionPriority;
+    }
+
+    /**
+     * Bytes of notification payload per packet (MTU minus the 3-byte ATT header)
+     */
+    public int getPayloadSize() {
+        return mtu - 3;
+    }
+
+    static String phyName(int phy) {
+        switch (phy) {
+            case BluetoothDevice.PHY_LE_1M: return "1M";
+            case BluetoothDevice.PHY_LE_2M: return "2M";
+            case BluetoothDevice.PHY_LE_CODED: return "Coded";
+            default: return "?";
+        }
+    }
+
+    static String priorityName(int priority) {
+        switch (priority) {
+            case BluetoothGatt.CONNECTION_PRIORITY_HIGH: return "HIGH";
+            case BluetoothGatt.CONNECTION_PRIORITY_BALANCED: return "BALANCED";
+            case BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER: return "LOW_POWER";
+            default: return "DEFAULT";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: MTU %d, PHY tx %s / rx %s, priority %s",
+                deviceName, mtu, phyName(txPhy), phyName(rxPhy), priorityName(connectionPriority));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.ee475project;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The app's one OkHttpClient for the ML server.
+ *
+ * Every endpoint client is derived with newBuilder(), so they share a single
+ * connection pool, dispatcher and thread pool - a TLS connection opened by
+ * /test or prewarm() is reused by the next /predict. Only the timeouts differ:
+ *
+ *   /test     short, it's a reachability check
+ *   /predict  one cycle's samples; the server runs the model before replying
+ *   /train    the whole training document, and the server retrains before replying
+ */
+final class MLHttpClient {
+
+    private static final String TAG = "MLHttpClient";
+
+    // Idle connections kept this long, so one opened when inference is switched on survives until the cycle ends
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static final OkHttpClient SHARED = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .retryOnConnectionFailure(true)
+            .build();
+
+    private static final OkHttpClient TEST = SHARED.newBuilder()
+            .readTimeout(10, TimeUnit.SECONDS)
+            .callTimeout(15, TimeUnit.SECONDS)
+            .build();
+
+    private static final OkHttpClient PREDICT = SHARED.newBuilder()
+            .writeTimeout(15, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .callTimeout(45, TimeUnit.SECONDS)
+            .build();
+
+    private static final OkHttpClient TRAIN = SHARED.newBuilder()
+            .writeTimeout(60, TimeUnit.SECONDS)
+            .readTimeout(120, TimeUnit.SECONDS)
+            .callTimeout(180, TimeUnit.SECONDS)
+            .build();
+
+    private MLHttpClient() {}
+
+    static OkHttpClient forTest() {
+        return TEST;
+    }
+
+    static OkHttpClient forPredict() {
+        return PREDICT;
+    }
+
+    static OkHttpClient forTrain() {
+        return TRAIN;
+    }
+
+    /**
+     * Opens (DNS, TCP, TLS) a pooled connection to the server ahead of the first upload.
+     * Any reply will do; the response is discarded.
+     */
+    static void prewarm(String serverUrl) {
+        if (serverUrl == null || serverUrl.trim().isEmpty()) {
+            return;
+        }
+        String url = serverUrl.trim();
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            url = "https://" + url;
+        }
+        Request request;
+        try {
+            request = new Request.Builder().url(ServerCapabilities.baseUrl(url) + "/").head().build();
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Not prewarming, invalid URL: " + serverUrl);
+            return;
+        }
+
+        TEST.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.w(TAG, "Prewarm failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                response.close();
+                Log.d(TAG, "✓ Connection to " + request.url().host() + " ready ("
+                        + response.protocol() + ")");
+            }
+        });
+    }
+}
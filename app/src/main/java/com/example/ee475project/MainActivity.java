@@ -50,6 +50,7 @@ public class MainActivity extends AppCompatActivity {
         }
 
         fetchUserData(currentUser.getUid());
+        SessionCompactionWorker.schedule(this);
 
         BottomNavigationView bottomNav = findViewById(R.id.bottom_navigation);
         bottomNav.setOnItemSelectedListener(navListener);
@@ -0,0 +1,242 @@
+package com.example.ee475project;
+
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves BLE notification handling off the Bluetooth binder thread.
+ *
+ * Each sensor link gets its own {@link Channel}: a fixed-size single-producer /
+ * single-consumer ring of byte slots. The GATT callback (the only producer) just
+ * copies the notification into the next free slot. One shared worker thread (the
+ * only consumer) drains every channel and hands the bytes to the channel's sink,
+ * which decodes, analyzes and persists the samples.
+ *
+ * Nothing on the producer side blocks or allocates: a full ring drops the
+ * notification and counts it, and a payload larger than a slot is counted as an
+ * overflow.
+ */
+class NotificationPipeline {
+
+    private static final String TAG = "NotificationPipeline";
+
+    static final int DEFAULT_CAPACITY = 256;             // Slots per channel (power of two)
+    static final int SLOT_SIZE = SensorLink.REQUESTED_MTU - 3; // Largest notification payload
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static volatile NotificationPipeline instance;
+
+    /**
+     * Processes one notification on the worker thread. The array is reused after return.
+     * arrivalNanos is the elapsedRealtimeNanos captured by the producer.
+     */
+    interface Sink {
+        void onNotification(byte[] data, int offset, int length, long arrivalNanos);
+
+        /** The channel was closed; called on the worker thread after its last notification. */
+        void onChannelClosed();
+    }
+
+    /**
+     * Ring buffer for one link. {@link #offer} may only be called from one thread at a time.
+     */
+    static final class Channel {
+        private final String name;
+        private final Sink sink;
+        private final byte[][] slots;
+        private final int[] lengths;
+        private final long[] arrivalNanos;
+        private final int mask;
+
+        // tail is written only by the producer, head only by the consumer
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        // Single-writer counters: dropped/overflow by the producer, processed by the consumer
+        private volatile long droppedCount = 0;
+        private volatile long overflowCount = 0;
+        private volatile long processedCount = 0;
+
+        private volatile boolean closed = false;
+        private NotificationPipeline pipeline;
+
+        private Channel(String name, Sink sink, int capacity) {
+            this.name = name;
+            this.sink = sink;
+            this.slots = new byte[capacity][SLOT_SIZE];
+            this.lengths = new int[capacity];
+            this.arrivalNanos = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Copies a notification into the ring.
+         * @return false if the ring was full or the payload too large (the notification is dropped)
+         */
+        boolean offer(byte[] data, long arrivalNanos) {
+            if (closed || data == null) {
+                return false;
+            }
+            if (data.length > SLOT_SIZE) {
+                overflowCount++;
+                return false;
+            }
+
+            long t = tail.get();
+            if (t - head.get() > mask) {
+                droppedCount++;
+                return false;
+            }
+
+            int index = (int) (t & mask);
+            System.arraycopy(data, 0, slots[index], 0, data.length);
+            lengths[index] = data.length;
+            this.arrivalNanos[index] = arrivalNanos;
+            // Publishes the slot contents to the consumer. A full volatile write, not lazySet:
+            // it must not be reordered after the read of idle in wakeUp(), or a worker going
+            // idle at the same moment could miss both the slot and the unpark
+            tail.set(t + 1);
+
+            pipeline.wakeUp();
+            return true;
+        }
+
+        /**
+         * Stops accepting notifications. The worker discards anything still queued
+         * and then calls {@link Sink#onChannelClosed()}.
+         */
+        void close() {
+            closed = true;
+            if (pipeline != null) {
+                pipeline.wakeUp();
+            }
+        }
+
+        int size() {
+            return (int) (tail.get() - head.get());
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        /** Notifications lost because the ring was full. */
+        long getDroppedCount() {
+            return droppedCount;
+        }
+
+        /** Notifications lost because they did not fit in a slot. */
+        long getOverflowCount() {
+            return overflowCount;
+        }
+
+        long getProcessedCount() {
+            return processedCount;
+        }
+
+        /** Consumer side; returns true if anything was processed. */
+        private boolean drain() {
+            long h = head.get();
+            long t = tail.get();
+            if (h == t) {
+                return false;
+            }
+            while (h < t) {
+                int index = (int) (h & mask);
+                try {
+                    sink.onNotification(slots[index], 0, lengths[index], arrivalNanos[index]);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error processing notification from " + name + ": " + e.getMessage(), e);
+                }
+                h++;
+                head.lazySet(h);  // Hands the slot back to the producer
+            }
+            processedCount = h;
+            return true;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Channel> channels = new CopyOnWriteArrayList<>();
+    private final Thread worker;
+    private volatile boolean idle = false;
+
+    /**
+     * Process-wide pipeline shared by the monitoring and training view models.
+     */
+    static NotificationPipeline getInstance() {
+        if (instance == null) {
+            synchronized (NotificationPipeline.class) {
+                if (instance == null) {
+                    instance = new NotificationPipeline();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private NotificationPipeline() {
+        worker = new Thread(this::runWorker, "ble-sample-worker");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    Channel openChannel(String name, Sink sink) {
+        Channel channel = new Channel(name, sink, DEFAULT_CAPACITY);
+        channel.pipeline = this;
+        channels.add(channel);
+        return channel;
+    }
+
+    private void wakeUp() {
+        if (idle) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            boolean didWork = false;
+            for (Channel channel : channels) {
+                if (channel.closed) {
+                    channel.head.set(channel.tail.get());
+                    channels.remove(channel);
+                    logChannelStats(channel);
+                    channel.sink.onChannelClosed();
+                    continue;
+                }
+                didWork |= channel.drain();
+            }
+
+            if (!didWork) {
+                // Re-check after announcing idle so a producer's wake-up is never missed
+                idle = true;
+                if (!hasPendingWork()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    private boolean hasPendingWork() {
+        for (Channel channel : channels) {
+            if (channel.closed || channel.size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void logChannelStats(Channel channel) {
+        if (channel.droppedCount > 0 || channel.overflowCount > 0) {
+            Log.w(TAG, channel.name + " closed - processed " + channel.processedCount
+                    + ", dropped " + channel.droppedCount + ", overflow " + channel.overflowCount);
+        } else {
+            Log.d(TAG, channel.name + " closed - processed " + channel.processedCount);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.ee475project;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -9,9 +13,11 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
@@ -23,131 +29,209 @@ public class PostureAnalyzer {
 
     // ✅ REDUCED: Only process 3 sessions at a time to avoid memory issues
     private static final int MAX_SESSIONS_PER_ANALYSIS = 3;
-    private static final int MAX_CLEANUP_BATCH_SIZE = 10;
 
-    // Session retention - 7 days
-    private static final long SESSION_RETENTION_MS = 7 * 24 * 60 * 60 * 1000L;
+    // Queue of session IDs waiting for analysis: pending_analysis/{uid}/{sessionId} = session start time
+    static final String PENDING_ANALYSIS = "pending_analysis";
+    private static final String PREFS_NAME = "PostureAnalyzer";
+    private static final String PREF_QUEUE_BACKFILLED = "pending_backfilled_";
+    private static final String PREF_ROLLUPS_BACKFILLED = "rollups_backfilled_";
 
     private DatabaseReference sessionsRef;
-    private DatabaseReference statsRef;
-    private DatabaseReference calibrationRef;
+    private final DatabaseReference pendingRef;
+    private final SharedPreferences prefs;
+    private final CalibrationCache calibrationCache;
+    private final String sessionsPath;
+    private final String pendingPath;
+    private final String statsPath;
+    private final FirebaseWriteBatcher writeBatcher;
     private String userId;
+
+    // Sessions whose stats increments were already queued by this process. Only needed until
+    // their analyzed flag is applied locally (the same flush), so a small LRU is plenty
+    private static final int COUNTED_SESSIONS_MAX = 256;
+    private static final Map<String, Boolean> countedSessions =
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > COUNTED_SESSIONS_MAX;
+                }
+            };
+    // Callers waiting on a rollup rebuild in progress (main thread only); null when none is running
+    private static List<Runnable> rollupWaiters;
+    private static final long CONNECT_WAIT_MS = 3000;
     private CalibrationData calibrationData;
 
     private static final float FILTER_ALPHA = 0.5f;
     private Float previousFilteredPitchDiff = null;
 
-    // Cleanup constants
-    private static final long STALE_SESSION_THRESHOLD_MS = 24 * 60 * 60 * 1000; // 24 hours
-
-    public PostureAnalyzer() {
+    public PostureAnalyzer(Context context) {
+        writeBatcher = FirebaseWriteBatcher.getInstance(context);
         userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        sessionsPath = "posture_sessions/" + userId;
+        statsPath = "daily_stats/" + userId;
+        pendingPath = PENDING_ANALYSIS + "/" + userId;
         sessionsRef = FirebaseDatabase.getInstance()
                 .getReference("posture_sessions")
                 .child(userId);
-        statsRef = FirebaseDatabase.getInstance()
-                .getReference("daily_stats")
-                .child(userId);
-        calibrationRef = FirebaseDatabase.getInstance()
-                .getReference("calibration_data")
-                .child(userId);
+        pendingRef = pendingAnalysisRef(userId);
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        calibrationCache = CalibrationCache.getInstance(context);
+        calibrationCache.prefetch();
     }
 
-    public interface OnCleanupCompleteListener {
-        void onCleanupComplete(int deletedCount);
-        void onCleanupError(String error);
+    /**
+     * Sessions waiting for analysis; a cheap existence check is limitToFirst(1)
+     */
+    static DatabaseReference pendingAnalysisRef(String userId) {
+        return FirebaseDatabase.getInstance().getReference(PENDING_ANALYSIS).child(userId);
     }
 
     /**
-     * ✅ NEW: Clean up sessions older than 7 days
-     * Safe because daily_stats already has aggregated data
+     * Sessions written before the queue existed are only findable by the old
+     * analyzed == false scan; enqueue them once per user, then use the queue.
      */
-    public void cleanupOldSessions(OnCleanupCompleteListener listener) {
-        long cutoffTime = System.currentTimeMillis() - SESSION_RETENTION_MS;
+    private void backfillPendingQueue(Runnable then) {
+        String key = PREF_QUEUE_BACKFILLED + userId;
+        if (prefs.getBoolean(key, false)) {
+            then.run();
+            return;
+        }
 
-        sessionsRef.orderByChild("timestamp")
-                .endAt(cutoffTime)
-                .limitToFirst(20)  // Small batch
+        sessionsRef.orderByChild("analyzed").equalTo(false)
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        int deletedCount = 0;
-
+                        Map<String, Object> entries = new HashMap<>();
                         for (DataSnapshot sessionSnapshot : snapshot.getChildren()) {
-                            sessionSnapshot.getRef().removeValue();
-                            deletedCount++;
+                            Long timestamp = sessionSnapshot.child("timestamp").getValue(Long.class);
+                            entries.put(pendingPath + "/" + sessionSnapshot.getKey(), timestamp != null ? timestamp : 0L);
                         }
-
-                        if (deletedCount > 0) {
-                            Log.d(TAG, "✓ Cleaned up " + deletedCount + " old sessions");
-                        }
-
-                        if (listener != null) {
-                            listener.onCleanupComplete(deletedCount);
+                        if (!entries.isEmpty()) {
+                            writeBatcher.setAll(entries);
+                            writeBatcher.flush();
                         }
+                        prefs.edit().putBoolean(key, true).apply();
+                        Log.d(TAG, "✓ Queued " + entries.size() + " older unanalyzed session(s)");
+                        then.run();
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError error) {
-                        if (listener != null) {
-                            listener.onCleanupError(error.getMessage());
-                        }
+                        Log.e(TAG, "Queue backfill failed: " + error.getMessage());
+                        then.run();
                     }
                 });
     }
 
     /**
-     * Clean up incomplete/stale sessions from Firebase
-     * ✅ OPTIMIZED: Smaller batch size
+     * Rollups only receive increments from sessions scored after they were added;
+     * rebuild week/month/total once from daily_stats so they include older history.
+     * Runs before every analysis path, so no increment lands in between.
+     *
+     * Offline, daily_stats may only be partly cached, so the rebuild waits for a
+     * connection: up to CONNECT_WAIT_MS (right after launch .info/connected hasn't
+     * fired yet), after which {@code then} goes ahead and the rebuild runs on connect.
      */
-    public void cleanupIncompleteSessions(OnCleanupCompleteListener listener) {
-        sessionsRef.orderByChild("analyzed").equalTo(false)
-                .limitToLast(MAX_CLEANUP_BATCH_SIZE)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(@NonNull DataSnapshot snapshot) {
-                        int deletedCount = 0;
-                        long currentTime = System.currentTimeMillis();
-
-                        for (DataSnapshot sessionSnapshot : snapshot.getChildren()) {
-                            // ✅ Don't deserialize entire session - just check fields directly
-                            Long timestamp = sessionSnapshot.child("timestamp").getValue(Long.class);
-                            boolean hasUpperBack = sessionSnapshot.hasChild("upperBack");
-                            boolean hasLowerBack = sessionSnapshot.hasChild("lowerBack");
+    void backfillRollups(Runnable then) {
+        String key = PREF_ROLLUPS_BACKFILLED + userId;
+        if (prefs.getBoolean(key, false)) {
+            then.run();
+            return;
+        }
+        if (!writeBatcher.isConnected()) {
+            boolean[] handled = {false};
+            writeBatcher.runWhenConnected(() -> {
+                if (handled[0]) {
+                    backfillRollups(() -> {});  // Caller already went ahead; just rebuild
+                } else {
+                    handled[0] = true;
+                    backfillRollups(then);
+                }
+            });
+            new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                if (!handled[0]) {
+                    handled[0] = true;
+                    Log.w(TAG, "Offline - rollups will be rebuilt on reconnect");
+                    then.run();
+                }
+            }, CONNECT_WAIT_MS);
+            return;
+        }
+        if (rollupWaiters != null) {
+            rollupWaiters.add(then);  // Another screen is already rebuilding
+            return;
+        }
+        rollupWaiters = new ArrayList<>();
+        rollupWaiters.add(then);
+        Runnable done = () -> {
+            List<Runnable> waiters = rollupWaiters;
+            rollupWaiters = null;
+            for (Runnable waiter : waiters) {
+                waiter.run();
+            }
+        };
 
-                            boolean shouldDelete = false;
+        DatabaseReference totalRef = FirebaseDatabase.getInstance()
+                .getReference(PostureRollups.ROOT)
+                .child(userId)
+                .child(PostureRollups.TOTAL);
+        totalRef.child(PostureRollups.BACKFILLED).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot backfilled) {
+                if (backfilled.exists()) {
+                    prefs.edit().putBoolean(key, true).apply();  // Done from another device
+                    done.run();
+                    return;
+                }
+                rebuildRollups(key, done);
+            }
 
-                            // Missing sensor data
-                            if (!hasUpperBack || !hasLowerBack) {
-                                shouldDelete = true;
-                            }
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Rollup check failed: " + error.getMessage());
+                done.run();
+            }
+        });
+    }
 
-                            // Stale session (older than 24 hours)
-                            if (timestamp != null && currentTime - timestamp > STALE_SESSION_THRESHOLD_MS) {
-                                shouldDelete = true;
-                            }
+    private void rebuildRollups(String prefKey, Runnable then) {
+        FirebaseDatabase.getInstance().getReference("daily_stats").child(userId)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.US);
+                        PostureRollups.Counts counts = new PostureRollups.Counts();
+                        int days = 0;
 
-                            if (shouldDelete) {
-                                sessionSnapshot.getRef().removeValue();
-                                deletedCount++;
-                                Log.d(TAG, "Deleted incomplete session: " + sessionSnapshot.getKey());
+                        for (DataSnapshot daySnapshot : snapshot.getChildren()) {
+                            Integer total = daySnapshot.child("total_sessions").getValue(Integer.class);
+                            Integer slouching = daySnapshot.child("slouching_sessions").getValue(Integer.class);
+                            try {
+                                java.util.Calendar day = java.util.Calendar.getInstance();
+                                day.setTime(sdf.parse(daySnapshot.getKey()));
+                                counts.addDay(day, total != null ? total : 0, slouching != null ? slouching : 0);
+                                days++;
+                            } catch (java.text.ParseException e) {
+                                Log.w(TAG, "Skipping daily_stats key " + daySnapshot.getKey());
                             }
                         }
 
-                        if (deletedCount > 0) {
-                            Log.d(TAG, "Cleanup: " + deletedCount + " incomplete sessions deleted");
-                        }
-
-                        if (listener != null) {
-                            listener.onCleanupComplete(deletedCount);
-                        }
+                        Map<String, Object> updates = new HashMap<>();
+                        counts.addDay(java.util.Calendar.getInstance(), 0, 0);  // total exists even without history
+                        counts.putTotals(updates, userId);
+                        updates.put(PostureRollups.ROOT + "/" + userId + "/" + PostureRollups.TOTAL + "/"
+                                + PostureRollups.BACKFILLED, true);
+                        writeBatcher.setAll(updates);
+                        writeBatcher.flush();
+                        prefs.edit().putBoolean(prefKey, true).apply();
+                        Log.d(TAG, "✓ Rollups rebuilt from " + days + " day(s) of daily_stats");
+                        then.run();
                     }
 
                     @Override
                     public void onCancelled(@NonNull DatabaseError error) {
-                        if (listener != null) {
-                            listener.onCleanupError(error.getMessage());
-                        }
+                        Log.e(TAG, "Rollup backfill failed: " + error.getMessage());
+                        then.run();
                     }
                 });
     }
@@ -156,15 +240,15 @@ public class PostureAnalyzer {
         Log.d(TAG, "═══════════════════════════════════════════════════════════");
         Log.d(TAG, "Starting analysis for user: " + userId);
 
-        calibrationRef.addListenerForSingleValueEvent(new ValueEventListener() {
+        calibrationCache.get(new CalibrationCache.Callback() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    calibrationData = snapshot.getValue(CalibrationData.class);
+            public void onCalibration(CalibrationData data) {
+                if (data != null) {
+                    calibrationData = data;
 
-                    if (calibrationData != null && calibrationData.isCalibrated) {
+                    if (calibrationData.isCalibrated) {
                         Log.d(TAG, "✓ Calibration loaded successfully");
-                        processUnprocessedSessions(listener);
+                        backfillPendingQueue(() -> backfillRollups(() -> processUnprocessedSessions(listener)));
                     } else {
                         Log.w(TAG, "✗ Calibration not complete");
                         if (listener != null) {
@@ -180,10 +264,10 @@ public class PostureAnalyzer {
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Log.e(TAG, "Calibration load error: " + error.getMessage());
+            public void onError(String error) {
+                Log.e(TAG, "Calibration load error: " + error);
                 if (listener != null) {
-                    listener.onAnalysisError("Failed to load calibration: " + error.getMessage());
+                    listener.onAnalysisError(error);
                 }
             }
         });
@@ -191,17 +275,18 @@ public class PostureAnalyzer {
 
     /**
      * ✅ HEAVILY OPTIMIZED with comprehensive logging
+     * Reads the pending_analysis queue, then only the sessions it names
      */
     private void processUnprocessedSessions(OnAnalysisCompleteListener listener) {
-        Log.d(TAG, "Querying unanalyzed sessions (limit=" + MAX_SESSIONS_PER_ANALYSIS + ")...");
+        Log.d(TAG, "Querying pending sessions (limit=" + MAX_SESSIONS_PER_ANALYSIS + ")...");
 
-        sessionsRef.orderByChild("analyzed").equalTo(false)
+        pendingRef.orderByValue()
                 .limitToLast(MAX_SESSIONS_PER_ANALYSIS)
                 .addListenerForSingleValueEvent(new ValueEventListener() {
                     @Override
                     public void onDataChange(@NonNull DataSnapshot snapshot) {
                         Log.d(TAG, "───────────────────────────────────────────────────────────");
-                        Log.d(TAG, "Query returned " + snapshot.getChildrenCount() + " unanalyzed sessions");
+                        Log.d(TAG, "Queue returned " + snapshot.getChildrenCount() + " pending sessions");
 
                         if (snapshot.getChildrenCount() == 0) {
                             Log.d(TAG, "No unanalyzed sessions found!");
@@ -216,122 +301,194 @@ public class PostureAnalyzer {
                             return;
                         }
 
-                        int analyzedCount = 0;
-                        int slouchingSessions = 0;
-                        int skippedCount = 0;
+                        List<String> sessionIds = new ArrayList<>();
+                        for (DataSnapshot entry : snapshot.getChildren()) {
+                            sessionIds.add(entry.getKey());
+                        }
+                        fetchPendingSessions(sessionIds, sessions -> analyzeSessions(sessions, listener));
+                    }
 
-                        for (DataSnapshot sessionSnapshot : snapshot.getChildren()) {
-                            String sessionId = sessionSnapshot.getKey();
-                            Log.d(TAG, "───────────────────────────────────────────────────────────");
-                            Log.d(TAG, "Processing: " + sessionId);
-
-                            // ✅ Check if session has required data BEFORE deserializing
-                            boolean hasUpperBack = sessionSnapshot.hasChild("upperBack");
-                            boolean hasLowerBack = sessionSnapshot.hasChild("lowerBack");
-                            Boolean analyzed = sessionSnapshot.child("analyzed").getValue(Boolean.class);
-
-                            Log.d(TAG, "  analyzed=" + analyzed);
-                            Log.d(TAG, "  hasUpperBack=" + hasUpperBack);
-                            Log.d(TAG, "  hasLowerBack=" + hasLowerBack);
-
-                            if (!hasUpperBack) {
-                                Log.d(TAG, "  → SKIPPED: Missing upperBack data");
-                                skippedCount++;
-                                continue;
-                            }
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.e(TAG, "Query error: " + error.getMessage());
+                        if (listener != null) {
+                            listener.onAnalysisError(error.getMessage());
+                        }
+                    }
+                });
+    }
 
-                            if (!hasLowerBack) {
-                                Log.d(TAG, "  → SKIPPED: Missing lowerBack data");
-                                skippedCount++;
-                                continue;
-                            }
+    private void analyzeSessions(List<DataSnapshot> sessions, OnAnalysisCompleteListener listener) {
+        int analyzedCount = 0;
+        int slouchingSessions = 0;
+        int skippedCount = 0;
+
+        // Results are committed per day together with that day's stats
+        Map<String, DailyResults> resultsByDay = new LinkedHashMap<>();
+        previousFilteredPitchDiff = null;  // Filter runs within one analysis, never from an earlier one
+
+        for (DataSnapshot sessionSnapshot : sessions) {
+            String sessionId = sessionSnapshot.getKey();
+            Log.d(TAG, "───────────────────────────────────────────────────────────");
+            Log.d(TAG, "Processing: " + sessionId);
+
+            // ✅ Check if session has required data BEFORE deserializing
+            boolean hasUpperBack = sessionSnapshot.hasChild("upperBack");
+            boolean hasLowerBack = sessionSnapshot.hasChild("lowerBack");
+            Boolean analyzed = sessionSnapshot.child("analyzed").getValue(Boolean.class);
+
+            Log.d(TAG, "  analyzed=" + analyzed);
+            Log.d(TAG, "  hasUpperBack=" + hasUpperBack);
+            Log.d(TAG, "  hasLowerBack=" + hasLowerBack);
+
+            if (analyzed != null && analyzed) {
+                Log.d(TAG, "  → SKIPPED: Already analyzed, dropping stale queue entry");
+                writeBatcher.set(pendingPath + "/" + sessionId, null);
+                skippedCount++;
+                continue;
+            }
 
-                            // ✅ Now safe to deserialize
-                            try {
-                                PostureSession session = sessionSnapshot.getValue(PostureSession.class);
+            if (!hasUpperBack) {
+                Log.d(TAG, "  → SKIPPED: Missing upperBack data");
+                skippedCount++;
+                continue;
+            }
 
-                                if (session == null) {
-                                    Log.d(TAG, "  → SKIPPED: Deserialization returned null");
-                                    skippedCount++;
-                                    continue;
-                                }
+            if (!hasLowerBack) {
+                Log.d(TAG, "  → SKIPPED: Missing lowerBack data");
+                skippedCount++;
+                continue;
+            }
 
-                                if (session.upperBack == null) {
-                                    Log.d(TAG, "  → SKIPPED: session.upperBack is null");
-                                    skippedCount++;
-                                    continue;
-                                }
+            // ✅ Now safe to deserialize
+            try {
+                PostureSession session = sessionSnapshot.getValue(PostureSession.class);
 
-                                if (session.lowerBack == null) {
-                                    Log.d(TAG, "  → SKIPPED: session.lowerBack is null");
-                                    skippedCount++;
-                                    continue;
-                                }
+                if (session == null) {
+                    Log.d(TAG, "  → SKIPPED: Deserialization returned null");
+                    skippedCount++;
+                    continue;
+                }
 
-                                SensorAngles upperAngles = SensorAngles.fromSensorData(session.upperBack);
-                                SensorAngles lowerAngles = SensorAngles.fromSensorData(session.lowerBack);
+                if (session.upperBack == null) {
+                    Log.d(TAG, "  → SKIPPED: session.upperBack is null");
+                    skippedCount++;
+                    continue;
+                }
 
-                                Log.d(TAG, "  upperBack pitch=" + upperAngles.pitch + ", roll=" + upperAngles.roll);
-                                Log.d(TAG, "  lowerBack pitch=" + lowerAngles.pitch + ", roll=" + lowerAngles.roll);
+                if (session.lowerBack == null) {
+                    Log.d(TAG, "  → SKIPPED: session.lowerBack is null");
+                    skippedCount++;
+                    continue;
+                }
 
-                                AnalysisResult result = detectSlouchWithCalibration(
-                                        session.upperBack,
-                                        session.lowerBack
-                                );
+                SensorAngles upperAngles = SensorAngles.fromSensorData(session.upperBack);
+                SensorAngles lowerAngles = SensorAngles.fromSensorData(session.lowerBack);
 
-                                Log.d(TAG, "  → ANALYZED: slouching=" + result.isSlouchingDetected +
-                                        ", score=" + result.overallSlouchScore);
+                Log.d(TAG, "  upperBack pitch=" + upperAngles.pitch + ", roll=" + upperAngles.roll);
+                Log.d(TAG, "  lowerBack pitch=" + lowerAngles.pitch + ", roll=" + lowerAngles.roll);
 
-                                if (result.isSlouchingDetected) {
-                                    slouchingSessions++;
-                                }
+                AnalysisResult result = detectSlouchWithCalibration(
+                        session.upperBack,
+                        session.lowerBack
+                );
 
-                                // Batched update - single write operation
-                                Map<String, Object> updates = new HashMap<>();
-                                updates.put("analyzed", true);
-                                updates.put("slouching", result.isSlouchingDetected);
-                                updates.put("overallSlouchScore", result.overallSlouchScore);
-                                updates.put("upperBackDeviation", result.upperBackDeviation);
-                                updates.put("lowerBackDeviation", result.lowerBackDeviation);
-                                updates.put("upperBackScore", result.upperBackScore);
-                                updates.put("lowerBackScore", result.lowerBackScore);
-                                updates.put("calibrationTimestamp", calibrationData.calibrationTimestamp);
+                Log.d(TAG, "  → ANALYZED: slouching=" + result.isSlouchingDetected +
+                        ", score=" + result.overallSlouchScore);
 
-                                sessionSnapshot.getRef().updateChildren(updates);
-                                Log.d(TAG, "  → SAVED to Firebase");
+                if (!claimSession(sessionId)) {
+                    Log.d(TAG, "  → SKIPPED: already counted by another analysis");
+                    skippedCount++;
+                    continue;
+                }
 
-                                analyzedCount++;
+                if (result.isSlouchingDetected) {
+                    slouchingSessions++;
+                }
 
-                                String sessionDateKey = getDateKeyFromTimestamp(session.timestamp);
-                                saveDailyStatsOptimized(sessionDateKey, result.isSlouchingDetected);
+                String sessionDateKey = getDateKeyFromTimestamp(session.timestamp);
+                DailyResults day = resultsByDay.get(sessionDateKey);
+                if (day == null) {
+                    day = new DailyResults();
+                    resultsByDay.put(sessionDateKey, day);
+                }
+                putSessionResult(day.updates, sessionId, result);
+                day.sessions++;
+                day.slouching += result.isSlouchingDetected ? 1 : 0;
+                day.rollups.add(session.timestamp, result.isSlouchingDetected);
 
-                            } catch (Exception e) {
-                                Log.e(TAG, "  → ERROR: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-                                skippedCount++;
-                            }
-                        }
+                analyzedCount++;
 
-                        Log.d(TAG, "═══════════════════════════════════════════════════════════");
-                        Log.d(TAG, "ANALYSIS COMPLETE");
-                        Log.d(TAG, "  Analyzed: " + analyzedCount);
-                        Log.d(TAG, "  Slouching: " + slouchingSessions);
-                        Log.d(TAG, "  Skipped: " + skippedCount);
-                        Log.d(TAG, "═══════════════════════════════════════════════════════════");
+            } catch (Exception e) {
+                Log.e(TAG, "  → ERROR: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                skippedCount++;
+            }
+        }
 
-                        // Notify completion
-                        if (listener != null) {
-                            listener.onAnalysisComplete(analyzedCount, slouchingSessions);
-                        }
+        for (Map.Entry<String, DailyResults> day : resultsByDay.entrySet()) {
+            saveDailyStatsOptimized(day.getKey(), day.getValue());
+        }
+
+        Log.d(TAG, "═══════════════════════════════════════════════════════════");
+        Log.d(TAG, "ANALYSIS COMPLETE");
+        Log.d(TAG, "  Analyzed: " + analyzedCount);
+        Log.d(TAG, "  Slouching: " + slouchingSessions);
+        Log.d(TAG, "  Skipped: " + skippedCount);
+        Log.d(TAG, "═══════════════════════════════════════════════════════════");
+
+        // Notify completion
+        if (listener != null) {
+            listener.onAnalysisComplete(analyzedCount, slouchingSessions);
+        }
+    }
+
+    private interface SessionsCallback {
+        void onSessions(List<DataSnapshot> sessions);
+    }
+
+    /**
+     * Reads the queued sessions in parallel. Queue entries whose session is gone are dropped.
+     */
+    private void fetchPendingSessions(List<String> sessionIds, SessionsCallback callback) {
+        DataSnapshot[] results = new DataSnapshot[sessionIds.size()];
+        int[] remaining = {sessionIds.size()};
+
+        for (int i = 0; i < sessionIds.size(); i++) {
+            final int index = i;
+            final String sessionId = sessionIds.get(i);
+            sessionsRef.child(sessionId).addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    if (snapshot.exists()) {
+                        results[index] = snapshot;
+                    } else {
+                        Log.d(TAG, "Dropping queue entry for missing session: " + sessionId);
+                        writeBatcher.set(pendingPath + "/" + sessionId, null);
                     }
+                    finish();
+                }
 
-                    @Override
-                    public void onCancelled(@NonNull DatabaseError error) {
-                        Log.e(TAG, "Query error: " + error.getMessage());
-                        if (listener != null) {
-                            listener.onAnalysisError(error.getMessage());
+                @Override
+                public void onCancelled(@NonNull DatabaseError error) {
+                    Log.e(TAG, "Error reading session " + sessionId + ": " + error.getMessage());
+                    finish();
+                }
+
+                // Callbacks all run on the main thread
+                private void finish() {
+                    if (--remaining[0] > 0) {
+                        return;
+                    }
+                    List<DataSnapshot> sessions = new ArrayList<>();
+                    for (DataSnapshot session : results) {
+                        if (session != null) {
+                            sessions.add(session);
                         }
                     }
-                });
+                    callback.onSessions(sessions);
+                }
+            });
+        }
     }
 
     private String getDateKeyFromTimestamp(long timestamp) {
@@ -376,47 +533,54 @@ public class PostureAnalyzer {
         return result;
     }
 
-    private void saveDailyStatsOptimized(String dateKey, boolean isSlouching) {
-        DatabaseReference dayStatsRef = statsRef.child(dateKey);
-
-        dayStatsRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                int existingTotal = 0;
-                int existingSlouching = 0;
-                int existingGoodPosture = 0;
-
-                if (snapshot.exists()) {
-                    Integer total = snapshot.child("total_sessions").getValue(Integer.class);
-                    Integer slouch = snapshot.child("slouching_sessions").getValue(Integer.class);
-                    Integer good = snapshot.child("good_posture_sessions").getValue(Integer.class);
-
-                    existingTotal = (total != null) ? total : 0;
-                    existingSlouching = (slouch != null) ? slouch : 0;
-                    existingGoodPosture = (good != null) ? good : 0;
-                }
-
-                int newTotal = existingTotal + 1;
-                int newSlouching = existingSlouching + (isSlouching ? 1 : 0);
-                int newGoodPosture = existingGoodPosture + (isSlouching ? 0 : 1);
-                double newSlouchPercentage = (newSlouching * 100.0 / newTotal);
+    /**
+     * False if this process already counted the session, e.g. when analyzeSpecificSession
+     * and analyzeUnprocessedSessions pick up the same one before either write lands
+     */
+    private static boolean claimSession(String sessionId) {
+        synchronized (countedSessions) {
+            return countedSessions.put(sessionId, Boolean.TRUE) == null;
+        }
+    }
 
-                // Single batched write
-                Map<String, Object> updates = new HashMap<>();
-                updates.put("total_sessions", newTotal);
-                updates.put("slouching_sessions", newSlouching);
-                updates.put("good_posture_sessions", newGoodPosture);
-                updates.put("slouch_percentage", newSlouchPercentage);
-                updates.put("last_updated", System.currentTimeMillis());
+    private void putSessionResult(Map<String, Object> updates, String sessionId, AnalysisResult result) {
+        String path = sessionsPath + "/" + sessionId + "/";
+        updates.put(path + "analyzed", true);
+        updates.put(path + "slouching", result.isSlouchingDetected);
+        updates.put(path + "overallSlouchScore", result.overallSlouchScore);
+        updates.put(path + "upperBackDeviation", result.upperBackDeviation);
+        updates.put(path + "lowerBackDeviation", result.lowerBackDeviation);
+        updates.put(path + "upperBackScore", result.upperBackScore);
+        updates.put(path + "lowerBackScore", result.lowerBackScore);
+        updates.put(path + "calibrationTimestamp", calibrationData.calibrationTimestamp);
+        updates.put(pendingPath + "/" + sessionId, null);  // Dequeue in the same update
+    }
 
-                dayStatsRef.updateChildren(updates);
-            }
+    /**
+     * Adds one day's analyzed sessions to its stats and writes results + stats as one update.
+     * Counters are server-side increments, so concurrent analyzers and devices never lose counts.
+     */
+    private void saveDailyStatsOptimized(String dateKey, DailyResults day) {
+        String path = statsPath + "/" + dateKey + "/";
+        day.updates.put(path + "total_sessions", ServerValue.increment(day.sessions));
+        day.updates.put(path + "slouching_sessions", ServerValue.increment(day.slouching));
+        day.updates.put(path + "good_posture_sessions", ServerValue.increment(day.sessions - day.slouching));
+        day.updates.put(path + "last_updated", ServerValue.TIMESTAMP);
+        day.rollups.putIncrements(day.updates, userId);
+
+        writeBatcher.setAll(day.updates);
+        writeBatcher.flush();
+        Log.d(TAG, "  → SAVED " + day.sessions + " session(s) + stats for " + dateKey);
+    }
 
-            @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Log.e(TAG, "Stats error: " + error.getMessage());
-            }
-        });
+    /**
+     * Analyzed sessions of one day, waiting to be written with that day's stats
+     */
+    private static class DailyResults {
+        final Map<String, Object> updates = new HashMap<>();
+        final PostureRollups.Counts rollups = new PostureRollups.Counts();
+        int sessions = 0;
+        int slouching = 0;
     }
 
     private static class AnalysisResult {
@@ -440,11 +604,16 @@ public class PostureAnalyzer {
         Log.d(TAG, "═══════════════════════════════════════════════════════════");
         Log.d(TAG, "Analyzing specific session: " + sessionId);
 
-        // First load calibration
-        calibrationRef.addListenerForSingleValueEvent(new ValueEventListener() {
+        // After any first-run rollup rebuild, so this session's increments land on top of it
+        backfillRollups(() -> scoreSpecificSession(sessionId, listener));
+    }
+
+    private void scoreSpecificSession(String sessionId, OnAnalysisCompleteListener listener) {
+        // Calibration comes from the cache, so the session read normally starts right away
+        calibrationCache.get(new CalibrationCache.Callback() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                if (!snapshot.exists()) {
+            public void onCalibration(CalibrationData data) {
+                if (data == null) {
                     Log.w(TAG, "No calibration data");
                     if (listener != null) {
                         listener.onAnalysisError("No calibration data");
@@ -452,8 +621,8 @@ public class PostureAnalyzer {
                     return;
                 }
 
-                calibrationData = snapshot.getValue(CalibrationData.class);
-                if (calibrationData == null || !calibrationData.isCalibrated) {
+                calibrationData = data;
+                if (!calibrationData.isCalibrated) {
                     Log.w(TAG, "Calibration not complete");
                     if (listener != null) {
                         listener.onAnalysisError("Calibration not complete");
@@ -461,7 +630,7 @@ public class PostureAnalyzer {
                     return;
                 }
 
-                Log.d(TAG, "✓ Calibration loaded");
+                Log.d(TAG, "✓ Calibration ready");
 
                 // Now fetch and analyze the specific session
                 sessionsRef.child(sessionId).addListenerForSingleValueEvent(new ValueEventListener() {
@@ -496,7 +665,8 @@ public class PostureAnalyzer {
                                 return;
                             }
 
-                            // Analyze!
+                            // Analyze! The pitch filter starts fresh for every session
+                            previousFilteredPitchDiff = null;
                             AnalysisResult result = detectSlouchWithCalibration(
                                     session.upperBack,
                                     session.lowerBack
@@ -505,22 +675,21 @@ public class PostureAnalyzer {
                             Log.d(TAG, "  → slouching=" + result.isSlouchingDetected +
                                     ", score=" + result.overallSlouchScore);
 
-                            // Save results
-                            Map<String, Object> updates = new HashMap<>();
-                            updates.put("analyzed", true);
-                            updates.put("slouching", result.isSlouchingDetected);
-                            updates.put("overallSlouchScore", result.overallSlouchScore);
-                            updates.put("upperBackDeviation", result.upperBackDeviation);
-                            updates.put("lowerBackDeviation", result.lowerBackDeviation);
-                            updates.put("upperBackScore", result.upperBackScore);
-                            updates.put("lowerBackScore", result.lowerBackScore);
-                            updates.put("calibrationTimestamp", calibrationData.calibrationTimestamp);
-
-                            sessionSnapshot.getRef().updateChildren(updates);
+                            if (!claimSession(sessionId)) {
+                                Log.d(TAG, "Session already counted by another analysis");
+                                if (listener != null) {
+                                    listener.onAnalysisComplete(0, 0);
+                                }
+                                return;
+                            }
 
-                            // Update daily stats
-                            String sessionDateKey = getDateKeyFromTimestamp(session.timestamp);
-                            saveDailyStatsOptimized(sessionDateKey, result.isSlouchingDetected);
+                            // Save results together with the daily stats
+                            DailyResults day = new DailyResults();
+                            putSessionResult(day.updates, sessionId, result);
+                            day.sessions = 1;
+                            day.slouching = result.isSlouchingDetected ? 1 : 0;
+                            day.rollups.add(session.timestamp, result.isSlouchingDetected);
+                            saveDailyStatsOptimized(getDateKeyFromTimestamp(session.timestamp), day);
 
                             Log.d(TAG, "✓ Session analyzed and saved");
                             Log.d(TAG, "═══════════════════════════════════════════════════════════");
@@ -548,10 +717,10 @@ public class PostureAnalyzer {
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Log.e(TAG, "Error loading calibration: " + error.getMessage());
+            public void onError(String error) {
+                Log.e(TAG, "Error loading calibration: " + error);
                 if (listener != null) {
-                    listener.onAnalysisError(error.getMessage());
+                    listener.onAnalysisError(error);
                 }
             }
         });
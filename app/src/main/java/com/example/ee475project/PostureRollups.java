@@ -0,0 +1,121 @@
+package com.example.ee475project;
+
+import com.google.firebase.database.ServerValue;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Session counters at several resolutions, kept next to daily_stats (the day level):
+ *
+ *   posture_rollups/{uid}/hour/{yyyy-MM-dd-HH}
+ *   posture_rollups/{uid}/week/{yyyy-Www}     (ISO week, Monday first)
+ *   posture_rollups/{uid}/month/{yyyy-MM}
+ *   posture_rollups/{uid}/total
+ *
+ * Every node carries the same counters as a daily_stats day. PostureAnalyzer
+ * adds to them with server-side increments as sessions are scored, so readers
+ * fetch a fixed number of small nodes no matter how much history there is.
+ */
+class PostureRollups {
+
+    static final String ROOT = "posture_rollups";
+
+    static final String HOUR = "hour";
+    static final String WEEK = "week";
+    static final String MONTH = "month";
+    static final String TOTAL = "total";
+
+    // Set on total once it has been rebuilt from the existing daily_stats
+    static final String BACKFILLED = "backfilled";
+
+    /**
+     * Pending counts per rollup node (relative path, e.g. "week/2025-W03")
+     */
+    static final class Counts {
+        private final Map<String, int[]> nodes = new HashMap<>();
+
+        /**
+         * Adds one scored session to every node its start time falls into
+         */
+        void add(long timestamp, boolean slouching) {
+            Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(timestamp);
+            int slouchCount = slouching ? 1 : 0;
+            add(HOUR + "/" + hourKey(cal), 1, slouchCount);
+            add(WEEK + "/" + weekKey(cal), 1, slouchCount);
+            add(MONTH + "/" + monthKey(cal), 1, slouchCount);
+            add(TOTAL, 1, slouchCount);
+        }
+
+        /**
+         * Adds a whole daily_stats day (backfill); hours aren't known, so only week/month/total
+         */
+        void addDay(Calendar day, int sessions, int slouching) {
+            add(WEEK + "/" + weekKey(day), sessions, slouching);
+            add(MONTH + "/" + monthKey(day), sessions, slouching);
+            add(TOTAL, sessions, slouching);
+        }
+
+        private void add(String node, int sessions, int slouching) {
+            int[] counts = nodes.get(node);
+            if (counts == null) {
+                counts = new int[2];
+                nodes.put(node, counts);
+            }
+            counts[0] += sessions;
+            counts[1] += slouching;
+        }
+
+        /**
+         * Writes the counts as increments into a multi-path update
+         */
+        void putIncrements(Map<String, Object> updates, String userId) {
+            for (Map.Entry<String, int[]> node : nodes.entrySet()) {
+                int sessions = node.getValue()[0];
+                int slouching = node.getValue()[1];
+                String path = ROOT + "/" + userId + "/" + node.getKey() + "/";
+                updates.put(path + "total_sessions", ServerValue.increment(sessions));
+                updates.put(path + "slouching_sessions", ServerValue.increment(slouching));
+                updates.put(path + "good_posture_sessions", ServerValue.increment(sessions - slouching));
+                updates.put(path + "last_updated", ServerValue.TIMESTAMP);
+            }
+        }
+
+        /**
+         * Writes the counts as absolute values, replacing what the nodes held
+         */
+        void putTotals(Map<String, Object> updates, String userId) {
+            for (Map.Entry<String, int[]> node : nodes.entrySet()) {
+                int sessions = node.getValue()[0];
+                int slouching = node.getValue()[1];
+                String path = ROOT + "/" + userId + "/" + node.getKey() + "/";
+                updates.put(path + "total_sessions", sessions);
+                updates.put(path + "slouching_sessions", slouching);
+                updates.put(path + "good_posture_sessions", sessions - slouching);
+                updates.put(path + "last_updated", ServerValue.TIMESTAMP);
+            }
+        }
+    }
+
+    private PostureRollups() {}
+
+    static String hourKey(Calendar cal) {
+        return String.format(Locale.US, "%04d-%02d-%02d-%02d", cal.get(Calendar.YEAR),
+                cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.HOUR_OF_DAY));
+    }
+
+    static String weekKey(Calendar cal) {
+        Calendar iso = (Calendar) cal.clone();
+        iso.setFirstDayOfWeek(Calendar.MONDAY);
+        iso.setMinimalDaysInFirstWeek(4);
+        iso.setTimeInMillis(cal.getTimeInMillis());
+        return String.format(Locale.US, "%04d-W%02d", iso.getWeekYear(), iso.get(Calendar.WEEK_OF_YEAR));
+    }
+
+    static String monthKey(Calendar cal) {
+        return String.format(Locale.US, "%04d-%02d", cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
+    }
+}
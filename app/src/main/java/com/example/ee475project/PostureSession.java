@@ -1,6 +1,8 @@
 package com.example.ee475project;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class PostureSession {
     public String sessionId;
@@ -10,8 +12,16 @@ public class PostureSession {
     public List<SensorData> upperBackArray;
     public List<SensorData> lowerBackArray;
 
+    // Same arrays, quantized (ImuArrayCodec) - newer sessions only have these
+    public Map<String, Object> upperBackPacked;
+    public Map<String, Object> lowerBackPacked;
+
     public SensorData upperBack;
     public SensorData lowerBack;
+
+    // Full-rate samples for this session live on the phone in RawSampleStore (epoch ms, inclusive)
+    public long rawStartTime;
+    public long rawEndTime;
     public Boolean analyzed;  // Has this session been analyzed yet?
     public Boolean slouching; // Result after analysis
 
@@ -51,4 +61,19 @@ class SensorData {
         this.gyroZ = gz;
         this.timestamp = timestamp;
     }
+
+    /**
+     * Plain-value form for FirebaseWriteBatcher
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("accelX", accelX);
+        map.put("accelY", accelY);
+        map.put("accelZ", accelZ);
+        map.put("gyroX", gyroX);
+        map.put("gyroY", gyroY);
+        map.put("gyroZ", gyroZ);
+        map.put("timestamp", timestamp);
+        return map;
+    }
 }
\ No newline at end of file
@@ -28,11 +28,8 @@ import androidx.lifecycle.ViewModelProvider;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
 import org.json.JSONObject;
 
@@ -41,7 +38,6 @@ import java.io.IOException;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -69,7 +65,6 @@ public class ProfileFragment extends Fragment {
     private DatabaseReference mDatabase;
     private CalibrationHelper calibrationHelper;
 
-    private OkHttpClient httpClient;  // NEW: HTTP client
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
@@ -85,9 +80,6 @@ public class ProfileFragment extends Fragment {
         if (currentUser != null) {
             mDatabase = FirebaseDatabase.getInstance().getReference("users").child(currentUser.getUid());
         }
-
-        // NEW: Initialize HTTP client
-        httpClient = new OkHttpClient();
     }
 
     @Override
@@ -235,6 +227,16 @@ public class ProfileFragment extends Fragment {
             }
         });
 
+        SwitchCompat dualConnectionSwitch = view.findViewById(R.id.dual_connection_switch);
+        dualConnectionSwitch.setChecked(bluetoothViewModel.isDualConnectionEnabled());
+        dualConnectionSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                bluetoothViewModel.setDualConnectionEnabled(isChecked));
+
+        SwitchCompat continuousMonitoringSwitch = view.findViewById(R.id.continuous_monitoring_switch);
+        continuousMonitoringSwitch.setChecked(bluetoothViewModel.isContinuousMonitoringEnabled());
+        continuousMonitoringSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                bluetoothViewModel.setContinuousMonitoringEnabled(isChecked));
+
         bluetoothViewModel.getConnectionStatus().observe(getViewLifecycleOwner(), status -> {
             boolean isUpperConnected = status != null && status.contains("XIAO_Upper_Back");
             boolean isLowerConnected = status != null && status.contains("XIAO_Lower_Back");
@@ -268,6 +270,7 @@ public class ProfileFragment extends Fragment {
         }
 
         Log.d(TAG, "Testing server connection to: " + serverUrl);
+        String testUrl = serverUrl;
         Toast.makeText(getContext(), "Sending test request...", Toast.LENGTH_SHORT).show();
 
         try {
@@ -285,7 +288,7 @@ public class ProfileFragment extends Fragment {
                     .build();
 
             // Send request asynchronously
-            httpClient.newCall(request).enqueue(new Callback() {
+            MLHttpClient.forTest().newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(@NonNull Call call, @NonNull IOException e) {
                     Log.e(TAG, "Server test failed: " + e.getMessage(), e);
@@ -306,6 +309,7 @@ public class ProfileFragment extends Fragment {
                             try {
                                 JSONObject jsonResponse = new JSONObject(responseBody);
                                 String reply = jsonResponse.optString("reply", "No reply field");
+                                ServerCapabilities.getInstance(requireContext()).record(testUrl, jsonResponse);
 
                                 new AlertDialog.Builder(requireContext())
                                         .setTitle("✅ Server Connected!")
@@ -337,29 +341,16 @@ public class ProfileFragment extends Fragment {
     // ===== CALIBRATION METHODS =====
 
     private void loadCalibrationStatus() {
-        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
-        DatabaseReference calibrationRef = FirebaseDatabase.getInstance()
-                .getReference("calibration_data")
-                .child(userId);
-
-        calibrationRef.addListenerForSingleValueEvent(new ValueEventListener() {
+        CalibrationCache.getInstance(requireContext()).get(new CalibrationCache.Callback() {
             @Override
-            public void onDataChange(@NonNull DataSnapshot snapshot) {
-                if (snapshot.exists()) {
-                    CalibrationData data = snapshot.getValue(CalibrationData.class);
-                    if (data != null && data.isCalibrated) {
-                        updateCalibrationStatus(true);
-                    } else {
-                        updateCalibrationStatus(false);
-                    }
-                } else {
-                    updateCalibrationStatus(false);
-                }
+            public void onCalibration(CalibrationData data) {
+                if (!isAdded()) return;
+                updateCalibrationStatus(data != null && data.isCalibrated);
             }
 
             @Override
-            public void onCancelled(@NonNull DatabaseError error) {
-                Log.e(TAG, "Error loading calibration status: " + error.getMessage());
+            public void onError(String error) {
+                Log.e(TAG, "Error loading calibration status: " + error);
             }
         });
     }
@@ -410,6 +401,7 @@ public class ProfileFragment extends Fragment {
     }
 
     private void resetCalibrationData() {
+        CalibrationCache calibrationCache = CalibrationCache.getInstance(requireContext());
         String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
         DatabaseReference calibrationRef = FirebaseDatabase.getInstance()
                 .getReference("calibration_data")
@@ -417,6 +409,7 @@ public class ProfileFragment extends Fragment {
 
         calibrationRef.removeValue()
                 .addOnSuccessListener(aVoid -> {
+                    calibrationCache.clear();
                     Toast.makeText(getContext(),
                             "Calibration data reset. You can now calibrate again.",
                             Toast.LENGTH_SHORT).show();
@@ -0,0 +1,453 @@
+package com.example.ee475project;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only, on-device history of every raw IMU sample.
+ *
+ * Samples are written into memory-mapped segment files under files/raw_samples.
+ * A segment is a header followed by fixed-size blocks:
+ *
+ *   header  [0..3] magic, [4..7] version, [8..11] blocks used, [12..15] reserved,
+ *           then one index entry per block: sensor (int), sample count (int),
+ *           first and last timestamp (long) - the segment's time index
+ *   blocks  BLOCK_SIZE bytes each, holding samples of a single sensor
+ *
+ * Inside a block the first sample is stored raw (timestamp + 6 floats). Every
+ * following sample stores its timestamp as a zig-zag varint delta-of-delta and
+ * each float as the XOR with the previous value of that channel: a tag byte
+ * (number of significant bytes, trailing zero bytes) followed by only the
+ * significant bytes. IMU channels change little between samples, so most
+ * samples take well under the 32 bytes of a raw record.
+ *
+ * A full segment is forced to disk and a new one started; segments past
+ * RETENTION_MS or beyond MAX_SEGMENTS are deleted. Scans use the time index to
+ * skip blocks and decode straight out of the mapped buffers.
+ *
+ * All methods are synchronized; appends normally come from the BLE worker thread.
+ */
+class RawSampleStore {
+
+    private static final String TAG = "RawSampleStore";
+
+    static final String DIRECTORY = "raw_samples";
+    static final int BLOCK_SIZE = 1024;
+    static final int BLOCKS_PER_SEGMENT = 1024;
+    static final long RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+    static final int MAX_SEGMENTS = 64;
+
+    private static final int MAGIC = 0x52415731; // "RAW1"
+    private static final int VERSION = 1;
+    private static final int INDEX_ENTRY_SIZE = 24;
+    private static final int HEADER_SIZE = 16 + BLOCKS_PER_SEGMENT * INDEX_ENTRY_SIZE;
+    private static final long SEGMENT_SIZE = HEADER_SIZE + (long) BLOCKS_PER_SEGMENT * BLOCK_SIZE;
+
+    private static final int CHANNELS = 6;
+    private static final int MAX_SAMPLE_SIZE = 10 + CHANNELS * 5; // varint + tag and 4 bytes per channel
+
+    private static volatile RawSampleStore instance;
+
+    /**
+     * Receives samples from {@link #scan}, in time order within each block.
+     */
+    interface SampleVisitor {
+        void onSample(int sensor, long timestamp,
+                      float ax, float ay, float az,
+                      float gx, float gy, float gz);
+    }
+
+    /** One mapped segment file and its time index. */
+    private static final class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        int blocksUsed;
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+
+        Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        int entryOffset(int block) {
+            return 16 + block * INDEX_ENTRY_SIZE;
+        }
+
+        int blockOffset(int block) {
+            return HEADER_SIZE + block * BLOCK_SIZE;
+        }
+
+        int sensor(int block) {
+            return buffer.getInt(entryOffset(block));
+        }
+
+        int count(int block) {
+            return buffer.getInt(entryOffset(block) + 4);
+        }
+
+        long first(int block) {
+            return buffer.getLong(entryOffset(block) + 8);
+        }
+
+        long last(int block) {
+            return buffer.getLong(entryOffset(block) + 16);
+        }
+    }
+
+    /** Encoder state for the block a sensor is currently filling. */
+    private static final class BlockWriter {
+        Segment segment;
+        int block;
+        int position;
+        int count;
+        long previousTimestamp;
+        long previousDelta;
+        final int[] previousBits = new int[CHANNELS];
+    }
+
+    private final File directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private final BlockWriter[] writers = new BlockWriter[2];
+    private Segment active;
+    private final int[] bits = new int[CHANNELS];
+
+    static RawSampleStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (RawSampleStore.class) {
+                if (instance == null) {
+                    instance = new RawSampleStore(new File(context.getApplicationContext().getFilesDir(), DIRECTORY));
+                }
+            }
+        }
+        return instance;
+    }
+
+    RawSampleStore(File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "✗ Could not create " + directory);
+        }
+        openExistingSegments();
+        applyRetention(System.currentTimeMillis());
+    }
+
+    /**
+     * Appends one sample. Failures are logged and the sample is skipped.
+     */
+    synchronized void append(int sensor, long timestamp,
+                             float ax, float ay, float az,
+                             float gx, float gy, float gz) {
+        if (sensor != ImuLineFramer.SENSOR_UPPER_BACK && sensor != ImuLineFramer.SENSOR_LOWER_BACK) {
+            return;
+        }
+
+        bits[0] = Float.floatToRawIntBits(ax);
+        bits[1] = Float.floatToRawIntBits(ay);
+        bits[2] = Float.floatToRawIntBits(az);
+        bits[3] = Float.floatToRawIntBits(gx);
+        bits[4] = Float.floatToRawIntBits(gy);
+        bits[5] = Float.floatToRawIntBits(gz);
+
+        try {
+            BlockWriter writer = writers[sensor];
+            if (writer == null || writer.position + MAX_SAMPLE_SIZE > BLOCK_SIZE
+                    || timestamp < writer.previousTimestamp) {
+                writer = startBlock(sensor, timestamp);
+            }
+            encode(writer, timestamp);
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Failed to append sample: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Visits every stored sample of the sensor with from <= timestamp <= to.
+     * Pass -1 as the sensor for both.
+     * @return number of samples visited
+     */
+    synchronized long scan(int sensor, long from, long to, SampleVisitor visitor) {
+        long visited = 0;
+        for (Segment segment : segments) {
+            if (segment.lastTimestamp < from || segment.firstTimestamp > to) {
+                continue;
+            }
+            for (int block = 0; block < segment.blocksUsed; block++) {
+                int count = segment.count(block);
+                int blockSensor = segment.sensor(block);
+                if (count == 0 || (sensor >= 0 && blockSensor != sensor)
+                        || segment.last(block) < from || segment.first(block) > to) {
+                    continue;
+                }
+                visited += decodeBlock(segment, block, blockSensor, count, from, to, visitor);
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Writes dirty pages of the active segment to disk.
+     */
+    synchronized void flush() {
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    synchronized long getOldestTimestamp() {
+        return segments.isEmpty() ? 0 : segments.get(0).firstTimestamp;
+    }
+
+    synchronized long getSizeBytes() {
+        return segments.size() * SEGMENT_SIZE;
+    }
+
+    // ========== WRITING ==========
+
+    private BlockWriter startBlock(int sensor, long timestamp) throws IOException {
+        if (active == null || active.blocksUsed >= BLOCKS_PER_SEGMENT) {
+            rotate(timestamp);
+        }
+
+        BlockWriter writer = new BlockWriter();
+        writer.segment = active;
+        writer.block = active.blocksUsed++;
+        writer.position = 0;
+        writer.count = 0;
+
+        int entry = active.entryOffset(writer.block);
+        active.buffer.putInt(entry, sensor);
+        active.buffer.putInt(entry + 4, 0);
+        active.buffer.putLong(entry + 8, timestamp);
+        active.buffer.putLong(entry + 16, timestamp);
+        active.buffer.putInt(8, active.blocksUsed);
+
+        writers[sensor] = writer;
+        return writer;
+    }
+
+    private void encode(BlockWriter writer, long timestamp) {
+        MappedByteBuffer buffer = writer.segment.buffer;
+        int base = writer.segment.blockOffset(writer.block);
+        int pos = base + writer.position;
+
+        if (writer.count == 0) {
+            buffer.putLong(pos, timestamp);
+            pos += 8;
+            for (int c = 0; c < CHANNELS; c++) {
+                buffer.putInt(pos, bits[c]);
+                pos += 4;
+            }
+            writer.previousDelta = 0;
+        } else {
+            long delta = timestamp - writer.previousTimestamp;
+            pos = putVarLong(buffer, pos, zigZag(delta - writer.previousDelta));
+            writer.previousDelta = delta;
+
+            for (int c = 0; c < CHANNELS; c++) {
+                int xor = bits[c] ^ writer.previousBits[c];
+                if (xor == 0) {
+                    buffer.put(pos++, (byte) 0);
+                    continue;
+                }
+                int trailing = Integer.numberOfTrailingZeros(xor) >>> 3;
+                int significant = 4 - trailing - (Integer.numberOfLeadingZeros(xor) >>> 3);
+                buffer.put(pos++, (byte) ((trailing << 4) | significant));
+                int value = xor >>> (trailing * 8);
+                for (int i = 0; i < significant; i++) {
+                    buffer.put(pos++, (byte) value);
+                    value >>>= 8;
+                }
+            }
+        }
+
+        System.arraycopy(bits, 0, writer.previousBits, 0, CHANNELS);
+        writer.previousTimestamp = timestamp;
+        writer.position = pos - base;
+        writer.count++;
+
+        // Publish in the index only after the bytes are in place
+        Segment segment = writer.segment;
+        int entry = segment.entryOffset(writer.block);
+        segment.buffer.putLong(entry + 16, timestamp);
+        segment.buffer.putInt(entry + 4, writer.count);
+        segment.firstTimestamp = Math.min(segment.firstTimestamp, timestamp);
+        segment.lastTimestamp = Math.max(segment.lastTimestamp, timestamp);
+    }
+
+    private void rotate(long timestamp) throws IOException {
+        if (active != null) {
+            active.buffer.force();
+            Log.d(TAG, "💾 Segment full: " + active.file.getName());
+        }
+
+        long name = timestamp;
+        File file = new File(directory, "seg_" + name + ".raw");
+        while (file.exists()) {
+            file = new File(directory, "seg_" + (++name) + ".raw");
+        }
+        Segment segment = map(file, true);
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.buffer.putInt(8, 0);
+
+        segments.add(segment);
+        active = segment;
+        writers[0] = null;
+        writers[1] = null;
+        applyRetention(timestamp);
+    }
+
+    // ========== READING ==========
+
+    private static long decodeBlock(Segment segment, int block, int sensor, int count,
+                                    long from, long to, SampleVisitor visitor) {
+        MappedByteBuffer buffer = segment.buffer;
+        int pos = segment.blockOffset(block);
+        int[] values = new int[CHANNELS];
+        long timestamp = 0;
+        long delta = 0;
+        long visited = 0;
+
+        for (int n = 0; n < count; n++) {
+            if (n == 0) {
+                timestamp = buffer.getLong(pos);
+                pos += 8;
+                for (int c = 0; c < CHANNELS; c++) {
+                    values[c] = buffer.getInt(pos);
+                    pos += 4;
+                }
+            } else {
+                long raw = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(pos++);
+                    raw |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                delta += (raw >>> 1) ^ -(raw & 1);
+                timestamp += delta;
+
+                for (int c = 0; c < CHANNELS; c++) {
+                    int tag = buffer.get(pos++) & 0xFF;
+                    int significant = tag & 0x0F;
+                    int xor = 0;
+                    for (int i = 0; i < significant; i++) {
+                        xor |= (buffer.get(pos++) & 0xFF) << (i * 8);
+                    }
+                    values[c] ^= xor << ((tag >>> 4) * 8);
+                }
+            }
+
+            if (timestamp > to) {
+                break;
+            }
+            if (timestamp >= from) {
+                visitor.onSample(sensor, timestamp,
+                        Float.intBitsToFloat(values[0]), Float.intBitsToFloat(values[1]),
+                        Float.intBitsToFloat(values[2]), Float.intBitsToFloat(values[3]),
+                        Float.intBitsToFloat(values[4]), Float.intBitsToFloat(values[5]));
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    // ========== SEGMENTS ==========
+
+    private void openExistingSegments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("seg_") && name.endsWith(".raw"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(segmentStart(a), segmentStart(b)));
+
+        for (File file : files) {
+            try {
+                Segment segment = map(file, false);
+                if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                    Log.w(TAG, "Skipping unreadable segment " + file.getName());
+                    continue;
+                }
+                segment.blocksUsed = Math.min(segment.buffer.getInt(8), BLOCKS_PER_SEGMENT);
+                for (int block = 0; block < segment.blocksUsed; block++) {
+                    if (segment.count(block) > 0) {
+                        segment.firstTimestamp = Math.min(segment.firstTimestamp, segment.first(block));
+                        segment.lastTimestamp = Math.max(segment.lastTimestamp, segment.last(block));
+                    }
+                }
+                segments.add(segment);
+            } catch (IOException e) {
+                Log.e(TAG, "✗ Failed to open segment " + file.getName() + ": " + e.getMessage());
+            }
+        }
+
+        // Keep filling the newest segment; its partial blocks stay as they are
+        if (!segments.isEmpty()) {
+            active = segments.get(segments.size() - 1);
+        }
+        Log.d(TAG, "Opened " + segments.size() + " raw sample segment(s)");
+    }
+
+    private void applyRetention(long now) {
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.get(0);
+            boolean expired = oldest.lastTimestamp < now - RETENTION_MS;
+            if (oldest == active || (!expired && segments.size() <= MAX_SEGMENTS)) {
+                break;
+            }
+            segments.remove(0);
+            if (oldest.file.delete()) {
+                Log.d(TAG, "Deleted old segment " + oldest.file.getName());
+            }
+        }
+    }
+
+    private static Segment map(File file, boolean create) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (create) {
+                raf.setLength(SEGMENT_SIZE);
+            } else if (raf.length() != SEGMENT_SIZE) {
+                throw new IOException("unexpected size " + raf.length());
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(file, buffer);
+        }
+    }
+
+    private static long segmentStart(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(4, name.length() - 4));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int putVarLong(MappedByteBuffer buffer, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put(pos++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(pos++, (byte) value);
+        return pos;
+    }
+}
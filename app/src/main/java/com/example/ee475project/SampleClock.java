@@ -0,0 +1,97 @@
+package com.example.ee475project;
+
+import android.os.SystemClock;
+
+/**
+ * Timestamps for one sensor stream.
+ *
+ * Samples are timed on the monotonic elapsedRealtimeNanos clock (never on wall
+ * time, which jumps when the phone syncs its clock) and refined with the
+ * sensor's own counter through a {@link DeviceClockEstimator}. The counter is
+ * the device timestamp when the frame carries one, otherwise the binary sequence
+ * number. Both wrap on the wire and are unwrapped here.
+ *
+ * Epoch milliseconds for storage are derived from a single anchor taken when
+ * the class loads, so stored timestamps stay evenly spaced even if wall time is
+ * corrected mid-session.
+ */
+class SampleClock {
+
+    private static final long EPOCH_ANCHOR_MILLIS = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+
+    private static final int SOURCE_NONE = 0;
+    private static final int SOURCE_SEQUENCE = 1;
+    private static final int SOURCE_DEVICE_TIME = 2;
+
+    private final DeviceClockEstimator estimator = new DeviceClockEstimator();
+    private int source = SOURCE_NONE;
+    private long lastRaw = -1;
+    private long unwrapped = 0;
+
+    /**
+     * Converts a monotonic sample time to epoch milliseconds.
+     */
+    static long toEpochMillis(long elapsedNanos) {
+        return EPOCH_ANCHOR_MILLIS + elapsedNanos / 1_000_000L;
+    }
+
+    /**
+     * Samples per second over a stream with the given first/last timestamps.
+     * N samples span N - 1 intervals.
+     */
+    static float sampleRateHz(int sampleCount, long firstMillis, long lastMillis) {
+        long durationMs = lastMillis - firstMillis;
+        return sampleCount > 1 && durationMs > 0 ? ((sampleCount - 1) * 1000f) / durationMs : 0f;
+    }
+
+    /**
+     * Time the sample was taken, in elapsedRealtimeNanos.
+     * @param sequence binary sequence number or ImuStreamDecoder.NO_SEQUENCE
+     * @param deviceTimeUs device timestamp or ImuStreamDecoder.NO_DEVICE_TIME
+     * @param arrivalNanos elapsedRealtimeNanos when the notification arrived
+     */
+    long timestampNanos(int sequence, long deviceTimeUs, long arrivalNanos) {
+        long tick;
+        if (deviceTimeUs != ImuStreamDecoder.NO_DEVICE_TIME) {
+            tick = unwrap(SOURCE_DEVICE_TIME, deviceTimeUs, 0xFFFFFFFFL);
+        } else if (sequence != ImuStreamDecoder.NO_SEQUENCE) {
+            tick = unwrap(SOURCE_SEQUENCE, sequence, 0xFFFFL);
+        } else {
+            tick = DeviceClockEstimator.NO_TICK;
+        }
+        return estimator.toHostNanos(tick, arrivalNanos);
+    }
+
+    /**
+     * Counter ticks per second measured against the phone clock; the true
+     * sample rate when timing by sequence number. 0 until the fit converges.
+     */
+    double getTickRateHz() {
+        return estimator.getTickRateHz();
+    }
+
+    void reset() {
+        estimator.reset();
+        source = SOURCE_NONE;
+        lastRaw = -1;
+    }
+
+    private long unwrap(int newSource, long raw, long mask) {
+        if (source != newSource) {
+            // Firmware switched counters - start a fresh fit
+            estimator.reset();
+            source = newSource;
+            lastRaw = -1;
+        }
+
+        if (lastRaw < 0) {
+            unwrapped = raw;
+        } else {
+            long delta = (raw - lastRaw) & mask;
+            // A step of more than half the range is the counter going backwards
+            unwrapped += delta > (mask >>> 1) ? delta - mask - 1 : delta;
+        }
+        lastRaw = raw;
+        return unwrapped;
+    }
+}
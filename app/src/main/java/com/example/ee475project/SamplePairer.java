@@ -0,0 +1,91 @@
+package com.example.ee475project;
+
+/**
+ * Pairs upper and lower back samples that were taken at (nearly) the same time
+ * while both sensors stream concurrently.
+ *
+ * Each sensor keeps only its newest unpaired sample. When a sample arrives and
+ * the other sensor's pending sample is within {@code maxSkewMs}, the two are
+ * emitted together and both slots are cleared. Samples that never find a partner
+ * are overwritten and counted as dropped, so the output is always index-aligned.
+ */
+class SamplePairer {
+
+    /**
+     * Receives one time-aligned pair; the timestamp is the later of the two samples.
+     */
+    interface PairListener {
+        void onPair(long timestamp, float[] upper, float[] lower);
+    }
+
+    private static final int AXES = 6;
+
+    private final long maxSkewMs;
+    private final PairListener listener;
+
+    private final float[][] pending = new float[2][AXES];
+    private final long[] pendingTime = new long[2];
+    private final boolean[] hasPending = new boolean[2];
+
+    private long pairCount = 0;
+    private long droppedCount = 0;
+
+    SamplePairer(long maxSkewMs, PairListener listener) {
+        this.maxSkewMs = maxSkewMs;
+        this.listener = listener;
+    }
+
+    synchronized void add(int sensor, long timestamp,
+                          float ax, float ay, float az,
+                          float gx, float gy, float gz) {
+        if (sensor != ImuLineFramer.SENSOR_UPPER_BACK && sensor != ImuLineFramer.SENSOR_LOWER_BACK) {
+            return;
+        }
+
+        if (hasPending[sensor]) {
+            droppedCount++;  // Superseded before the other sensor caught up
+        }
+
+        float[] slot = pending[sensor];
+        slot[0] = ax;
+        slot[1] = ay;
+        slot[2] = az;
+        slot[3] = gx;
+        slot[4] = gy;
+        slot[5] = gz;
+        pendingTime[sensor] = timestamp;
+        hasPending[sensor] = true;
+
+        int other = 1 - sensor;
+        if (!hasPending[other]) {
+            return;
+        }
+
+        if (Math.abs(timestamp - pendingTime[other]) > maxSkewMs) {
+            // The other sample is too old to belong to this instant
+            hasPending[other] = false;
+            droppedCount++;
+            return;
+        }
+
+        hasPending[ImuLineFramer.SENSOR_UPPER_BACK] = false;
+        hasPending[ImuLineFramer.SENSOR_LOWER_BACK] = false;
+        pairCount++;
+        listener.onPair(Math.max(timestamp, pendingTime[other]),
+                pending[ImuLineFramer.SENSOR_UPPER_BACK],
+                pending[ImuLineFramer.SENSOR_LOWER_BACK]);
+    }
+
+    synchronized void reset() {
+        hasPending[0] = false;
+        hasPending[1] = false;
+    }
+
+    synchronized long getPairCount() {
+        return pairCount;
+    }
+
+    synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,478 @@
+package com.example.ee475project;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.UUID;
+
+/**
+ * One GATT connection to a XIAO sensor over the Nordic UART Service.
+ * Each link owns its own BluetoothGattCallback and stream decoder, so several
+ * links can be open at once (e.g. upper and lower back streaming together).
+ *
+ * After connecting, the link negotiates a larger MTU, the 2M PHY (when the phone
+ * supports it) and the requested connection priority before discovering services
+ * and enabling notifications. Each step falls back after NEGOTIATION_TIMEOUT so a
+ * sensor that ignores a request still comes up with default parameters.
+ *
+ * All descriptor and characteristic writes go through a GattOperationQueue so a
+ * command never collides with the CCCD write or with another command.
+ *
+ * Notifications are only copied into a NotificationPipeline channel on the binder
+ * thread; decoding happens on the pipeline's worker thread.
+ *
+ * Listener methods are called on the Bluetooth binder thread, except onLinkSample,
+ * which is called on the pipeline worker thread.
+ */
+@SuppressLint("MissingPermission")
+class SensorLink {
+
+    private static final String TAG = "SensorLink";
+
+    // Nordic UART Service UUIDs
+    static final UUID UART_SERVICE_UUID = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
+    static final UUID UART_TX_CHARACTERISTIC_UUID = UUID.fromString("6E400003-B5A3-F393-E0A9-E50E24DCCA9E");
+    static final UUID UART_RX_CHARACTERISTIC_UUID = UUID.fromString("6E400002-B5A3-F393-E0A9-E50E24DCCA9E"); // For writing to device
+    static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    // 247 fits a full text line (or several binary frames) in one notification
+    static final int REQUESTED_MTU = 247;
+    static final int DEFAULT_MTU = 23;
+    private static final long NEGOTIATION_TIMEOUT = 1000; // 1 second per step
+
+    // Negotiation steps, in order
+    private static final int STEP_NONE = 0;
+    private static final int STEP_MTU = 1;
+    private static final int STEP_PHY = 2;
+    private static final int STEP_DISCOVERY = 3;
+
+    /**
+     * Connection events and decoded samples for one link.
+     */
+    interface Listener {
+        void onLinkConnected(SensorLink link);
+
+        /** MTU, PHY and priority are settled; service discovery starts next. */
+        void onLinkNegotiated(SensorLink link, LinkParameters parameters);
+
+        /** Notifications are enabled and samples will start flowing. */
+        void onLinkReady(SensorLink link);
+
+        /**
+         * Called on the pipeline worker thread, never on the binder thread.
+         * timestampNanos is the sample time on the elapsedRealtimeNanos clock (see SampleClock).
+         */
+        void onLinkSample(SensorLink link, int sensor, int sequence, long timestampNanos,
+                          float ax, float ay, float az,
+                          float gx, float gy, float gz);
+
+        /** The GATT has already been closed when this is called. */
+        void onLinkDisconnected(SensorLink link, int status);
+    }
+
+    private final Context context;
+    private final BluetoothDevice device;
+    private final String deviceName;
+    private final Listener listener;
+    private final ImuStreamDecoder decoder;
+    private final SampleClock[] sampleClocks = {new SampleClock(), new SampleClock()};
+    private long notificationArrivalNanos;  // Worker thread only
+    private final GattOperationQueue operationQueue;
+    private final Handler timeoutHandler = new Handler(Looper.getMainLooper());
+
+    // CONNECTION_PRIORITY_* to request once connected, or -1 to leave the default
+    private int connectionPriority = -1;
+
+    // Guarded by this; advanced by whichever of callback or timeout gets there first
+    private int negotiationStep = STEP_NONE;
+    private volatile LinkParameters parameters;
+    private int mtu = DEFAULT_MTU;
+    private int txPhy = BluetoothDevice.PHY_LE_1M;
+    private int rxPhy = BluetoothDevice.PHY_LE_1M;
+
+    private volatile NotificationPipeline.Channel channel;
+    private volatile BluetoothGatt gatt;
+    private volatile boolean connected = false;
+    private volatile boolean everConnected = false;
+    private volatile boolean ready = false;
+
+    SensorLink(Context context, BluetoothDevice device, Listener listener) {
+        this(context, device, device.getName(), listener);
+    }
+
+    /**
+     * Use when the name is known but the stack may not have it cached, e.g. a
+     * device created with getRemoteDevice() for a direct reconnect.
+     */
+    SensorLink(Context context, BluetoothDevice device, String deviceName, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.device = device;
+        this.deviceName = deviceName;
+        this.listener = listener;
+        this.decoder = new ImuStreamDecoder((sensor, sequence, deviceTimeUs, ax, ay, az, gx, gy, gz) -> {
+            long timestampNanos = sampleClocks[sensor].timestampNanos(sequence, deviceTimeUs, notificationArrivalNanos);
+            this.listener.onLinkSample(this, sensor, sequence, timestampNanos, ax, ay, az, gx, gy, gz);
+        });
+        this.operationQueue = new GattOperationQueue(deviceName);
+    }
+
+    void setConnectionPriority(int connectionPriority) {
+        this.connectionPriority = connectionPriority;
+    }
+
+    void connect() {
+        Log.d(TAG, "Connecting to " + deviceName);
+        channel = NotificationPipeline.getInstance().openChannel(deviceName, pipelineSink);
+        gatt = device.connectGatt(context, false, gattCallback);
+    }
+
+    void disconnect() {
+        BluetoothGatt current = gatt;
+        if (current != null) {
+            current.disconnect();
+        }
+    }
+
+    /**
+     * Tears the link down without waiting for the disconnect callback.
+     * The listener is not notified.
+     */
+    void close() {
+        cancelNegotiation();
+        operationQueue.clear();
+        closeChannel();
+        BluetoothGatt current = gatt;
+        gatt = null;
+        connected = false;
+        ready = false;
+        if (current != null) {
+            try {
+                current.disconnect();
+                current.close();
+            } catch (Exception e) {
+                Log.w(TAG, "Error closing GATT for " + deviceName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queues a command for the sensor's RX characteristic.
+     * A copy of the same command that is still waiting in the queue is sent only once.
+     * @return true if the write was queued
+     */
+    boolean writeCommand(byte[] payload) {
+        return writeCommand(payload, null);
+    }
+
+    /**
+     * Queues a command; {@code completion} (may be null) is told whether the sensor acknowledged it.
+     */
+    boolean writeCommand(byte[] payload, GattOperationQueue.Completion completion) {
+        if (gatt == null || !connected) {
+            Log.w(TAG, "Cannot write to " + deviceName + " - not connected");
+            return false;
+        }
+
+        operationQueue.writeCharacteristic(UART_SERVICE_UUID, UART_RX_CHARACTERISTIC_UUID, payload, completion);
+        return true;
+    }
+
+    String getDeviceName() {
+        return deviceName;
+    }
+
+    BluetoothDevice getDevice() {
+        return device;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * False if the connection attempt itself failed (the link never came up)
+     */
+    boolean hasEverConnected() {
+        return everConnected;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    ImuStreamDecoder getDecoder() {
+        return decoder;
+    }
+
+    GattOperationQueue getOperationQueue() {
+        return operationQueue;
+    }
+
+    /**
+     * Ring buffer carrying this link's notifications, or null when not connected
+     */
+    NotificationPipeline.Channel getChannel() {
+        return channel;
+    }
+
+    private void closeChannel() {
+        NotificationPipeline.Channel current = channel;
+        channel = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    // Runs on the pipeline worker thread - the decoder is only ever touched there
+    private final NotificationPipeline.Sink pipelineSink = new NotificationPipeline.Sink() {
+        @Override
+        public void onNotification(byte[] data, int offset, int length, long arrivalNanos) {
+            notificationArrivalNanos = arrivalNanos;
+            decoder.feed(data, offset, length);
+        }
+
+        @Override
+        public void onChannelClosed() {
+            decoder.reset();
+            for (SampleClock clock : sampleClocks) {
+                clock.reset();
+            }
+        }
+    };
+
+    /**
+     * Negotiated parameters, or null until negotiation has finished
+     */
+    LinkParameters getParameters() {
+        return parameters;
+    }
+
+    // ========== NEGOTIATION ==========
+
+    private synchronized void startNegotiation(BluetoothGatt g) {
+        mtu = DEFAULT_MTU;
+        txPhy = BluetoothDevice.PHY_LE_1M;
+        rxPhy = BluetoothDevice.PHY_LE_1M;
+        parameters = null;
+
+        negotiationStep = STEP_MTU;
+        if (g.requestMtu(REQUESTED_MTU)) {
+            Log.d(TAG, "Requested MTU " + REQUESTED_MTU + " from " + deviceName);
+            scheduleTimeout(g, STEP_MTU);
+        } else {
+            Log.w(TAG, "MTU request failed on " + deviceName + " - keeping " + DEFAULT_MTU);
+            requestPhy(g);
+        }
+    }
+
+    /** Called with the lock held, once the MTU step is done. */
+    private void requestPhy(BluetoothGatt g) {
+        negotiationStep = STEP_PHY;
+        if (isLe2MPhySupported()) {
+            g.setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                    BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+            Log.d(TAG, "Requested 2M PHY from " + deviceName);
+            scheduleTimeout(g, STEP_PHY);
+        } else {
+            Log.d(TAG, "2M PHY not supported on this phone - staying on 1M");
+            finishNegotiation(g);
+        }
+    }
+
+    /** Called with the lock held, once the PHY step is done. */
+    private void finishNegotiation(BluetoothGatt g) {
+        timeoutHandler.removeCallbacksAndMessages(null);
+
+        if (connectionPriority >= 0) {
+            boolean success = g.requestConnectionPriority(connectionPriority);
+            Log.d(TAG, "Requested connection priority " + LinkParameters.priorityName(connectionPriority)
+                    + " for " + deviceName + ": " + (success ? "SUCCESS" : "FAILED"));
+        }
+
+        negotiationStep = STEP_DISCOVERY;
+        parameters = new LinkParameters(deviceName, mtu, txPhy, rxPhy, connectionPriority);
+        Log.d(TAG, "✓ Link negotiated - " + parameters);
+        listener.onLinkNegotiated(this, parameters);
+
+        // Notifications are enabled only after discovery, so the first sample already uses the new MTU
+        g.discoverServices();
+    }
+
+    private void scheduleTimeout(BluetoothGatt g, int step) {
+        timeoutHandler.postDelayed(() -> {
+            synchronized (SensorLink.this) {
+                if (negotiationStep != step || gatt != g) {
+                    return;
+                }
+                Log.w(TAG, "Negotiation step " + step + " timed out on " + deviceName + " - continuing");
+                if (step == STEP_MTU) {
+                    requestPhy(g);
+                } else {
+                    finishNegotiation(g);
+                }
+            }
+        }, NEGOTIATION_TIMEOUT);
+    }
+
+    private synchronized void cancelNegotiation() {
+        negotiationStep = STEP_NONE;
+        timeoutHandler.removeCallbacksAndMessages(null);
+    }
+
+    private boolean isLe2MPhySupported() {
+        BluetoothManager manager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
+        BluetoothAdapter adapter = manager != null ? manager.getAdapter() : null;
+        return adapter != null && adapter.isLe2MPhySupported();
+    }
+
+    private static BluetoothGattCharacteristic getCharacteristic(BluetoothGatt gatt, UUID uuid) {
+        BluetoothGattService service = gatt.getService(UART_SERVICE_UUID);
+        return service != null ? service.getCharacteristic(uuid) : null;
+    }
+
+    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
+            if (newState == BluetoothGatt.STATE_CONNECTED) {
+                gatt = g;
+                connected = true;
+                everConnected = true;
+
+                listener.onLinkConnected(SensorLink.this);
+                startNegotiation(g);
+
+            } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
+                connected = false;
+                ready = false;
+                cancelNegotiation();
+                operationQueue.clear();
+                closeChannel();
+
+                // Disable notifications before closing
+                try {
+                    BluetoothGattCharacteristic characteristic = getCharacteristic(g, UART_TX_CHARACTERISTIC_UUID);
+                    if (characteristic != null) {
+                        g.setCharacteristicNotification(characteristic, false);
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Error disabling notifications: " + e.getMessage());
+                }
+
+                g.close();
+                if (gatt == g) {
+                    gatt = null;
+                }
+
+                listener.onLinkDisconnected(SensorLink.this, status);
+            }
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt g, int newMtu, int status) {
+            synchronized (SensorLink.this) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    mtu = newMtu;
+                    Log.d(TAG, "✓ MTU " + newMtu + " on " + deviceName);
+                } else {
+                    Log.w(TAG, "MTU negotiation failed on " + deviceName + ": " + status);
+                }
+                if (negotiationStep == STEP_MTU) {
+                    requestPhy(g);
+                }
+            }
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt g, int newTxPhy, int newRxPhy, int status) {
+            synchronized (SensorLink.this) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    txPhy = newTxPhy;
+                    rxPhy = newRxPhy;
+                    Log.d(TAG, "✓ PHY tx " + LinkParameters.phyName(newTxPhy)
+                            + " / rx " + LinkParameters.phyName(newRxPhy) + " on " + deviceName);
+                } else {
+                    Log.w(TAG, "PHY update failed on " + deviceName + ": " + status);
+                }
+                if (negotiationStep == STEP_PHY) {
+                    finishNegotiation(g);
+                }
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt g, int status) {
+            if (status != BluetoothGatt.GATT_SUCCESS) {
+                Log.w(TAG, "Service discovery failed on " + deviceName + ": " + status);
+                return;
+            }
+
+            BluetoothGattCharacteristic characteristic = getCharacteristic(g, UART_TX_CHARACTERISTIC_UUID);
+            if (characteristic == null) {
+                Log.e(TAG, "UART TX characteristic not found on " + deviceName);
+                return;
+            }
+
+            g.setCharacteristicNotification(characteristic, true);
+            operationQueue.writeDescriptor(UART_SERVICE_UUID, UART_TX_CHARACTERISTIC_UUID, CLIENT_CHARACTERISTIC_CONFIG,
+                    BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE, this::onNotificationsEnabled);
+            // Commands queued while negotiating go out after the CCCD write
+            operationQueue.start(g);
+        }
+
+        private void onNotificationsEnabled(boolean success) {
+            if (!success) {
+                Log.e(TAG, "✗ Could not enable notifications on " + deviceName);
+                return;
+            }
+
+            // Notifications are on - ask the sensor to switch to binary frames.
+            // Firmware that doesn't know the command keeps sending text, which the decoder still handles.
+            BluetoothGatt current = gatt;
+            if (current == null) {
+                return;  // Disconnected while the CCCD write was in flight
+            }
+            if (getCharacteristic(current, UART_RX_CHARACTERISTIC_UUID) != null) {
+                operationQueue.writeCharacteristic(UART_SERVICE_UUID, UART_RX_CHARACTERISTIC_UUID,
+                        ImuStreamDecoder.BINARY_MODE_COMMAND, sent ->
+                                Log.d(TAG, "Requested binary IMU frames from " + deviceName + ": " + (sent ? "SENT" : "FAILED")));
+            } else {
+                Log.w(TAG, "RX characteristic not found on " + deviceName + " - staying in text mode");
+            }
+
+            ready = true;
+            listener.onLinkReady(SensorLink.this);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor descriptor, int status) {
+            operationQueue.onDescriptorWrite(descriptor.getCharacteristic().getUuid(), descriptor.getUuid(), status);
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt g, BluetoothGattCharacteristic characteristic, int status) {
+            operationQueue.onCharacteristicWrite(characteristic.getUuid(), status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic characteristic) {
+            // Only stamp and copy the bytes here; the pipeline worker decodes them
+            long arrivalNanos = SystemClock.elapsedRealtimeNanos();
+            NotificationPipeline.Channel current = channel;
+            if (current != null) {
+                current.offer(characteristic.getValue(), arrivalNanos);
+            }
+        }
+    };
+}
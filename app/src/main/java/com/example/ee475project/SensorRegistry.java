@@ -0,0 +1,100 @@
+package com.example.ee475project;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanFilter;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+/**
+ * Remembers which physical sensor (MAC address) belongs to the signed-in user.
+ *
+ * The first XIAO_Upper_Back / XIAO_Lower_Back a user successfully connects to is
+ * pinned to their account on this phone. After that, reconnects go straight to
+ * that address with getRemoteDevice() instead of scanning by name, and scans only
+ * accept the pinned address - so another unit with the same name is never used.
+ */
+class SensorRegistry {
+
+    private static final String TAG = "SensorRegistry";
+
+    static final String PREFS_NAME = "SensorRegistry";
+    private static final String LOCAL_USER = "local";
+
+    private final SharedPreferences prefs;
+    private final String userKey;
+
+    SensorRegistry(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        this.userKey = user != null ? user.getUid() : LOCAL_USER;
+    }
+
+    /**
+     * Pinned MAC address for this sensor name, or null if none yet
+     */
+    String getAddress(String deviceName) {
+        return prefs.getString(key(deviceName), null);
+    }
+
+    boolean isRegistered(String deviceName) {
+        return getAddress(deviceName) != null;
+    }
+
+    /**
+     * Pins the device if nothing is registered under its name yet.
+     * An existing registration is never overwritten; call {@link #forget} first.
+     */
+    void registerIfAbsent(String deviceName, String address) {
+        if (deviceName == null || address == null || isRegistered(deviceName)) {
+            return;
+        }
+        prefs.edit().putString(key(deviceName), address).apply();
+        Log.d(TAG, "💾 Registered " + deviceName + " → " + address);
+    }
+
+    void forget(String deviceName) {
+        prefs.edit().remove(key(deviceName)).apply();
+        Log.d(TAG, "Forgot " + deviceName);
+    }
+
+    /**
+     * True if the device may be used for this name: either nothing is pinned yet,
+     * or it is the pinned unit.
+     */
+    boolean accepts(BluetoothDevice device, String deviceName) {
+        String address = getAddress(deviceName);
+        return address == null || address.equalsIgnoreCase(device.getAddress());
+    }
+
+    /**
+     * Device handle for a direct connect to the pinned address, or null if none is pinned
+     */
+    BluetoothDevice getRegisteredDevice(BluetoothAdapter adapter, String deviceName) {
+        String address = getAddress(deviceName);
+        if (address == null || !BluetoothAdapter.checkBluetoothAddress(address)) {
+            return null;
+        }
+        return adapter.getRemoteDevice(address);
+    }
+
+    /**
+     * Scan filter for one sensor: by address when pinned, otherwise by name.
+     */
+    ScanFilter buildScanFilter(String deviceName) {
+        ScanFilter.Builder builder = new ScanFilter.Builder().setDeviceName(deviceName);
+        String address = getAddress(deviceName);
+        if (address != null) {
+            builder.setDeviceAddress(address);
+        }
+        return builder.build();
+    }
+
+    private String key(String deviceName) {
+        return userKey + "/" + deviceName;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.ee475project;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * What upload encodings an ML server accepts, learned from its /test reply.
+ *
+ * A server opts in by listing them in the reply, e.g.
+ *   {"reply": "...", "capabilities": ["gzip", "imu-binary-v1"]}
+ * Servers that don't list anything keep getting plain JSON, so older
+ * backends work unchanged. Results are remembered per server (SharedPreferences).
+ */
+class ServerCapabilities {
+
+    private static final String TAG = "ServerCapabilities";
+    private static final String PREFS_NAME = "ServerCapabilities";
+
+    /** Request bodies may be sent with Content-Encoding: gzip */
+    static final String GZIP = "gzip";
+    /** /predict accepts InferencePayload's binary layout */
+    static final String IMU_BINARY = "imu-binary-v1";
+    /** /predict accepts {"cycles": [...]} and replies {"predictions": [...]}, one per cycle */
+    static final String PREDICT_BATCH = "predict-batch-v1";
+
+    private static volatile ServerCapabilities instance;
+
+    private final SharedPreferences prefs;
+
+    static ServerCapabilities getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ServerCapabilities.class) {
+                if (instance == null) {
+                    instance = new ServerCapabilities(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ServerCapabilities(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Server root for any of its endpoint URLs (/test, /predict, /train)
+     */
+    static String baseUrl(String url) {
+        String base = url.trim();
+        for (String endpoint : new String[]{"/test", "/predict", "/train"}) {
+            if (base.endsWith(endpoint)) {
+                base = base.substring(0, base.length() - endpoint.length());
+                break;
+            }
+        }
+        while (base.endsWith("/")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        return base;
+    }
+
+    boolean isKnown(String url) {
+        return prefs.contains(baseUrl(url));
+    }
+
+    boolean supports(String url, String capability) {
+        String stored = prefs.getString(baseUrl(url), "");
+        for (String item : stored.split(",")) {
+            if (item.equals(capability)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores what a /test reply advertises; a reply without the field means none
+     */
+    void record(String url, JSONObject testReply) {
+        Set<String> capabilities = new HashSet<>();
+        JSONArray list = testReply.optJSONArray("capabilities");
+        if (list != null) {
+            for (int i = 0; i < list.length(); i++) {
+                capabilities.add(list.optString(i));
+            }
+        }
+        prefs.edit().putString(baseUrl(url), String.join(",", capabilities)).apply();
+        Log.d(TAG, "Server " + baseUrl(url) + " accepts: "
+                + (capabilities.isEmpty() ? "plain JSON only" : capabilities));
+    }
+
+    /**
+     * Asks the server's /test endpoint in the background, for the next upload
+     */
+    void probe(String url, OkHttpClient client) {
+        String testUrl = baseUrl(url) + "/test";
+        RequestBody body = RequestBody.create("{\"message\": \"capabilities\"}",
+                MediaType.get("application/json; charset=utf-8"));
+        client.newCall(new Request.Builder().url(testUrl).post(body).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                Log.w(TAG, "Capability probe failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
+                String reply = response.body() != null ? response.body().string() : "";
+                if (!response.isSuccessful()) {
+                    Log.w(TAG, "Capability probe: server error " + response.code());
+                    return;
+                }
+                try {
+                    record(url, new JSONObject(reply));
+                } catch (Exception e) {
+                    Log.w(TAG, "Capability probe: unexpected reply");
+                }
+            }
+        });
+    }
+
+    /**
+     * Compresses {@code body} as it is written; send with header Content-Encoding: gzip
+     */
+    static RequestBody gzip(RequestBody body) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                return -1;  // Unknown until compressed
+            }
+
+            @Override
+            public void writeTo(@NonNull BufferedSink sink) throws IOException {
+                BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+                body.writeTo(gzipSink);
+                gzipSink.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.ee475project;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background cleanup of the signed-in user's posture_sessions.
+ *
+ * Two passes, each paged with a (value, key) cursor so the whole backlog is
+ * covered rather than a fixed batch:
+ *  - retention: sessions older than SESSION_RETENTION_MS (daily_stats already has them),
+ *  - stale: pending_analysis entries older than STALE_SESSION_THRESHOLD_MS,
+ *    i.e. sessions that were never completed or analyzed.
+ *
+ * Every page is removed with one multi-path null update, covering the session
+ * and its queue entry. The cursor is saved after each page, so a run that is
+ * stopped (constraints lost, time budget used up) picks up where it left off.
+ *
+ * Scheduled once a day while charging on an unmetered network.
+ */
+public class SessionCompactionWorker extends Worker {
+
+    private static final String TAG = "SessionCompaction";
+    private static final String WORK_NAME = "session_compaction";
+    private static final String PREFS_NAME = "SessionCompaction";
+
+    private static final long SESSION_RETENTION_MS = 7 * 24 * 60 * 60 * 1000L;       // 7 days
+    private static final long STALE_SESSION_THRESHOLD_MS = 24 * 60 * 60 * 1000L;     // 24 hours
+
+    private static final int PAGE_SIZE = 50;
+    private static final long REQUEST_TIMEOUT_MS = 30 * 1000;
+    private static final long RUN_BUDGET_MS = 8 * 60 * 1000;    // WorkManager stops workers at 10 min
+
+    private static final String PASS_RETENTION = "retention";
+    private static final String PASS_STALE = "stale";
+
+    private final SharedPreferences prefs;
+    private final DatabaseReference rootRef;
+    private long deadline;
+
+    public SessionCompactionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        enablePersistence();
+        rootRef = FirebaseDatabase.getInstance().getReference();
+    }
+
+    /**
+     * Enqueues the daily job; an already scheduled job is kept.
+     */
+    static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                SessionCompactionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            return Result.success();
+        }
+        String userId = user.getUid();
+        deadline = System.currentTimeMillis() + RUN_BUDGET_MS;
+
+        try {
+            long now = System.currentTimeMillis();
+
+            Query oldSessions = FirebaseDatabase.getInstance()
+                    .getReference("posture_sessions")
+                    .child(userId)
+                    .orderByChild("timestamp")
+                    .endAt(now - SESSION_RETENTION_MS);
+            int expired = compact(userId, PASS_RETENTION, oldSessions, "timestamp");
+
+            Query staleEntries = PostureAnalyzer.pendingAnalysisRef(userId)
+                    .orderByValue()
+                    .endAt(now - STALE_SESSION_THRESHOLD_MS);
+            int stale = compact(userId, PASS_STALE, staleEntries, null);
+
+            Log.d(TAG, "✓ Compaction: " + expired + " expired, " + stale + " stale session(s) deleted"
+                    + (isDone() ? " (stopped early, will resume)" : ""));
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "✗ Compaction failed: " + e.getMessage());
+            return Result.retry();
+        }
+    }
+
+    /**
+     * Deletes every child of {@code query} page by page, resuming from the saved cursor.
+     * @param orderChild child holding the ordered value, or null when ordered by value
+     * @return number of sessions deleted in this run
+     */
+    private int compact(String userId, String pass, Query query, String orderChild) throws Exception {
+        String cursorKeyPref = pass + "_key_" + userId;
+        String cursorValuePref = pass + "_value_" + userId;
+        String sessionsPath = "posture_sessions/" + userId;
+        String pendingPath = PostureAnalyzer.PENDING_ANALYSIS + "/" + userId;
+        int deleted = 0;
+
+        while (!isDone()) {
+            String cursorKey = prefs.getString(cursorKeyPref, null);
+            Query page = cursorKey != null
+                    ? query.startAfter(prefs.getLong(cursorValuePref, 0), cursorKey)
+                    : query;
+            DataSnapshot snapshot = Tasks.await(page.limitToFirst(PAGE_SIZE).get(),
+                    REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+            Map<String, Object> updates = new HashMap<>();
+            String lastKey = null;
+            long lastValue = 0;
+            for (DataSnapshot child : snapshot.getChildren()) {
+                String sessionId = child.getKey();
+                updates.put(sessionsPath + "/" + sessionId, null);
+                updates.put(pendingPath + "/" + sessionId, null);
+
+                Long value = (orderChild != null ? child.child(orderChild) : child).getValue(Long.class);
+                lastKey = sessionId;
+                lastValue = value != null ? value : 0;
+            }
+
+            if (updates.isEmpty()) {
+                prefs.edit().remove(cursorKeyPref).remove(cursorValuePref).apply();
+                break;  // Pass complete - next run starts from the oldest again
+            }
+
+            Tasks.await(rootRef.updateChildren(updates), REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            deleted += updates.size() / 2;
+            prefs.edit()
+                    .putString(cursorKeyPref, lastKey)
+                    .putLong(cursorValuePref, lastValue)
+                    .apply();
+        }
+        return deleted;
+    }
+
+    private boolean isDone() {
+        return isStopped() || System.currentTimeMillis() > deadline;
+    }
+
+    /**
+     * Must precede any other database use in the process; the worker can start
+     * before MainActivity does.
+     */
+    private static void enablePersistence() {
+        try {
+            FirebaseDatabase.getInstance().setPersistenceEnabled(true);
+        } catch (Exception e) {
+            // Already in use in this process - persistence was set up by whoever started first
+        }
+    }
+}
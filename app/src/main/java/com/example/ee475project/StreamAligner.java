@@ -0,0 +1,152 @@
+package com.example.ee475project;
+
+/**
+ * Resamples the upper and lower back streams onto one shared, uniform time grid.
+ *
+ * Each stream is interpolated (linear or cubic Hermite) at the grid times, and the
+ * grid only covers the interval where both streams have data, so the result is
+ * exactly N samples per stream with sample i of each taken at the same instant.
+ * Sequentially collected streams (upper first, then lower) are lined up by passing
+ * the lower stream's start offset as a shift.
+ *
+ * Works on primitive arrays: each sample is CHANNELS consecutive floats
+ * (ax, ay, az, gx, gy, gz), and each stream is walked once.
+ */
+class StreamAligner {
+
+    static final int LINEAR = 0;
+    static final int CUBIC = 1;
+
+    static final int CHANNELS = 6;
+
+    /**
+     * Aligned streams: {@code length} samples each, sample i at {@link #timeAt(int)}.
+     */
+    static final class Result {
+        final long startMillis;
+        final float rateHz;
+        final int length;
+        final float[] upper;
+        final float[] lower;
+
+        private Result(long startMillis, float rateHz, int length, float[] upper, float[] lower) {
+            this.startMillis = startMillis;
+            this.rateHz = rateHz;
+            this.length = length;
+            this.upper = upper;
+            this.lower = lower;
+        }
+
+        long timeAt(int index) {
+            return startMillis + Math.round(index * 1000.0 / rateHz);
+        }
+    }
+
+    private final float rateHz;
+    private final int interpolation;
+
+    /**
+     * @param rateHz grid rate, or 0 to use the slower stream's measured rate
+     * @param interpolation {@link #LINEAR} or {@link #CUBIC}
+     */
+    StreamAligner(float rateHz, int interpolation) {
+        this.rateHz = rateHz;
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * @param lowerShiftMillis subtracted from every lower back timestamp before aligning
+     * @return the aligned streams, or null if they don't overlap
+     */
+    Result align(long[] upperTimes, float[] upperData, int upperCount,
+                 long[] lowerTimes, float[] lowerData, int lowerCount,
+                 long lowerShiftMillis) {
+        if (upperCount < 2 || lowerCount < 2) {
+            return null;
+        }
+
+        long start = Math.max(upperTimes[0], lowerTimes[0] - lowerShiftMillis);
+        long end = Math.min(upperTimes[upperCount - 1], lowerTimes[lowerCount - 1] - lowerShiftMillis);
+        if (end <= start) {
+            return null;
+        }
+
+        float rate = rateHz;
+        if (rate <= 0) {
+            rate = Math.min(
+                    SampleClock.sampleRateHz(upperCount, upperTimes[0], upperTimes[upperCount - 1]),
+                    SampleClock.sampleRateHz(lowerCount, lowerTimes[0], lowerTimes[lowerCount - 1]));
+            if (rate <= 0) {
+                return null;
+            }
+        }
+
+        double stepMs = 1000.0 / rate;
+        int length = (int) Math.floor((end - start) / stepMs) + 1;
+
+        float[] upper = new float[length * CHANNELS];
+        float[] lower = new float[length * CHANNELS];
+        resample(upperTimes, upperData, upperCount, 0, start, stepMs, length, upper);
+        resample(lowerTimes, lowerData, lowerCount, lowerShiftMillis, start, stepMs, length, lower);
+
+        return new Result(start, rate, length, upper, lower);
+    }
+
+    private void resample(long[] times, float[] data, int count, long shift,
+                          long start, double stepMs, int length, float[] out) {
+        int k = 0;  // Source interval [k, k + 1] containing the current grid time
+        for (int i = 0; i < length; i++) {
+            double t = start + i * stepMs;
+            while (k < count - 2 && times[k + 1] - shift <= t) {
+                k++;
+            }
+
+            double t1 = times[k] - shift;
+            double t2 = times[k + 1] - shift;
+            double h = t2 - t1;
+            double s = h > 0 ? (t - t1) / h : 1;
+            if (s < 0) s = 0;
+            if (s > 1) s = 1;
+
+            int base = i * CHANNELS;
+            if (interpolation == CUBIC) {
+                cubic(times, data, count, k, s, h, out, base);
+            } else {
+                int a = k * CHANNELS;
+                int b = a + CHANNELS;
+                for (int c = 0; c < CHANNELS; c++) {
+                    out[base + c] = (float) (data[a + c] + s * (data[b + c] - data[a + c]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Cubic Hermite between samples k and k + 1, with finite-difference tangents
+     * scaled by the real (non-uniform) sample spacing.
+     */
+    private static void cubic(long[] times, float[] data, int count, int k,
+                              double s, double h, float[] out, int base) {
+        double s2 = s * s;
+        double s3 = s2 * s;
+        double h00 = 2 * s3 - 3 * s2 + 1;
+        double h10 = s3 - 2 * s2 + s;
+        double h01 = -2 * s3 + 3 * s2;
+        double h11 = s3 - s2;
+
+        int prev = Math.max(k - 1, 0);
+        int next = Math.min(k + 2, count - 1);
+        double spanA = (double) (times[k + 1] - times[prev]);
+        double spanB = (double) (times[next] - times[k]);
+
+        int a = k * CHANNELS;
+        int b = a + CHANNELS;
+        for (int c = 0; c < CHANNELS; c++) {
+            double p1 = data[a + c];
+            double p2 = data[b + c];
+            double m1 = spanA > 0 ? (p2 - data[prev * CHANNELS + c]) / spanA : 0;
+            double m2 = spanB > 0 ? (data[next * CHANNELS + c] - p1) / spanB : 0;
+            out[base + c] = (float) (h00 * p1 + h10 * h * m1 + h01 * p2 + h11 * h * m2);
+        }
+    }
+}
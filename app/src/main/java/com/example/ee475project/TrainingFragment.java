@@ -22,8 +22,6 @@ import com.google.android.material.card.MaterialCardView;
 
 import okhttp3.Call;
 import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -37,7 +35,6 @@ public class TrainingFragment extends Fragment {
     private static final String TAG = "TrainingFragment";
 
     private TrainingViewModel trainingViewModel;
-    private OkHttpClient httpClient;
     private EditText serverUrlInput;
 
     // UI Elements
@@ -76,9 +73,6 @@ public class TrainingFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        // Initialize HTTP client
-        httpClient = new OkHttpClient();  // ADD THIS
-
         // Initialize ViewModel
         trainingViewModel = new ViewModelProvider(requireActivity()).get(TrainingViewModel.class);
 
@@ -136,6 +130,7 @@ public class TrainingFragment extends Fragment {
                     case "Preparing...":
                     case "Upper Back":
                     case "Lower Back":
+                    case "Both Sensors":
                         // Collection in progress
                         progressCard.setVisibility(View.VISIBLE);
                         summaryCard.setVisibility(View.GONE);
@@ -148,6 +143,8 @@ public class TrainingFragment extends Fragment {
                             tvProgressMessage.setText("Collecting upper back data...\nHold your posture steady!");
                         } else if (phase.equals("Lower Back")) {
                             tvProgressMessage.setText("Collecting lower back data...\nKeep holding your posture!");
+                        } else if (phase.equals("Both Sensors")) {
+                            tvProgressMessage.setText("Collecting upper + lower back data...\nHold your posture steady!");
                         }
                         break;
 
@@ -278,18 +275,18 @@ public class TrainingFragment extends Fragment {
             return;
         }
 
-        // Generate JSON from ALL collected data
-        String jsonString = trainingViewModel.generateTrainingJSON();
+        // JSON is streamed from ALL collected data when it is uploaded or saved
+        TrainingPayloadWriter payload = trainingViewModel.createTrainingPayload();
 
-        if (jsonString == null) {
-            Log.e(TAG, "generateTrainingJSON() returned null!");
+        if (payload == null) {
+            Log.e(TAG, "createTrainingPayload() returned null!");
             Toast.makeText(getContext(),
                     "❌ Failed to generate JSON - check logs for details",
                     Toast.LENGTH_LONG).show();
             return;
         }
 
-        Log.d(TAG, "JSON generated successfully, length: " + jsonString.length());
+        Log.d(TAG, "Payload ready: " + payload.getPoseCount() + " poses, " + payload.getSampleCount() + " samples");
 
         // Show summary of what will be exported
         StringBuilder summary = new StringBuilder();
@@ -298,7 +295,7 @@ public class TrainingFragment extends Fragment {
         for (String pose : savedPoses) {
             summary.append("• ").append(pose.replace("_", " ")).append("\n");
         }
-        summary.append("\nTotal size: ").append(jsonString.length() / 1024).append(" KB\n\n");
+        summary.append("\nTotal samples: ").append(payload.getSampleCount()).append("\n\n");
         summary.append("Choose export option:");
 
         // Show options: Upload, Save to file, or Copy to clipboard
@@ -306,58 +303,75 @@ public class TrainingFragment extends Fragment {
                 .setTitle("Export All Training Data")
                 .setMessage(summary.toString())
                 .setPositiveButton("Upload to Server", (dialog, which) -> {
-                    uploadToServer(jsonString);
+                    uploadToServer(payload);
                 })
                 .setNegativeButton("Save to File", (dialog, which) -> {
-                    saveJSONToFile(jsonString);
+                    saveJSONToFile(payload);
                 })
                 .setNeutralButton("Copy to Clipboard", (dialog, which) -> {
-                    copyToClipboard(jsonString);
+                    copyToClipboard(payload);
                 })
                 .show();
     }
 
-    private void saveJSONToFile(String jsonString) {
-        try {
-            // Format filename with timestamp
-            String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss",
-                    java.util.Locale.US).format(new java.util.Date());
-            String filename = "training_data_all_poses_" + timestamp + ".json";
-
-            // Use Android's external storage (Downloads folder)
-            java.io.File downloadsDir = android.os.Environment.getExternalStoragePublicDirectory(
-                    android.os.Environment.DIRECTORY_DOWNLOADS);
-
-            if (!downloadsDir.exists()) {
-                downloadsDir.mkdirs();
+    private void saveJSONToFile(TrainingPayloadWriter payload) {
+        // Format filename with timestamp
+        String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss",
+                java.util.Locale.US).format(new java.util.Date());
+        String filename = "training_data_all_poses_" + timestamp + ".json";
+
+        // Use Android's external storage (Downloads folder)
+        java.io.File downloadsDir = android.os.Environment.getExternalStoragePublicDirectory(
+                android.os.Environment.DIRECTORY_DOWNLOADS);
+        java.io.File outputFile = new java.io.File(downloadsDir, filename);
+
+        // Stream straight to the file, off the main thread
+        new Thread(() -> {
+            Exception error = null;
+            try {
+                if (!downloadsDir.exists()) {
+                    downloadsDir.mkdirs();
+                }
+                payload.writeTo(outputFile);
+                Log.d(TAG, "JSON saved to: " + outputFile.getAbsolutePath());
+            } catch (Exception e) {
+                Log.e(TAG, "Error saving JSON: " + e.getMessage(), e);
+                error = e;
             }
 
-            java.io.File outputFile = new java.io.File(downloadsDir, filename);
+            final Exception result = error;
+            if (getActivity() == null) return;
+            requireActivity().runOnUiThread(() -> {
+                if (!isAdded()) return;
 
-            // Write JSON to file
-            java.io.FileWriter writer = new java.io.FileWriter(outputFile);
-            writer.write(jsonString);
-            writer.close();
-
-            Log.d(TAG, "JSON saved to: " + outputFile.getAbsolutePath());
-
-            List<String> poses = trainingViewModel.getSavedPoseLabels();
+                if (result != null) {
+                    Toast.makeText(getContext(),
+                            "❌ Error saving file: " + result.getMessage(),
+                            Toast.LENGTH_LONG).show();
+                    return;
+                }
 
-            new androidx.appcompat.app.AlertDialog.Builder(requireContext())
-                    .setTitle("✓ Export Complete")
-                    .setMessage("All training data saved successfully!\n\n" +
-                            "File: " + filename + "\n" +
-                            "Location: Downloads folder\n" +
-                            "Poses: " + poses.size() + "\n\n" +
-                            "You can now access this file from your phone's Downloads folder.")
-                    .setPositiveButton("OK", null)
-                    .show();
+                new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                        .setTitle("✓ Export Complete")
+                        .setMessage("All training data saved successfully!\n\n" +
+                                "File: " + filename + "\n" +
+                                "Location: Downloads folder\n" +
+                                "Poses: " + payload.getPoseCount() + "\n\n" +
+                                "You can now access this file from your phone's Downloads folder.")
+                        .setPositiveButton("OK", null)
+                        .show();
+            });
+        }, "training-export").start();
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving JSON: " + e.getMessage(), e);
+    private void copyToClipboard(TrainingPayloadWriter payload) {
+        try {
+            copyToClipboard(payload.writeToString());
+        } catch (IOException e) {
+            Log.e(TAG, "Error generating JSON: " + e.getMessage(), e);
             Toast.makeText(getContext(),
-                    "❌ Error saving file: " + e.getMessage(),
-                    Toast.LENGTH_LONG).show();
+                    "❌ Error copying: " + e.getMessage(),
+                    Toast.LENGTH_SHORT).show();
         }
     }
 
@@ -409,7 +423,7 @@ public class TrainingFragment extends Fragment {
         }
     }
 
-    private void uploadToServer(String jsonString) {
+    private void uploadToServer(TrainingPayloadWriter payload) {
         String serverUrl = serverUrlInput.getText().toString().trim();
 
         if (serverUrl.isEmpty()) {
@@ -442,16 +456,22 @@ public class TrainingFragment extends Fragment {
         progressDialog.show();
 
         try {
-            MediaType JSON = MediaType.get("application/json; charset=utf-8");
-            RequestBody body = RequestBody.create(jsonString, JSON);
-
-            Request request = new Request.Builder()
-                    .url(serverUrl)
-                    .post(body)
-                    .build();
+            // Encoded while OkHttp sends it - no full copy of the document in memory
+            RequestBody body = payload.asRequestBody();
+
+            Request.Builder requestBuilder = new Request.Builder().url(serverUrl);
+            ServerCapabilities capabilities = ServerCapabilities.getInstance(requireContext());
+            if (capabilities.supports(serverUrl, ServerCapabilities.GZIP)) {
+                requestBuilder.header("Content-Encoding", "gzip");
+                body = ServerCapabilities.gzip(body);
+                Log.d(TAG, "Compressing upload (server accepts gzip)");
+            } else if (!capabilities.isKnown(serverUrl)) {
+                capabilities.probe(serverUrl, MLHttpClient.forTest());
+            }
+            Request request = requestBuilder.post(body).build();
 
             // Send request asynchronously
-            httpClient.newCall(request).enqueue(new Callback() {
+            MLHttpClient.forTrain().newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(@NonNull Call call, @NonNull IOException e) {
                     Log.e(TAG, "Upload failed: " + e.getMessage(), e);
@@ -469,7 +489,7 @@ public class TrainingFragment extends Fragment {
                                         "• You have internet connection")
                                 .setPositiveButton("OK", null)
                                 .setNeutralButton("Save to File Instead", (dialog, which) -> {
-                                    saveJSONToFile(jsonString);
+                                    saveJSONToFile(payload);
                                 })
                                 .show();
                     });
@@ -512,7 +532,7 @@ public class TrainingFragment extends Fragment {
                                             "\n\n" + responseBody)
                                     .setPositiveButton("OK", null)
                                     .setNeutralButton("Save to File Instead", (dialog, which) -> {
-                                        saveJSONToFile(jsonString);
+                                        saveJSONToFile(payload);
                                     })
                                     .show();
                         }
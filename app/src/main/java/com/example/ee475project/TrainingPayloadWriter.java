@@ -0,0 +1,243 @@
+package com.example.ee475project;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Streams the all-poses training document (the /train upload format) into an
+ * okio sink, one sample at a time, instead of building it as a String.
+ *
+ * The JSON is compact (no indentation or spaces). Floats are written by
+ * writeFixed(), which gives the same digits as String.format("%.Nf") without
+ * going through Formatter. Only a few okio
+ * segments are held at any time, however many poses are saved.
+ *
+ * The pose map is copied when the writer is created; the reading lists are
+ * shared and must not change while writing (saved poses are never appended to).
+ */
+class TrainingPayloadWriter {
+
+    private static final String TAG = "TrainingPayloadWriter";
+
+    static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static final long[] POW10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final String userId;
+    private final Map<String, TrainingViewModel.PoseData> poses;
+
+    TrainingPayloadWriter(String userId, Map<String, TrainingViewModel.PoseData> poses) {
+        this.userId = userId;
+        this.poses = new LinkedHashMap<>(poses);
+    }
+
+    int getPoseCount() {
+        return poses.size();
+    }
+
+    int getSampleCount() {
+        int count = 0;
+        for (TrainingViewModel.PoseData poseData : poses.values()) {
+            count += poseData.upperBackData.size() + poseData.lowerBackData.size();
+        }
+        return count;
+    }
+
+    /**
+     * Upload body that encodes while OkHttp sends it (on OkHttp's thread). Can be
+     * written more than once, so retries and redirects work.
+     */
+    RequestBody asRequestBody() {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                TrainingPayloadWriter.this.writeTo(sink);
+            }
+        };
+    }
+
+    /**
+     * File export; call off the main thread
+     */
+    void writeTo(File file) throws IOException {
+        try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+            writeTo(sink);
+        }
+    }
+
+    /**
+     * Whole document in memory - only for the clipboard, which needs a String
+     */
+    String writeToString() throws IOException {
+        Buffer buffer = new Buffer();
+        writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+    void writeTo(BufferedSink sink) throws IOException {
+        Log.d(TAG, "Writing " + poses.size() + " pose(s) for user " + userId);
+
+        sink.writeUtf8("{\"user_id\":");
+        writeString(sink, userId);
+
+        // Poses are numbered pose_1, pose_2, etc.
+        int poseIndex = 1;
+        for (Map.Entry<String, TrainingViewModel.PoseData> entry : poses.entrySet()) {
+            String poseLabel = entry.getKey();
+            TrainingViewModel.PoseData poseData = entry.getValue();
+            float[] metadata = resolveMetadata(poseLabel, poseData);
+
+            sink.writeUtf8(",\"pose_").writeDecimalLong(poseIndex).writeUtf8("\":{\"pose_label\":");
+            writeString(sink, poseLabel);
+            sink.writeUtf8(",\"ml_label\":");
+            writeString(sink, extractMLLabel(poseLabel));
+            sink.writeUtf8(",\"sample_rate_hz\":");
+            writeFixed(sink, metadata[0], 2);
+            sink.writeUtf8(",\"duration_seconds\":");
+            writeFixed(sink, metadata[1], 2);
+
+            // Sample points carry no timestamps
+            sink.writeUtf8(",\"upper_back\":");
+            writeReadings(sink, poseData.upperBackData);
+            sink.writeUtf8(",\"lower_back\":");
+            writeReadings(sink, poseData.lowerBackData);
+            sink.writeByte('}');
+            poseIndex++;
+        }
+        sink.writeByte('}');
+        sink.flush();
+    }
+
+    private static void writeReadings(BufferedSink sink, List<TrainingViewModel.SensorReading> readings)
+            throws IOException {
+        sink.writeByte('[');
+        for (int i = 0; i < readings.size(); i++) {
+            TrainingViewModel.SensorReading reading = readings.get(i);
+            if (i > 0) {
+                sink.writeByte(',');
+            }
+            sink.writeUtf8("{\"ax\":");
+            writeFixed(sink, reading.accelX, 4);
+            sink.writeUtf8(",\"ay\":");
+            writeFixed(sink, reading.accelY, 4);
+            sink.writeUtf8(",\"az\":");
+            writeFixed(sink, reading.accelZ, 4);
+            sink.writeUtf8(",\"gx\":");
+            writeFixed(sink, reading.gyroX, 4);
+            sink.writeUtf8(",\"gy\":");
+            writeFixed(sink, reading.gyroY, 4);
+            sink.writeUtf8(",\"gz\":");
+            writeFixed(sink, reading.gyroZ, 4);
+            sink.writeByte('}');
+        }
+        sink.writeByte(']');
+    }
+
+    /**
+     * {sampleRateHz, durationSeconds}: the saved metadata, or derived from the
+     * timestamps for poses saved before it was recorded
+     */
+    private static float[] resolveMetadata(String poseLabel, TrainingViewModel.PoseData poseData) {
+        float sampleRateHz = poseData.sampleRateHz;
+        float durationSeconds = poseData.durationSeconds;
+
+        if (sampleRateHz == 0 && poseData.upperBackData.size() > 1) {
+            long firstTimestamp = poseData.upperBackData.get(0).timestamp;
+            long lastTimestamp = poseData.upperBackData.get(poseData.upperBackData.size() - 1).timestamp;
+            long durationMs = lastTimestamp - firstTimestamp;
+
+            if (durationMs > 0) {
+                sampleRateHz = SampleClock.sampleRateHz(poseData.upperBackData.size(), firstTimestamp, lastTimestamp);
+                durationSeconds = durationMs / 1000f;
+                Log.w(TAG, "Calculated metadata for " + poseLabel + " (missing from Firebase)");
+            } else {
+                Log.w(TAG, "Cannot calculate metadata for " + poseLabel + " - using defaults");
+                // Reasonable defaults for a 2-minute collection at ~16Hz
+                sampleRateHz = 16.0f;
+                durationSeconds = 120.0f;
+            }
+        }
+        return new float[]{sampleRateHz, durationSeconds};
+    }
+
+    /**
+     * Extract general ML label from specific pose label
+     * sitting_upright → sitting
+     * standing_slouched → standing
+     * walking_upright → walking
+     */
+    static String extractMLLabel(String poseLabel) {
+        if (poseLabel.startsWith("sitting")) {
+            return "sitting";
+        } else if (poseLabel.startsWith("standing")) {
+            return "standing";
+        } else if (poseLabel.equals("walking")) {
+            return "walking";
+        } else {
+            return "unknown";
+        }
+    }
+
+    /**
+     * Same digits as String.format(Locale.US, "%.{decimals}f", value) for finite
+     * values (up to 6 decimals); NaN/Infinity become null, which is valid JSON.
+     */
+    static void writeFixed(BufferedSink sink, float value, int decimals) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            sink.writeUtf8("null");
+            return;
+        }
+        long scale = POW10[decimals];
+        // Formatter widens to double and rounds half up; exact ties can't occur for a widened float
+        long scaled = Math.round(Math.abs((double) value) * scale);
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            sink.writeByte('-');
+        }
+        sink.writeDecimalLong(scaled / scale);
+        if (decimals == 0) {
+            return;
+        }
+        sink.writeByte('.');
+        long fraction = scaled % scale;
+        for (long digit = scale / 10; digit > 0 && fraction < digit; digit /= 10) {
+            sink.writeByte('0');
+        }
+        if (fraction > 0) {
+            sink.writeDecimalLong(fraction);
+        }
+    }
+
+    /**
+     * JSON string literal: quotes, backslashes and control characters escaped
+     */
+    static void writeString(BufferedSink sink, String value) throws IOException {
+        sink.writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sink.writeByte('\\').writeByte(c);
+            } else if (c < 0x20) {
+                sink.writeUtf8(String.format("\\u%04x", (int) c));
+            } else {
+                sink.writeUtf8CodePoint(c);
+            }
+        }
+        sink.writeByte('"');
+    }
+}
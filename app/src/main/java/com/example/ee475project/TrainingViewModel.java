@@ -5,9 +5,6 @@ import android.app.Application;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
@@ -26,7 +23,6 @@ import androidx.lifecycle.MutableLiveData;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 import java.util.Locale;
 
 
@@ -46,8 +42,8 @@ import java.util.Map;
  * ViewModel for ML Training Mode
  * - Uses HIGH priority BLE for faster sampling (~16Hz)
  * - Buffers ALL sensor readings in memory
- * - 2-minute cycles per sensor
- * - Timestamp shifting for alignment
+ * - 2-minute cycles per sensor, or one 2-minute window with both sensors in dual mode
+ * - Timestamp shifting for alignment (sequential mode only)
  * - No Firebase writes during collection
  */
 @SuppressLint("MissingPermission")
@@ -58,23 +54,27 @@ public class TrainingViewModel extends AndroidViewModel {
     private final Handler handler = new Handler(Looper.getMainLooper());
 
     private final MutableLiveData<String> connectionStatus = new MutableLiveData<>("Disconnected");
+    private final MutableLiveData<LinkParameters> linkParameters = new MutableLiveData<>(null);
     private final MutableLiveData<Boolean> isConnected = new MutableLiveData<>(false);
     private final MutableLiveData<Integer> collectionProgress = new MutableLiveData<>(0); // 0-100%
-    private final MutableLiveData<String> currentPhase = new MutableLiveData<>("Ready"); // "Upper", "Lower", "Complete"
-
-    private final StringBuilder dataBuffer = new StringBuilder();
-    private BluetoothGatt bluetoothGatt;
+    private final MutableLiveData<String> currentPhase = new MutableLiveData<>("Ready"); // "Upper", "Lower", "Both Sensors", "Complete"
 
     private static final String TAG = "TrainingViewModel";
     private static final String DEVICE_NAME_UPPER = "XIAO_Upper_Back";
     private static final String DEVICE_NAME_LOWER = "XIAO_Lower_Back";
     private static final long SCAN_PERIOD = 10000; // 10 seconds
     private static final long CONNECTION_TIME = 120000; // 2 MINUTES (120 seconds)
-
-    // Nordic UART Service UUIDs
-    private static final UUID UART_SERVICE_UUID = UUID.fromString("6E400001-B5A3-F393-E0A9-E50E24DCCA9E");
-    private static final UUID UART_TX_CHARACTERISTIC_UUID = UUID.fromString("6E400003-B5A3-F393-E0A9-E50E24DCCA9E");
-    private static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    private static final long MAX_PAIR_SKEW_MS = 100; // Dual mode: max time between paired samples
+    // Alignment grid for the training payload (setAlignmentRateHz); 0 = the slower sensor's measured rate
+    private static final String PREFS_NAME = "TrainingPrefs";
+    private static final String KEY_ALIGNMENT_RATE_HZ = "alignment_rate_hz";
+    private static final float MAX_ALIGNMENT_RATE_HZ = 200f;
+    private static final int ALIGNMENT_INTERPOLATION = StreamAligner.LINEAR;
+    private static final long DIRECT_CONNECT_TIMEOUT = 4000; // Fall back to scanning after 4 seconds
+
+    // Pose children holding the quantized arrays (ImuArrayCodec); older poses use upper_back/lower_back
+    private static final String UPPER_PACKED_KEY = "upper_back_packed";
+    private static final String LOWER_PACKED_KEY = "lower_back_packed";
 
     private final ScanCallback leScanCallback;
     private final Runnable stopScanRunnable;
@@ -82,12 +82,14 @@ public class TrainingViewModel extends AndroidViewModel {
     private int currentDeviceIndex = 0;
     private final String[] deviceNames = {DEVICE_NAME_UPPER, DEVICE_NAME_LOWER};
 
-    // IMU Data parsing
-    private float tempAccelX, tempAccelY, tempAccelZ;
-    private float tempGyroX, tempGyroY, tempGyroZ;
-    private boolean hasAccelData = false;
-    private boolean hasGyroData = false;
-    private String currentSensor = "";
+    // One link per sensor, indexed like deviceNames. Sequential mode only ever has one open.
+    private final SensorLink[] links = new SensorLink[2];
+    private boolean dualMode = false;
+    private final SamplePairer samplePairer = new SamplePairer(MAX_PAIR_SKEW_MS, this::onPairedSample);
+
+    // Same pinned sensors as monitoring; scanning is only the fallback
+    private final SensorRegistry sensorRegistry;
+    private final boolean[] directConnectFailed = new boolean[2];
 
     // ===== TRAINING DATA BUFFERS =====
     private final ArrayList<SensorReading> upperBackBuffer = new ArrayList<>();
@@ -168,6 +170,7 @@ public class TrainingViewModel extends AndroidViewModel {
         BluetoothManager bluetoothManager = (BluetoothManager) application.getSystemService(Context.BLUETOOTH_SERVICE);
         bluetoothAdapter = bluetoothManager.getAdapter();
         bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        sensorRegistry = new SensorRegistry(application);
 
         // Initialize Firebase
         databaseReference = FirebaseDatabase.getInstance().getReference();
@@ -183,12 +186,28 @@ public class TrainingViewModel extends AndroidViewModel {
             public void onScanResult(int callbackType, ScanResult result) {
                 super.onScanResult(callbackType, result);
                 BluetoothDevice device = result.getDevice();
-                if (device != null && device.getName() != null) {
-                    if (isCycling && device.getName().equals(deviceNames[currentDeviceIndex])) {
+                if (device == null || device.getName() == null || !isCycling) {
+                    return;
+                }
+                if (!sensorRegistry.accepts(device, device.getName())) {
+                    return;  // Another user's unit with the same name
+                }
+
+                if (dualMode) {
+                    // Connect to each sensor as it shows up, keep scanning for the other
+                    int index = indexOfDevice(device.getName());
+                    if (index < 0 || links[index] != null) {
+                        return;
+                    }
+                    connectToDevice(index, device);
+                    if (links[0] != null && links[1] != null) {
                         handler.removeCallbacks(stopScanRunnable);
                         bluetoothLeScanner.stopScan(leScanCallback);
-                        connectToDevice(device);
                     }
+                } else if (device.getName().equals(deviceNames[currentDeviceIndex]) && links[currentDeviceIndex] == null) {
+                    handler.removeCallbacks(stopScanRunnable);
+                    bluetoothLeScanner.stopScan(leScanCallback);
+                    connectToDevice(currentDeviceIndex, device);
                 }
             }
         };
@@ -196,7 +215,12 @@ public class TrainingViewModel extends AndroidViewModel {
         stopScanRunnable = () -> {
             if (bluetoothLeScanner != null) {
                 bluetoothLeScanner.stopScan(leScanCallback);
-                if (connectionStatus.getValue() != null && connectionStatus.getValue().startsWith("Scanning")) {
+                if (dualMode && isCycling && (links[0] != null || links[1] != null) && !bothLinksConnected()) {
+                    // Only one sensor showed up - a dual collection can't start without the other
+                    Log.w(TAG, "Dual mode scan timeout - second sensor not found");
+                    cancelTraining();
+                    connectionStatus.setValue("Scan timeout - device not found");
+                } else if (connectionStatus.getValue() != null && connectionStatus.getValue().startsWith("Scanning")) {
                     connectionStatus.setValue("Scan timeout - device not found");
                 }
             }
@@ -206,20 +230,51 @@ public class TrainingViewModel extends AndroidViewModel {
     // LiveData getters
     public LiveData<String> getConnectionStatus() { return connectionStatus; }
     public LiveData<Boolean> getIsConnected() { return isConnected; }
+    public LiveData<LinkParameters> getLinkParameters() { return linkParameters; }
     public LiveData<Integer> getCollectionProgress() { return collectionProgress; }
     public LiveData<String> getCurrentPhase() { return currentPhase; }
 
+    /**
+     * Rate of the uniform grid both sensors are resampled onto before saving, or 0
+     * to use the slower sensor's measured rate. Takes effect on the next collection.
+     */
+    public void setAlignmentRateHz(float rateHz) {
+        if (Float.isNaN(rateHz) || rateHz < 0 || rateHz > MAX_ALIGNMENT_RATE_HZ) {
+            throw new IllegalArgumentException("Alignment rate must be 0-" + MAX_ALIGNMENT_RATE_HZ + " Hz: " + rateHz);
+        }
+        getApplication().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putFloat(KEY_ALIGNMENT_RATE_HZ, rateHz)
+                .apply();
+        Log.d(TAG, "Alignment rate: " + (rateHz > 0 ? rateHz + " Hz" : "measured"));
+    }
+
+    public float getAlignmentRateHz() {
+        return getApplication().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getFloat(KEY_ALIGNMENT_RATE_HZ, 0f);
+    }
+
     /**
      * Start the 2-cycle training data collection
+     * (a single 2-minute window with both sensors when dual connection mode is on)
      */
     public void startTrainingCollection() {
-        Log.d(TAG, "Starting ML training collection (2 minutes per sensor)");
+        dualMode = getApplication()
+                .getSharedPreferences(BluetoothViewModel.CONNECTION_PREFS, Context.MODE_PRIVATE)
+                .getBoolean(BluetoothViewModel.KEY_DUAL_CONNECTION, false);
+
+        Log.d(TAG, dualMode
+                ? "Starting ML training collection (2 minutes, both sensors at once)"
+                : "Starting ML training collection (2 minutes per sensor)");
 
         // Clear previous data
         upperBackBuffer.clear();
         lowerBackBuffer.clear();
         upperBackStartTime = 0;
         lowerBackStartTime = 0;
+        samplePairer.reset();
+        directConnectFailed[0] = false;
+        directConnectFailed[1] = false;
 
         isCycling = true;
         currentDeviceIndex = 0;
@@ -247,15 +302,13 @@ public class TrainingViewModel extends AndroidViewModel {
             }
         }
 
-        if (bluetoothGatt != null) {
-            try {
-                bluetoothGatt.disconnect();
-                bluetoothGatt.close();
-                bluetoothGatt = null;
-            } catch (Exception e) {
-                Log.w(TAG, "Error disconnecting GATT: " + e.getMessage());
+        for (int i = 0; i < links.length; i++) {
+            if (links[i] != null) {
+                links[i].close();
+                links[i] = null;
             }
         }
+        isConnected.setValue(false);
 
         stopProgressUpdates();
         autoDisconnectRunnable = null;
@@ -275,26 +328,39 @@ public class TrainingViewModel extends AndroidViewModel {
             return;
         }
 
-        String deviceName = deviceNames[currentDeviceIndex];
-        Log.d(TAG, "Starting scan for device: " + deviceName);
+        // Update phase
+        if (dualMode) {
+            currentPhase.setValue("Both Sensors");
+        } else if (currentDeviceIndex == 0) {
+            currentPhase.setValue("Upper Back");
+        } else {
+            currentPhase.setValue("Lower Back");
+        }
 
+        // Pinned sensors are reconnected directly; only the rest are scanned for
         List<ScanFilter> filters = new ArrayList<>();
-        filters.add(new ScanFilter.Builder().setDeviceName(deviceName).build());
+        StringBuilder scanTarget = new StringBuilder();
+        for (int i = 0; i < deviceNames.length; i++) {
+            boolean wanted = dualMode ? links[i] == null : i == currentDeviceIndex;
+            if (wanted && !tryDirectConnect(i)) {
+                filters.add(sensorRegistry.buildScanFilter(deviceNames[i]));
+                if (scanTarget.length() > 0) scanTarget.append(" + ");
+                scanTarget.append(deviceNames[i]);
+            }
+        }
+        if (filters.isEmpty()) {
+            return;
+        }
+        Log.d(TAG, "Starting scan for device: " + scanTarget);
 
         ScanSettings scanSettings = new ScanSettings.Builder()
                 .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
                 .build();
 
         try {
+            handler.removeCallbacks(stopScanRunnable);
             bluetoothLeScanner.startScan(filters, scanSettings, leScanCallback);
-            connectionStatus.setValue("Scanning for " + deviceName);
-
-            // Update phase
-            if (currentDeviceIndex == 0) {
-                currentPhase.setValue("Upper Back");
-            } else {
-                currentPhase.setValue("Lower Back");
-            }
+            connectionStatus.setValue("Scanning for " + scanTarget);
 
             handler.postDelayed(stopScanRunnable, SCAN_PERIOD);
         } catch (Exception e) {
@@ -303,279 +369,401 @@ public class TrainingViewModel extends AndroidViewModel {
         }
     }
 
-    private void connectToDevice(BluetoothDevice device) {
-        if (device != null) {
-            connectionStatus.setValue("Connecting to " + device.getName());
-            bluetoothGatt = device.connectGatt(getApplication(), false, gattCallback);
+    /**
+     * Reconnects straight to the pinned address for this sensor, skipping the scan.
+     * @return false if no sensor is pinned or direct connect already failed this collection
+     */
+    private boolean tryDirectConnect(int index) {
+        if (directConnectFailed[index]) {
+            return false;
+        }
+        BluetoothDevice device = sensorRegistry.getRegisteredDevice(bluetoothAdapter, deviceNames[index]);
+        if (device == null) {
+            return false;
         }
+
+        Log.d(TAG, "Direct reconnect to " + deviceNames[index] + " (" + device.getAddress() + ") - skipping scan");
+        connectToDevice(index, device);
+
+        SensorLink link = links[index];
+        handler.postDelayed(() -> {
+            if (links[index] == link && !link.isConnected()) {
+                Log.w(TAG, "Direct reconnect to " + deviceNames[index] + " timed out");
+                link.close();
+                fallBackToScan(index);
+            }
+        }, DIRECT_CONNECT_TIMEOUT);
+        return true;
     }
 
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
-        @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            String deviceName = gatt.getDevice().getName();
+    private void fallBackToScan(int index) {
+        links[index] = null;
+        directConnectFailed[index] = true;
+        if (isCycling) {
+            Log.d(TAG, "Falling back to scanning for " + deviceNames[index]);
+            scanForNextDevice();
+        }
+    }
 
-            if (newState == BluetoothGatt.STATE_CONNECTED) {
-                connectionStatus.postValue("Connected to " + deviceName);
-                isConnected.postValue(true);
+    private void connectToDevice(int index, BluetoothDevice device) {
+        if (device != null) {
+            connectionStatus.setValue("Connecting to " + deviceNames[index]);
+            SensorLink link = new SensorLink(getApplication(), device, deviceNames[index], linkListener);
+            // ===== REQUEST HIGH PRIORITY FOR TRAINING (applied during link negotiation) =====
+            link.setConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+            links[index] = link;
+            link.connect();
+        }
+    }
 
-                bluetoothGatt = gatt;
+    private int indexOfDevice(String deviceName) {
+        for (int i = 0; i < deviceNames.length; i++) {
+            if (deviceNames[i].equals(deviceName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-                // ===== REQUEST HIGH PRIORITY FOR TRAINING =====
-                boolean success = gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
-                Log.d(TAG, "Requested HIGH priority for training: " + (success ? "SUCCESS" : "FAILED"));
+    private int indexOfLink(SensorLink link) {
+        for (int i = 0; i < links.length; i++) {
+            if (links[i] == link) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-                gatt.discoverServices();
+    private boolean bothLinksConnected() {
+        return links[0] != null && links[0].isConnected()
+                && links[1] != null && links[1].isConnected();
+    }
 
-                // Mark start time for this sensor
-                if (deviceName.equals(DEVICE_NAME_UPPER)) {
-                    upperBackStartTime = System.currentTimeMillis();
-                    Log.d(TAG, "Upper back collection started at t=" + upperBackStartTime);
-                } else if (deviceName.equals(DEVICE_NAME_LOWER)) {
-                    lowerBackStartTime = System.currentTimeMillis();
-                    Log.d(TAG, "Lower back collection started at t=" + lowerBackStartTime);
-                }
+    // Link events arrive on binder threads; connection bookkeeping runs on the main thread
+    private final SensorLink.Listener linkListener = new SensorLink.Listener() {
+        @Override
+        public void onLinkConnected(SensorLink link) {
+            handler.post(() -> handleLinkConnected(link));
+        }
 
-                // Start progress updates
-                phaseStartTime = System.currentTimeMillis();
-                startProgressUpdates();
+        @Override
+        public void onLinkNegotiated(SensorLink link, LinkParameters parameters) {
+            linkParameters.postValue(parameters);
+        }
 
-                // ✅ FIX: Store the auto-disconnect runnable so we can cancel it later
-                if (isCycling) {
-                    // Cancel any existing auto-disconnect handler first
-                    if (autoDisconnectRunnable != null) {
-                        handler.removeCallbacks(autoDisconnectRunnable);
-                        Log.d(TAG, "Removed previous auto-disconnect handler");
-                    }
+        @Override
+        public void onLinkReady(SensorLink link) {
+            Log.d(TAG, "✓ Notifications enabled on " + link.getDeviceName());
+        }
 
-                    // Create new auto-disconnect handler
-                    autoDisconnectRunnable = () -> {
-                        Log.d(TAG, "Auto-disconnect triggered for " + deviceName);
-                        gatt.disconnect();
-                    };
+        @Override
+        public void onLinkSample(SensorLink link, int sensor, int sequence, long timestampNanos,
+                                 float ax, float ay, float az,
+                                 float gx, float gy, float gz) {
+            // Monotonic, drift-corrected sample time rather than wall time at parse
+            long timestamp = SampleClock.toEpochMillis(timestampNanos);
+            if (dualMode) {
+                samplePairer.add(sensor, timestamp, ax, ay, az, gx, gy, gz);
+            } else {
+                addReading(sensor, timestamp, ax, ay, az, gx, gy, gz);
+            }
+        }
 
-                    handler.postDelayed(autoDisconnectRunnable, CONNECTION_TIME);
-                    Log.d(TAG, "Scheduled auto-disconnect in " + (CONNECTION_TIME/1000) + " seconds");
-                }
+        @Override
+        public void onLinkDisconnected(SensorLink link, int status) {
+            handler.post(() -> handleLinkDisconnected(link, status));
+        }
+    };
 
-            } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
-                Log.d(TAG, "════════════════════════════════════════");
-                Log.d(TAG, "DISCONNECT EVENT for " + deviceName);
-                Log.d(TAG, "Status code: " + status);
+    private void handleLinkConnected(SensorLink link) {
+        if (indexOfLink(link) < 0) {
+            // Link was dropped (e.g. cancelled) before it finished connecting
+            link.close();
+            return;
+        }
 
-                // ✅ FIX: Cancel auto-disconnect handler immediately
-                if (autoDisconnectRunnable != null) {
-                    handler.removeCallbacks(autoDisconnectRunnable);
-                    autoDisconnectRunnable = null;
-                    Log.d(TAG, "Cancelled auto-disconnect handler");
-                }
+        String deviceName = link.getDeviceName();
+        connectionStatus.setValue("Connected to " + deviceName);
+        isConnected.setValue(true);
+        sensorRegistry.registerIfAbsent(deviceName, link.getDevice().getAddress());
+
+        // Mark start time for this sensor
+        if (deviceName.equals(DEVICE_NAME_UPPER)) {
+            upperBackStartTime = System.currentTimeMillis();
+            Log.d(TAG, "Upper back collection started at t=" + upperBackStartTime);
+        } else if (deviceName.equals(DEVICE_NAME_LOWER)) {
+            lowerBackStartTime = System.currentTimeMillis();
+            Log.d(TAG, "Lower back collection started at t=" + lowerBackStartTime);
+        }
 
-                // ✅ FIX: Cancel any pending scan timeout
-                handler.removeCallbacks(stopScanRunnable);
+        // Dual mode: the 2-minute window starts once both sensors are streaming
+        if (dualMode && !bothLinksConnected()) {
+            Log.d(TAG, "Waiting for the second sensor...");
+            return;
+        }
+        if (dualMode) {
+            connectionStatus.setValue("Connected to " + DEVICE_NAME_UPPER + " + " + DEVICE_NAME_LOWER);
+            synchronized (this) {
+                // Drop anything the first sensor streamed on its own
+                upperBackBuffer.clear();
+                lowerBackBuffer.clear();
+            }
+            samplePairer.reset();
+        }
 
-                // Clear data buffer
-                synchronized (dataBuffer) {
-                    dataBuffer.setLength(0);
-                }
+        // Start progress updates
+        phaseStartTime = System.currentTimeMillis();
+        startProgressUpdates();
 
-                connectionStatus.postValue("Disconnected from " + deviceName);
-                isConnected.postValue(false);
+        // ✅ FIX: Store the auto-disconnect runnable so we can cancel it later
+        if (isCycling) {
+            // Cancel any existing auto-disconnect handler first
+            if (autoDisconnectRunnable != null) {
+                handler.removeCallbacks(autoDisconnectRunnable);
+                Log.d(TAG, "Removed previous auto-disconnect handler");
+            }
 
-                // ✅ Disable notifications before closing
-                try {
-                    BluetoothGattCharacteristic characteristic = gatt.getService(UART_SERVICE_UUID)
-                            .getCharacteristic(UART_TX_CHARACTERISTIC_UUID);
-                    if (characteristic != null) {
-                        gatt.setCharacteristicNotification(characteristic, false);
+            // Create new auto-disconnect handler
+            autoDisconnectRunnable = () -> {
+                Log.d(TAG, "Auto-disconnect triggered");
+                for (SensorLink open : links) {
+                    if (open != null) {
+                        open.disconnect();
                     }
-                } catch (Exception e) {
-                    Log.w(TAG, "Error disabling notifications: " + e.getMessage());
                 }
+            };
 
-                gatt.close();
-                Log.d(TAG, "GATT closed for " + deviceName);
+            handler.postDelayed(autoDisconnectRunnable, CONNECTION_TIME);
+            Log.d(TAG, "Scheduled auto-disconnect in " + (CONNECTION_TIME/1000) + " seconds");
+        }
+    }
 
-                stopProgressUpdates();
+    private void handleLinkDisconnected(SensorLink link, int status) {
+        String deviceName = link.getDeviceName();
+        Log.d(TAG, "════════════════════════════════════════");
+        Log.d(TAG, "DISCONNECT EVENT for " + deviceName);
+        Log.d(TAG, "Status code: " + status);
 
-                if (bluetoothGatt == gatt) {
-                    bluetoothGatt = null;
+        int index = indexOfLink(link);
+        if (index < 0) {
+            // Already torn down by cancelTraining()
+            Log.d(TAG, "════════════════════════════════════════");
+            return;
+        }
+        if (!link.hasEverConnected() && isCycling && !directConnectFailed[index]
+                && sensorRegistry.isRegistered(deviceName)) {
+            // Direct reconnect failed outright - scan for the pinned address instead
+            Log.d(TAG, "════════════════════════════════════════");
+            fallBackToScan(index);
+            return;
+        }
+        links[index] = null;
+
+        if (dualMode && (links[0] != null || links[1] != null)) {
+            // Losing one sensor ends the synchronized window for both
+            Log.w(TAG, "One sensor dropped - ending dual collection");
+            for (SensorLink open : links) {
+                if (open != null) {
+                    open.disconnect();
                 }
+            }
+            Log.d(TAG, "════════════════════════════════════════");
+            return;
+        }
 
-                if (isCycling) {
-                    Log.d(TAG, "Current device index: " + currentDeviceIndex);
-                    Log.d(TAG, "Upper back buffer size: " + upperBackBuffer.size());
-                    Log.d(TAG, "Lower back buffer size: " + lowerBackBuffer.size());
+        // ✅ FIX: Cancel auto-disconnect handler immediately
+        if (autoDisconnectRunnable != null) {
+            handler.removeCallbacks(autoDisconnectRunnable);
+            autoDisconnectRunnable = null;
+            Log.d(TAG, "Cancelled auto-disconnect handler");
+        }
 
-                    // Move to next sensor
-                    currentDeviceIndex = (currentDeviceIndex + 1) % deviceNames.length;
-                    Log.d(TAG, "Next device index: " + currentDeviceIndex);
+        // ✅ FIX: Cancel any pending scan timeout
+        handler.removeCallbacks(stopScanRunnable);
 
-                    if (currentDeviceIndex == 0) {
-                        // Cycle complete - both sensors done
-                        Log.d(TAG, "✓ Training collection complete!");
-                        Log.d(TAG, "  Upper back readings: " + upperBackBuffer.size());
-                        Log.d(TAG, "  Lower back readings: " + lowerBackBuffer.size());
+        connectionStatus.setValue("Disconnected from " + deviceName);
+        isConnected.setValue(false);
 
-                        isCycling = false;
-                        currentPhase.postValue("Complete");
-                        collectionProgress.postValue(100);
+        stopProgressUpdates();
 
-                        applyTimestampShifting();
-                        saveCurrentPoseToFirebase();
-                    } else {
-                        // Continue to next sensor (lower back)
-                        Log.d(TAG, "Transitioning to next sensor: " + deviceNames[currentDeviceIndex]);
-                        Log.d(TAG, "Waiting 2 seconds for BLE stack to settle...");
-
-                        // ✅ FIX: Increased delay from 1s to 2s for better reliability
-                        handler.postDelayed(() -> {
-                            if (isCycling) {
-                                Log.d(TAG, "BLE stack settled, starting scan for: " + deviceNames[currentDeviceIndex]);
-                                scanForNextDevice();
-                            } else {
-                                Log.w(TAG, "Cycling was cancelled during delay");
-                            }
-                        }, 2000);  // ✅ Changed from 1000 to 2000ms
-                    }
-                }
-                Log.d(TAG, "════════════════════════════════════════");
-            }
-        }
+        if (isCycling) {
+            Log.d(TAG, "Current device index: " + currentDeviceIndex);
+            Log.d(TAG, "Upper back buffer size: " + upperBackBuffer.size());
+            Log.d(TAG, "Lower back buffer size: " + lowerBackBuffer.size());
 
-        @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                BluetoothGattCharacteristic characteristic = gatt.getService(UART_SERVICE_UUID)
-                        .getCharacteristic(UART_TX_CHARACTERISTIC_UUID);
-                if (characteristic != null) {
-                    gatt.setCharacteristicNotification(characteristic, true);
-                    BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG);
-                    if (descriptor != null) {
-                        descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                        gatt.writeDescriptor(descriptor);
-                    }
+            // Move to next sensor (dual mode collects both in one pass)
+            currentDeviceIndex = dualMode ? 0 : (currentDeviceIndex + 1) % deviceNames.length;
+            Log.d(TAG, "Next device index: " + currentDeviceIndex);
+
+            if (currentDeviceIndex == 0) {
+                // Cycle complete - both sensors done
+                Log.d(TAG, "✓ Training collection complete!");
+                Log.d(TAG, "  Upper back readings: " + upperBackBuffer.size());
+                Log.d(TAG, "  Lower back readings: " + lowerBackBuffer.size());
+                if (dualMode) {
+                    Log.d(TAG, "  Unpaired samples dropped: " + samplePairer.getDroppedCount());
                 }
-            }
-        }
 
-        @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            byte[] data = characteristic.getValue();
-            String dataChunk = new String(data);
-
-            synchronized (dataBuffer) {
-                dataBuffer.append(dataChunk);
-
-                String bufferContent = dataBuffer.toString();
-                if (bufferContent.contains("\r") || bufferContent.contains("\n")) {
-                    bufferContent = bufferContent.replace("\r\n", "\n").replace("\r", "\n");
-                    dataBuffer.setLength(0);
-                    dataBuffer.append(bufferContent);
-
-                    int newlineIndex;
-                    while ((newlineIndex = dataBuffer.indexOf("\n")) != -1) {
-                        final String dataString = dataBuffer.substring(0, newlineIndex).trim();
-                        dataBuffer.delete(0, newlineIndex + 1);
-
-                        if (dataString.isEmpty()) {
-                            continue;
-                        }
+                isCycling = false;
+                currentPhase.setValue("Complete");
+                collectionProgress.setValue(100);
 
-                        parseAndBufferMessage(dataString);
+                alignBuffers();
+                saveCurrentPoseToFirebase();
+            } else {
+                // Continue to next sensor (lower back)
+                Log.d(TAG, "Transitioning to next sensor: " + deviceNames[currentDeviceIndex]);
+                Log.d(TAG, "Waiting 2 seconds for BLE stack to settle...");
+
+                // ✅ FIX: Increased delay from 1s to 2s for better reliability
+                handler.postDelayed(() -> {
+                    if (isCycling) {
+                        Log.d(TAG, "BLE stack settled, starting scan for: " + deviceNames[currentDeviceIndex]);
+                        scanForNextDevice();
+                    } else {
+                        Log.w(TAG, "Cycling was cancelled during delay");
                     }
-                }
+                }, 2000);  // ✅ Changed from 1000 to 2000ms
             }
         }
-    };
+        Log.d(TAG, "════════════════════════════════════════");
+    }
 
     /**
-     * Parse incoming sensor data and add to buffers
+     * Dual mode: one upper + lower reading taken at the same instant
      */
-    private void parseAndBufferMessage(String dataString) {
-        try {
-            String[] parts = dataString.split("\\|");
+    private void onPairedSample(long timestamp, float[] upper, float[] lower) {
+        addReading(ImuLineFramer.SENSOR_UPPER_BACK, timestamp,
+                upper[0], upper[1], upper[2], upper[3], upper[4], upper[5]);
+        addReading(ImuLineFramer.SENSOR_LOWER_BACK, timestamp,
+                lower[0], lower[1], lower[2], lower[3], lower[4], lower[5]);
+    }
 
-            if (parts.length != 2) {
-                return;
-            }
+    /**
+     * Add a complete reading from a sensor link to the buffers
+     */
+    private synchronized void addReading(int sensor, long timestamp,
+                                         float ax, float ay, float az,
+                                         float gx, float gy, float gz) {
+        SensorReading reading = new SensorReading(timestamp, ax, ay, az, gx, gy, gz);
+
+        if (sensor == ImuLineFramer.SENSOR_UPPER_BACK) {
+            upperBackBuffer.add(reading);
+        } else if (sensor == ImuLineFramer.SENSOR_LOWER_BACK) {
+            lowerBackBuffer.add(reading);
+        }
+    }
+
+    /**
+     * Resample both buffers onto one uniform time grid so reading i of each stream
+     * was taken at the same instant. Sequential collections are lined up by
+     * their start times first (the lower back was recorded after the upper back).
+     */
+    private synchronized void alignBuffers() {
+        if (upperBackBuffer.isEmpty() || lowerBackBuffer.isEmpty()) {
+            Log.w(TAG, "Cannot align buffers - buffers are empty");
+            return;
+        }
 
-            String identifier = parts[0];
-            String dataType = parts[1].substring(0, 1);
-            String[] values = parts[1].substring(2).split(",");
+        long timeOffset = dualMode ? 0 : lowerBackBuffer.get(0).timestamp - upperBackBuffer.get(0).timestamp;
+        int upperCount = upperBackBuffer.size();
+        int lowerCount = lowerBackBuffer.size();
+
+        long[] upperTimes = new long[upperCount];
+        float[] upperData = new float[upperCount * StreamAligner.CHANNELS];
+        toArrays(upperBackBuffer, upperTimes, upperData);
+        long[] lowerTimes = new long[lowerCount];
+        float[] lowerData = new float[lowerCount * StreamAligner.CHANNELS];
+        toArrays(lowerBackBuffer, lowerTimes, lowerData);
+
+        StreamAligner.Result aligned = new StreamAligner(getAlignmentRateHz(), ALIGNMENT_INTERPOLATION)
+                .align(upperTimes, upperData, upperCount, lowerTimes, lowerData, lowerCount, timeOffset);
+        if (aligned == null) {
+            Log.w(TAG, "Cannot align buffers - streams don't overlap");
+            return;
+        }
 
-            if (values.length != 3) {
-                return;
-            }
+        upperBackBuffer.clear();
+        lowerBackBuffer.clear();
+        for (int i = 0; i < aligned.length; i++) {
+            long timestamp = aligned.timeAt(i);
+            upperBackBuffer.add(toReading(timestamp, aligned.upper, i));
+            lowerBackBuffer.add(toReading(timestamp, aligned.lower, i));
+        }
 
-            float x = Float.parseFloat(values[0]);
-            float y = Float.parseFloat(values[1]);
-            float z = Float.parseFloat(values[2]);
-
-            if (dataType.equals("A")) {
-                tempAccelX = x;
-                tempAccelY = y;
-                tempAccelZ = z;
-                hasAccelData = true;
-                currentSensor = identifier;
-
-            } else if (dataType.equals("G")) {
-                tempGyroX = x;
-                tempGyroY = y;
-                tempGyroZ = z;
-                hasGyroData = true;
-
-                if (hasAccelData && hasGyroData && currentSensor.equals(identifier)) {
-                    // Complete reading - add to buffer
-                    long timestamp = System.currentTimeMillis();
-                    SensorReading reading = new SensorReading(
-                            timestamp,
-                            tempAccelX, tempAccelY, tempAccelZ,
-                            tempGyroX, tempGyroY, tempGyroZ
-                    );
-
-                    if (identifier.equals("UB")) {
-                        upperBackBuffer.add(reading);
-                    } else if (identifier.equals("LB")) {
-                        lowerBackBuffer.add(reading);
-                    }
+        Log.d(TAG, "✓ Aligned " + upperCount + " upper / " + lowerCount + " lower readings → "
+                + aligned.length + " each at " + String.format(Locale.US, "%.2f", aligned.rateHz) + " Hz"
+                + " (lower offset " + timeOffset + "ms)");
+    }
 
-                    hasAccelData = false;
-                    hasGyroData = false;
-                    currentSensor = "";
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error parsing message: " + dataString, e);
+    private static void toArrays(List<SensorReading> readings, long[] times, float[] data) {
+        for (int i = 0; i < readings.size(); i++) {
+            SensorReading reading = readings.get(i);
+            int base = i * StreamAligner.CHANNELS;
+            times[i] = reading.timestamp;
+            data[base] = reading.accelX;
+            data[base + 1] = reading.accelY;
+            data[base + 2] = reading.accelZ;
+            data[base + 3] = reading.gyroX;
+            data[base + 4] = reading.gyroY;
+            data[base + 5] = reading.gyroZ;
         }
     }
 
+    private static SensorReading toReading(long timestamp, float[] data, int index) {
+        int base = index * StreamAligner.CHANNELS;
+        return new SensorReading(timestamp, data[base], data[base + 1], data[base + 2],
+                data[base + 3], data[base + 4], data[base + 5]);
+    }
+
+    private static Map<String, Object> encodeReadings(List<SensorReading> readings) {
+        long[] times = new long[readings.size()];
+        float[] data = new float[readings.size() * StreamAligner.CHANNELS];
+        toArrays(readings, times, data);
+        return ImuArrayCodec.encode(data, times, readings.size());
+    }
+
     /**
-     * Apply timestamp shifting (Option B) to align upper and lower back data
+     * Reads one sensor of a pose, packed or in the legacy one-map-per-sample form.
+     * {@code timestamp} is used for samples stored without their own time.
      */
-    private void applyTimestampShifting() {
-        if (upperBackBuffer.isEmpty() || lowerBackBuffer.isEmpty()) {
-            Log.w(TAG, "Cannot apply timestamp shifting - buffers are empty");
-            return;
+    private static ArrayList<SensorReading> readReadings(DataSnapshot poseSnapshot, String packedKey,
+                                                         String legacyKey, long timestamp) {
+        ArrayList<SensorReading> readings = new ArrayList<>();
+        DataSnapshot packed = poseSnapshot.child(packedKey);
+        if (packed.exists()) {
+            ImuArrayCodec.Decoded decoded = ImuArrayCodec.decode(packed.getValue());
+            readings.ensureCapacity(decoded.count);
+            for (int i = 0; i < decoded.count; i++) {
+                long time = decoded.times != null ? decoded.times[i] : timestamp;
+                readings.add(toReading(time, decoded.data, i));
+            }
+            return readings;
         }
 
-        // Calculate offset between start times
-        long timeOffset = lowerBackStartTime - upperBackStartTime;
+        for (DataSnapshot reading : poseSnapshot.child(legacyKey).getChildren()) {
+            try {
+                Float ax = reading.child("ax").getValue(Float.class);
+                Float ay = reading.child("ay").getValue(Float.class);
+                Float az = reading.child("az").getValue(Float.class);
+                Float gx = reading.child("gx").getValue(Float.class);
+                Float gy = reading.child("gy").getValue(Float.class);
+                Float gz = reading.child("gz").getValue(Float.class);
+
+                // Null checks
+                if (ax == null || ay == null || az == null ||
+                        gx == null || gy == null || gz == null) {
+                    Log.w(TAG, "Skipping reading with null values");
+                    continue;
+                }
 
-        Log.d(TAG, "Applying timestamp shifting:");
-        Log.d(TAG, "  Upper back start: " + upperBackStartTime);
-        Log.d(TAG, "  Lower back start: " + lowerBackStartTime);
-        Log.d(TAG, "  Time offset: " + timeOffset + "ms (" + (timeOffset/1000) + "s)");
+                readings.add(new SensorReading(timestamp, ax, ay, az, gx, gy, gz));
 
-        // Shift all lower back timestamps back by the offset
-        for (SensorReading reading : lowerBackBuffer) {
-            reading.timestamp -= timeOffset;
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading " + legacyKey + " sample: " + e.getMessage());
+            }
         }
-
-        Log.d(TAG, "✓ Timestamp shifting complete");
-        Log.d(TAG, "  Upper back: " + upperBackBuffer.get(0).timestamp + " to " +
-                upperBackBuffer.get(upperBackBuffer.size()-1).timestamp);
-        Log.d(TAG, "  Lower back: " + lowerBackBuffer.get(0).timestamp + " to " +
-                lowerBackBuffer.get(lowerBackBuffer.size()-1).timestamp);
+        return readings;
     }
 
     /**
@@ -589,9 +777,11 @@ public class TrainingViewModel extends AndroidViewModel {
                 int progress = (int)((elapsed * 100) / CONNECTION_TIME);
                 progress = Math.min(progress, 100);
 
-                // Calculate overall progress (0-50% for upper, 50-100% for lower)
+                // Calculate overall progress (0-50% for upper, 50-100% for lower; one pass in dual mode)
                 int overallProgress;
-                if (currentDeviceIndex == 0) {
+                if (dualMode) {
+                    overallProgress = progress;
+                } else if (currentDeviceIndex == 0) {
                     overallProgress = progress / 2; // 0-50%
                 } else {
                     overallProgress = 50 + (progress / 2); // 50-100%
@@ -654,157 +844,16 @@ public class TrainingViewModel extends AndroidViewModel {
      */
 
     /**
-     * Extract general ML label from specific pose label
-     * sitting_upright → sitting
-     * standing_slouched → standing
-     * walking_upright → walking
-     */
-    private String extractMLLabel(String poseLabel) {
-        if (poseLabel.startsWith("sitting")) {
-            return "sitting";
-        } else if (poseLabel.startsWith("standing")) {
-            return "standing";
-        } else if (poseLabel.equals("walking")) {
-            return "walking";
-        } else {
-            return "unknown";
-        }
-    }
-
-    /**
-     * Generate JSON from ALL collected training data in the exact format required by ML backend
-     * @return JSON string with all poses ready for upload
-     */
-    /**
-     * Generate JSON from ALL collected training data in the exact format required by ML backend
-     * @return JSON string with all poses ready for upload
+     * Writer for ALL collected training data in the exact format required by ML backend
+     * @return null if nothing has been collected yet
      */
-    public String generateTrainingJSON() {
+    public TrainingPayloadWriter createTrainingPayload() {
         if (allTrainingData.isEmpty()) {
-            Log.e(TAG, "Cannot generate JSON - no training data available");
-            return null;
-        }
-
-        try {
-            String userId = currentUserId != null ? currentUserId : "unknown_user";
-
-            Log.d(TAG, "Generating JSON for ALL poses:");
-            Log.d(TAG, "  User ID: " + userId);
-            Log.d(TAG, "  Number of poses: " + allTrainingData.size());
-
-            // Build JSON manually
-            StringBuilder json = new StringBuilder();
-            json.append("{\n");
-            json.append("  \"user_id\": \"").append(userId).append("\",\n");
-
-            // Iterate through poses and number them as pose_1, pose_2, etc.
-            int poseIndex = 1;
-            int totalPoses = allTrainingData.size();
-
-            for (Map.Entry<String, PoseData> entry : allTrainingData.entrySet()) {
-                String poseLabel = entry.getKey();
-                PoseData poseData = entry.getValue();
-
-                // ✅ USE SAVED METADATA (don't recalculate)
-                float sampleRateHz = poseData.sampleRateHz;
-                float durationSeconds = poseData.durationSeconds;
-
-                // ✅ FALLBACK: If metadata is missing (old data), try to calculate
-                if (sampleRateHz == 0 && poseData.upperBackData.size() > 1) {
-                    long firstTimestamp = poseData.upperBackData.get(0).timestamp;
-                    long lastTimestamp = poseData.upperBackData.get(poseData.upperBackData.size() - 1).timestamp;
-                    long durationMs = lastTimestamp - firstTimestamp;
-
-                    if (durationMs > 0) {
-                        sampleRateHz = (poseData.upperBackData.size() * 1000f) / durationMs;
-                        durationSeconds = durationMs / 1000f;
-                        Log.w(TAG, "Calculated metadata for " + poseLabel + " (missing from Firebase)");
-                    } else {
-                        Log.w(TAG, "Cannot calculate metadata for " + poseLabel + " - using defaults");
-                        // Use reasonable defaults for 2-minute collection at ~16Hz
-                        sampleRateHz = 16.0f;
-                        durationSeconds = 120.0f;
-                    }
-                }
-
-                // Extract general ML label (sitting/standing/walking)
-                String mlLabel = extractMLLabel(poseLabel);
-
-                Log.d(TAG, "  - pose_" + poseIndex + ": " + poseLabel + " (" + mlLabel + ") - " +
-                        poseData.upperBackData.size() + " samples @ " +
-                        String.format(Locale.US, "%.2f", sampleRateHz) + " Hz");
-
-                // Use pose_1, pose_2, pose_3, etc.
-                json.append("  \"pose_").append(poseIndex).append("\": {\n");
-
-                // Add metadata
-                json.append("    \"pose_label\": \"").append(poseLabel).append("\",\n");
-                json.append("    \"ml_label\": \"").append(mlLabel).append("\",\n");
-                json.append("    \"sample_rate_hz\": ").append(String.format(Locale.US, "%.2f", sampleRateHz)).append(",\n");
-                json.append("    \"duration_seconds\": ").append(String.format(Locale.US, "%.2f", durationSeconds)).append(",\n");
-
-                // Upper back data (NO TIMESTAMPS in individual points)
-                json.append("    \"upper_back\": [\n");
-                for (int i = 0; i < poseData.upperBackData.size(); i++) {
-                    SensorReading reading = poseData.upperBackData.get(i);
-
-                    json.append("      {");
-                    json.append("\"ax\": ").append(String.format(Locale.US, "%.4f", reading.accelX)).append(", ");
-                    json.append("\"ay\": ").append(String.format(Locale.US, "%.4f", reading.accelY)).append(", ");
-                    json.append("\"az\": ").append(String.format(Locale.US, "%.4f", reading.accelZ)).append(", ");
-                    json.append("\"gx\": ").append(String.format(Locale.US, "%.4f", reading.gyroX)).append(", ");
-                    json.append("\"gy\": ").append(String.format(Locale.US, "%.4f", reading.gyroY)).append(", ");
-                    json.append("\"gz\": ").append(String.format(Locale.US, "%.4f", reading.gyroZ));
-                    json.append("}");
-
-                    if (i < poseData.upperBackData.size() - 1) {
-                        json.append(",");
-                    }
-                    json.append("\n");
-                }
-                json.append("    ],\n");
-
-                // Lower back data (NO TIMESTAMPS in individual points)
-                json.append("    \"lower_back\": [\n");
-                for (int i = 0; i < poseData.lowerBackData.size(); i++) {
-                    SensorReading reading = poseData.lowerBackData.get(i);
-
-                    json.append("      {");
-                    json.append("\"ax\": ").append(String.format(Locale.US, "%.4f", reading.accelX)).append(", ");
-                    json.append("\"ay\": ").append(String.format(Locale.US, "%.4f", reading.accelY)).append(", ");
-                    json.append("\"az\": ").append(String.format(Locale.US, "%.4f", reading.accelZ)).append(", ");
-                    json.append("\"gx\": ").append(String.format(Locale.US, "%.4f", reading.gyroX)).append(", ");
-                    json.append("\"gy\": ").append(String.format(Locale.US, "%.4f", reading.gyroY)).append(", ");
-                    json.append("\"gz\": ").append(String.format(Locale.US, "%.4f", reading.gyroZ));
-                    json.append("}");
-
-                    if (i < poseData.lowerBackData.size() - 1) {
-                        json.append(",");
-                    }
-                    json.append("\n");
-                }
-                json.append("    ]\n");
-
-                json.append("  }");
-
-                // Add comma if not last pose
-                if (poseIndex < totalPoses) {
-                    json.append(",");
-                }
-                json.append("\n");
-
-                poseIndex++;
-            }
-
-            json.append("}");
-
-            Log.d(TAG, "✓ JSON generated successfully (" + json.length() + " characters)");
-            return json.toString();
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error generating JSON: " + e.getMessage(), e);
+            Log.e(TAG, "Cannot export - no training data available");
             return null;
         }
+        String userId = currentUserId != null ? currentUserId : "unknown_user";
+        return new TrainingPayloadWriter(userId, allTrainingData);
     }
 
     /**
@@ -841,7 +890,7 @@ public class TrainingViewModel extends AndroidViewModel {
             long durationMs = lastTimestamp - firstTimestamp;
 
             if (durationMs > 0) {
-                sampleRateHz = (upperBackBuffer.size() * 1000f) / durationMs;
+                sampleRateHz = SampleClock.sampleRateHz(upperBackBuffer.size(), firstTimestamp, lastTimestamp);
                 durationSeconds = durationMs / 1000f;
             } else {
                 sampleRateHz = 0;
@@ -864,34 +913,9 @@ public class TrainingViewModel extends AndroidViewModel {
         poseData.put("sample_count", upperBackBuffer.size());
         poseData.put("collection_timestamp", System.currentTimeMillis());
 
-        // Convert upper back data (without timestamps to save space)
-        List<Map<String, Object>> upperData = new ArrayList<>();
-        for (SensorReading reading : upperBackBuffer) {
-            Map<String, Object> point = new HashMap<>();
-            point.put("ax", reading.accelX);
-            point.put("ay", reading.accelY);
-            point.put("az", reading.accelZ);
-            point.put("gx", reading.gyroX);
-            point.put("gy", reading.gyroY);
-            point.put("gz", reading.gyroZ);
-            upperData.add(point);
-        }
-
-        // Convert lower back data (without timestamps)
-        List<Map<String, Object>> lowerData = new ArrayList<>();
-        for (SensorReading reading : lowerBackBuffer) {
-            Map<String, Object> point = new HashMap<>();
-            point.put("ax", reading.accelX);
-            point.put("ay", reading.accelY);
-            point.put("az", reading.accelZ);
-            point.put("gx", reading.gyroX);
-            point.put("gy", reading.gyroY);
-            point.put("gz", reading.gyroZ);
-            lowerData.add(point);
-        }
-
-        poseData.put("upper_back", upperData);
-        poseData.put("lower_back", lowerData);
+        // Quantized blobs, with the aligned sample times
+        poseData.put(UPPER_PACKED_KEY, encodeReadings(upperBackBuffer));
+        poseData.put(LOWER_PACKED_KEY, encodeReadings(lowerBackBuffer));
 
         // Save to Firebase
         databaseReference.child("users")
@@ -957,74 +981,13 @@ public class TrainingViewModel extends AndroidViewModel {
 
                                 Log.d(TAG, "  Saved metadata - Rate: " + savedSampleRate + " Hz, Duration: " + savedDuration + "s");
 
-                                // Check if data exists
-                                if (!poseSnapshot.child("upper_back").exists()) {
-                                    Log.w(TAG, "No upper_back data for: " + poseLabel);
-                                    continue;
-                                }
-
-                                if (!poseSnapshot.child("lower_back").exists()) {
-                                    Log.w(TAG, "No lower_back data for: " + poseLabel);
-                                    continue;
-                                }
-
-                                // Load upper back data
-                                ArrayList<SensorReading> upperData = new ArrayList<>();
-                                DataSnapshot upperSnapshot = poseSnapshot.child("upper_back");
-
-                                // ✅ Use dummy timestamps (we have metadata, so we don't need real timestamps)
+                                // ✅ Fallback timestamp for legacy samples, which were stored without one
                                 long dummyTimestamp = savedTimestamp != null ? savedTimestamp : System.currentTimeMillis();
 
-                                for (DataSnapshot reading : upperSnapshot.getChildren()) {
-                                    try {
-                                        Float ax = reading.child("ax").getValue(Float.class);
-                                        Float ay = reading.child("ay").getValue(Float.class);
-                                        Float az = reading.child("az").getValue(Float.class);
-                                        Float gx = reading.child("gx").getValue(Float.class);
-                                        Float gy = reading.child("gy").getValue(Float.class);
-                                        Float gz = reading.child("gz").getValue(Float.class);
-
-                                        // Null checks
-                                        if (ax == null || ay == null || az == null ||
-                                                gx == null || gy == null || gz == null) {
-                                            Log.w(TAG, "Skipping reading with null values");
-                                            continue;
-                                        }
-
-                                        // Use dummy timestamp (doesn't matter since we have metadata)
-                                        upperData.add(new SensorReading(dummyTimestamp, ax, ay, az, gx, gy, gz));
-
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Error reading upper back sample: " + e.getMessage());
-                                    }
-                                }
-
-                                // Load lower back data
-                                ArrayList<SensorReading> lowerData = new ArrayList<>();
-                                DataSnapshot lowerSnapshot = poseSnapshot.child("lower_back");
-
-                                for (DataSnapshot reading : lowerSnapshot.getChildren()) {
-                                    try {
-                                        Float ax = reading.child("ax").getValue(Float.class);
-                                        Float ay = reading.child("ay").getValue(Float.class);
-                                        Float az = reading.child("az").getValue(Float.class);
-                                        Float gx = reading.child("gx").getValue(Float.class);
-                                        Float gy = reading.child("gy").getValue(Float.class);
-                                        Float gz = reading.child("gz").getValue(Float.class);
-
-                                        // Null checks
-                                        if (ax == null || ay == null || az == null ||
-                                                gx == null || gy == null || gz == null) {
-                                            Log.w(TAG, "Skipping reading with null values");
-                                            continue;
-                                        }
-
-                                        lowerData.add(new SensorReading(dummyTimestamp, ax, ay, az, gx, gy, gz));
-
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Error reading lower back sample: " + e.getMessage());
-                                    }
-                                }
+                                ArrayList<SensorReading> upperData =
+                                        readReadings(poseSnapshot, UPPER_PACKED_KEY, "upper_back", dummyTimestamp);
+                                ArrayList<SensorReading> lowerData =
+                                        readReadings(poseSnapshot, LOWER_PACKED_KEY, "lower_back", dummyTimestamp);
 
                                 if (upperData.isEmpty() || lowerData.isEmpty()) {
                                     Log.w(TAG, "Skipping pose with empty data: " + poseLabel);
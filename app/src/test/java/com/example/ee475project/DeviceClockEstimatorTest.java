@@ -0,0 +1,91 @@
+package com.example.ee475project;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drift fit of device ticks onto the phone clock.
+ */
+public class DeviceClockEstimatorTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long START_NANOS = 5_000 * MS;
+
+    @Test
+    public void withoutTicksArrivalTimeIsUsed() {
+        DeviceClockEstimator estimator = new DeviceClockEstimator();
+
+        assertEquals(START_NANOS, estimator.toHostNanos(DeviceClockEstimator.NO_TICK, START_NANOS));
+        assertEquals(START_NANOS + 20 * MS, estimator.toHostNanos(DeviceClockEstimator.NO_TICK, START_NANOS + 20 * MS));
+        assertFalse(estimator.isFitted());
+        assertEquals(0, estimator.getTickRateHz(), 0);
+    }
+
+    @Test
+    public void fitsDriftingDeviceClock() {
+        // 50 Hz device timestamps in microseconds; the device crystal runs 100 ppm slow
+        DeviceClockEstimator estimator = new DeviceClockEstimator();
+        double nanosPerTick = 1000 * 1.0001;
+        long delay = 3 * MS;
+
+        for (int i = 0; i < 300; i++) {
+            long tick = i * 20_000L;
+            long sampled = START_NANOS + Math.round(tick * nanosPerTick);
+            estimator.toHostNanos(tick, sampled + delay);
+        }
+
+        assertTrue(estimator.isFitted());
+        assertEquals(1e6 / 1.0001, estimator.getTickRateHz(), 0.01);
+    }
+
+    @Test
+    public void removesBurstyTransportDelay() {
+        // Sequence numbers as ticks at 50 Hz; samples arrive in bursts of 4, each burst up to 30 ms late
+        DeviceClockEstimator estimator = new DeviceClockEstimator();
+        Random random = new Random(42);
+        long periodNanos = 20 * MS;
+        long minDelay = 2 * MS;
+        long previous = Long.MIN_VALUE;
+        double worstError = 0;
+        long burstDelay = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            if (i % 4 == 0) {
+                burstDelay = i % 16 == 0 ? 0 : random.nextInt(30) * MS;
+            }
+            long sampled = START_NANOS + i * periodNanos;
+            long burstEnd = START_NANOS + (i / 4 * 4 + 3) * periodNanos;
+            long arrival = burstEnd + minDelay + burstDelay + (i % 4) * 100_000L;
+
+            long estimate = estimator.toHostNanos(i, arrival);
+            assertTrue("never after arrival", estimate <= arrival);
+            assertTrue("monotonic", estimate > previous);
+            previous = estimate;
+            if (i >= 300) {
+                worstError = Math.max(worstError, Math.abs(estimate - sampled));
+            }
+        }
+
+        assertEquals(50, estimator.getTickRateHz(), 0.5);
+        // Raw arrival times are up to 90 ms late; the fit should get within a couple of ms
+        assertTrue("worst error " + worstError / MS + " ms", worstError < 5 * MS);
+    }
+
+    @Test
+    public void counterGoingBackwardsRestartsTheFit() {
+        DeviceClockEstimator estimator = new DeviceClockEstimator();
+        long arrival = START_NANOS;
+        for (int i = 0; i < 32; i++) {
+            arrival = START_NANOS + i * 20 * MS;
+            estimator.toHostNanos(1000 + i, arrival);
+        }
+        assertTrue(estimator.isFitted());
+
+        long afterRestart = estimator.toHostNanos(0, arrival + 20 * MS);
+        assertFalse(estimator.isFitted());
+        assertEquals(arrival + 20 * MS, afterRestart);
+    }
+}
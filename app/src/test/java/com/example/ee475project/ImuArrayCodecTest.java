@@ -0,0 +1,131 @@
+package com.example.ee475project;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips through the quantized Firebase array format.
+ */
+public class ImuArrayCodecTest {
+
+    private static final int CHANNELS = ImuArrayCodec.CHANNELS;
+
+    private static float[] randomData(int count, long seed) {
+        Random random = new Random(seed);
+        float[] data = new float[count * CHANNELS];
+        for (int i = 0; i < data.length; i++) {
+            // Accelerometer channels in g, gyro channels in dps
+            data[i] = (float) (random.nextGaussian() * (i % CHANNELS < 3 ? 1.5 : 120));
+        }
+        return data;
+    }
+
+    /**
+     * What a Firebase read returns: no empty lists, and Integer/Double stored as Long/Double
+     */
+    private static Object throughFirebase(Map<String, Object> node) {
+        Map<String, Object> stored = new HashMap<>();
+        for (Map.Entry<String, Object> entry : node.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof List && ((List<?>) value).isEmpty()) {
+                continue;
+            }
+            stored.put(entry.getKey(), value instanceof Integer ? Long.valueOf((Integer) value) : value);
+        }
+        return stored;
+    }
+
+    @Test
+    public void roundTripsWithinQuantizationError() {
+        int count = 2500;   // Spans three chunks
+        float[] data = randomData(count, 1);
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = 1_700_000_000_000L + i * 20 + (i % 3);
+        }
+
+        Map<String, Object> node = ImuArrayCodec.encode(data, times, count);
+        assertEquals(3, ((List<?>) node.get(ImuArrayCodec.KEY_CHUNKS)).size());
+        ImuArrayCodec.Decoded decoded = ImuArrayCodec.decode(throughFirebase(node));
+
+        assertEquals(count, decoded.count);
+        assertArrayEquals(times, decoded.times);
+        float[] maxAbs = new float[CHANNELS];
+        for (int i = 0; i < data.length; i++) {
+            maxAbs[i % CHANNELS] = Math.max(maxAbs[i % CHANNELS], Math.abs(data[i]));
+        }
+        for (int i = 0; i < data.length; i++) {
+            // Half a quantization step of that channel's scale
+            assertEquals(data[i], decoded.data[i], maxAbs[i % CHANNELS] / 32767f);
+        }
+    }
+
+    @Test
+    public void timesAreOptional() {
+        float[] data = randomData(10, 2);
+
+        ImuArrayCodec.Decoded decoded = ImuArrayCodec.decode(throughFirebase(ImuArrayCodec.encode(data, null, 10)));
+
+        assertEquals(10, decoded.count);
+        assertNull(decoded.times);
+    }
+
+    @Test
+    public void roundTripsEmptyArray() {
+        Map<String, Object> node = ImuArrayCodec.encode(new float[0], new long[0], 0);
+        assertTrue(ImuArrayCodec.isEncoded(node));
+
+        ImuArrayCodec.Decoded decoded = ImuArrayCodec.decode(throughFirebase(node));
+        assertEquals(0, decoded.count);
+        assertEquals(0, decoded.data.length);
+        assertEquals(0, decoded.times.length);
+
+        decoded = ImuArrayCodec.decode(throughFirebase(ImuArrayCodec.encode(new float[0], null, 0)));
+        assertEquals(0, decoded.count);
+        assertNull(decoded.times);
+    }
+
+    @Test
+    public void zeroChannelAndNaNDecodeToZero() {
+        float[] data = new float[2 * CHANNELS];
+        data[1] = Float.NaN;
+        data[CHANNELS] = 1f;
+
+        ImuArrayCodec.Decoded decoded = ImuArrayCodec.decode(throughFirebase(ImuArrayCodec.encode(data, null, 2)));
+
+        assertEquals(0f, decoded.data[1], 0f);
+        assertEquals(0f, decoded.data[2], 0f);
+        assertEquals(1f, decoded.data[CHANNELS], 1e-4f);
+    }
+
+    @Test
+    public void readsChunksStoredAsAMap() {
+        float[] data = randomData(5, 3);
+        Map<String, Object> node = ImuArrayCodec.encode(data, null, 5);
+        Map<String, Object> chunks = new HashMap<>();
+        chunks.put("0", ((List<?>) node.get(ImuArrayCodec.KEY_CHUNKS)).get(0));
+        node.put(ImuArrayCodec.KEY_CHUNKS, chunks);
+
+        assertEquals(5, ImuArrayCodec.decode(node).count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherFormats() {
+        Map<String, Object> node = new HashMap<>();
+        node.put(ImuArrayCodec.KEY_FORMAT, "something-else");
+        ImuArrayCodec.decode(node);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingChunks() {
+        Map<String, Object> node = ImuArrayCodec.encode(randomData(5, 4), null, 5);
+        node.remove(ImuArrayCodec.KEY_CHUNKS);
+        ImuArrayCodec.decode(node);
+    }
+}
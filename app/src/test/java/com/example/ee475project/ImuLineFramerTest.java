@@ -0,0 +1,112 @@
+package com.example.ee475project;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Framing of the text UART stream across BLE notification boundaries.
+ */
+public class ImuLineFramerTest {
+
+    private final List<float[]> frames = new ArrayList<>();
+    private final List<Integer> sensors = new ArrayList<>();
+    private final List<Byte> types = new ArrayList<>();
+    private ImuLineFramer framer;
+
+    @Before
+    public void setUp() {
+        framer = new ImuLineFramer((sensor, type, x, y, z) -> {
+            sensors.add(sensor);
+            types.add(type);
+            frames.add(new float[]{x, y, z});
+        });
+    }
+
+    private void feed(String text) {
+        framer.feed(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void parsesOneLinePerNotification() {
+        feed("UB|A:0.12,-9.81,3.5\n");
+        feed("LB|G:1,2,3\n");
+
+        assertEquals(2, frames.size());
+        assertEquals(ImuLineFramer.SENSOR_UPPER_BACK, (int) sensors.get(0));
+        assertEquals(ImuLineFramer.TYPE_ACCEL, (byte) types.get(0));
+        assertArrayEquals(new float[]{0.12f, -9.81f, 3.5f}, frames.get(0), 0f);
+        assertEquals(ImuLineFramer.SENSOR_LOWER_BACK, (int) sensors.get(1));
+        assertEquals(ImuLineFramer.TYPE_GYRO, (byte) types.get(1));
+        assertArrayEquals(new float[]{1f, 2f, 3f}, frames.get(1), 0f);
+    }
+
+    @Test
+    public void joinsLineSplitAcrossNotifications() {
+        feed("UB|A:1.2");
+        feed("5,-0.5");
+        assertTrue(frames.isEmpty());
+
+        feed(",2e-1\r\n");
+        assertEquals(1, frames.size());
+        assertArrayEquals(new float[]{1.25f, -0.5f, 0.2f}, frames.get(0), 0f);
+        assertEquals(0, framer.getMalformedCount());
+    }
+
+    @Test
+    public void splitsSeveralLinesInOneNotification() {
+        feed("UB|A:1,1,1\nUB|G:2,2,2\r\nLB|A:3,3,");
+        assertEquals(2, frames.size());
+
+        feed("3\n");
+        assertEquals(3, frames.size());
+        assertArrayEquals(new float[]{3f, 3f, 3f}, frames.get(2), 0f);
+        assertEquals(3, framer.getFrameCount());
+    }
+
+    @Test
+    public void feedsFromAnOffset() {
+        byte[] data = "xxUB|A:4,5,6\nyy".getBytes(StandardCharsets.US_ASCII);
+        framer.feed(data, 2, data.length - 4);
+
+        assertEquals(1, frames.size());
+        assertArrayEquals(new float[]{4f, 5f, 6f}, frames.get(0), 0f);
+    }
+
+    @Test
+    public void rejectsMalformedLinesAndKeepsGoing() {
+        feed("UB|A:1,2\nXX|A:1,2,3\nUB|Q:1,2,3\nUB|A:1,2,3\n");
+
+        assertEquals(1, frames.size());
+        assertEquals(3, framer.getMalformedCount());
+    }
+
+    @Test
+    public void dropsOverLongLine() {
+        StringBuilder junk = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            junk.append('9');
+        }
+        feed("UB|A:" + junk);
+        feed("\nUB|A:1,2,3\n");
+
+        assertEquals(1, frames.size());
+        assertEquals(1, framer.getMalformedCount());
+    }
+
+    @Test
+    public void resetDropsPartialLine() {
+        feed("UB|A:1,2");
+        framer.reset();
+        feed("LB|G:7,8,9\n");
+
+        assertEquals(1, frames.size());
+        assertEquals(ImuLineFramer.SENSOR_LOWER_BACK, (int) sensors.get(0));
+        assertEquals(0, framer.getMalformedCount());
+    }
+}
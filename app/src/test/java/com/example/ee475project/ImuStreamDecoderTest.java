@@ -0,0 +1,169 @@
+package com.example.ee475project;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Text/binary detection and decoding of 0xA5 and 0xA6 frames.
+ */
+public class ImuStreamDecoderTest {
+
+    private static final float DELTA = 1e-4f;
+
+    private static final class Sample {
+        final int sensor;
+        final int sequence;
+        final long deviceTimeUs;
+        final float[] values;
+
+        Sample(int sensor, int sequence, long deviceTimeUs, float[] values) {
+            this.sensor = sensor;
+            this.sequence = sequence;
+            this.deviceTimeUs = deviceTimeUs;
+            this.values = values;
+        }
+    }
+
+    private final List<Sample> samples = new ArrayList<>();
+    private ImuStreamDecoder decoder;
+
+    @Before
+    public void setUp() {
+        decoder = new ImuStreamDecoder((sensor, sequence, deviceTimeUs, ax, ay, az, gx, gy, gz) ->
+                samples.add(new Sample(sensor, sequence, deviceTimeUs, new float[]{ax, ay, az, gx, gy, gz})));
+    }
+
+    /**
+     * One frame in the wire layout; deviceTimeUs < 0 gives an untimed 0xA5 frame
+     */
+    private static byte[] frame(int sensor, int sequence, long deviceTimeUs, int... raw) {
+        boolean timed = deviceTimeUs >= 0;
+        byte[] frame = new byte[timed ? ImuStreamDecoder.TIMED_BINARY_FRAME_SIZE : ImuStreamDecoder.BINARY_FRAME_SIZE];
+        frame[0] = timed ? ImuStreamDecoder.TIMED_BINARY_SYNC : ImuStreamDecoder.BINARY_SYNC;
+        frame[1] = (byte) sensor;
+        frame[2] = (byte) sequence;
+        frame[3] = (byte) (sequence >> 8);
+        for (int i = 0; i < 6; i++) {
+            frame[4 + 2 * i] = (byte) raw[i];
+            frame[5 + 2 * i] = (byte) (raw[i] >> 8);
+        }
+        if (timed) {
+            for (int i = 0; i < 4; i++) {
+                frame[16 + i] = (byte) (deviceTimeUs >> (8 * i));
+            }
+        }
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] out = new byte[length];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, pos, part.length);
+            pos += part.length;
+        }
+        return out;
+    }
+
+    @Test
+    public void pairsTextAccelAndGyroLines() {
+        decoder.feed("UB|A:0.1,0.2,0.3\nUB|G:".getBytes(StandardCharsets.US_ASCII));
+        decoder.feed("4,5,6\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertFalse(decoder.isBinaryMode());
+        assertEquals(1, samples.size());
+        Sample sample = samples.get(0);
+        assertEquals(ImuLineFramer.SENSOR_UPPER_BACK, sample.sensor);
+        assertEquals(ImuStreamDecoder.NO_SEQUENCE, sample.sequence);
+        assertEquals(ImuStreamDecoder.NO_DEVICE_TIME, sample.deviceTimeUs);
+        assertArrayEquals(new float[]{0.1f, 0.2f, 0.3f, 4f, 5f, 6f}, sample.values, DELTA);
+    }
+
+    @Test
+    public void gyroWithoutAccelFromSameSensorIsIgnored() {
+        decoder.feed("UB|A:1,1,1\nLB|G:2,2,2\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertTrue(samples.isEmpty());
+    }
+
+    @Test
+    public void decodesBinaryFrames() {
+        decoder.feed(concat(
+                frame(0, 7, -1, 1000, -500, 0, 100, -20, 5),
+                frame(1, 3, -1, -1, 2, 3, 4, 5, 6)));
+
+        assertTrue(decoder.isBinaryMode());
+        assertEquals(2, samples.size());
+        Sample first = samples.get(0);
+        assertEquals(ImuLineFramer.SENSOR_UPPER_BACK, first.sensor);
+        assertEquals(7, first.sequence);
+        assertEquals(ImuStreamDecoder.NO_DEVICE_TIME, first.deviceTimeUs);
+        assertArrayEquals(new float[]{1f, -0.5f, 0f, 10f, -2f, 0.5f}, first.values, DELTA);
+        assertEquals(ImuLineFramer.SENSOR_LOWER_BACK, samples.get(1).sensor);
+        assertEquals(-0.001f, samples.get(1).values[0], DELTA);
+    }
+
+    @Test
+    public void decodesTimedBinaryFrames() {
+        long wrapped = 0xFFFFFFF0L;
+        decoder.feed(concat(
+                frame(0, 1, 123456, 0, 0, 1000, 0, 0, 0),
+                frame(0, 2, wrapped, 0, 0, 1000, 0, 0, 0)));
+
+        assertTrue(decoder.isBinaryMode());
+        assertEquals(2, samples.size());
+        assertEquals(123456, samples.get(0).deviceTimeUs);
+        assertEquals(wrapped, samples.get(1).deviceTimeUs);
+        assertEquals(1f, samples.get(1).values[2], DELTA);
+    }
+
+    @Test
+    public void countsSequenceGapsButNotDuplicates() {
+        decoder.feed(frame(0, 0xFFFE, -1, 0, 0, 0, 0, 0, 0));
+        decoder.feed(frame(0, 1, -1, 0, 0, 0, 0, 0, 0));    // 0xFFFF and 0 lost across the wrap
+        decoder.feed(frame(0, 1, -1, 0, 0, 0, 0, 0, 0));    // duplicate
+        decoder.feed(frame(1, 10, -1, 0, 0, 0, 0, 0, 0));   // other sensor tracked separately
+
+        assertEquals(4, decoder.getSampleCount());
+        assertEquals(2, decoder.getMissedFrames());
+    }
+
+    @Test
+    public void frameWithTheWrongSyncIsMalformed() {
+        // 40 bytes starting with 0xA6: read as two timed frames, the second of which is really a 0xA5 frame
+        decoder.feed(concat(frame(0, 1, 100, 0, 0, 0, 0, 0, 0), frame(0, 2, -1, 0, 0, 0, 0, 0, 0), new byte[4]));
+
+        assertEquals(1, samples.size());
+        assertEquals(1, decoder.getMalformedFrames());
+    }
+
+    @Test
+    public void oddLengthNotificationFallsBackToText() {
+        byte[] notFrames = new byte[ImuStreamDecoder.BINARY_FRAME_SIZE + 1];
+        notFrames[0] = ImuStreamDecoder.BINARY_SYNC;
+        decoder.feed(notFrames);
+
+        assertFalse(decoder.isBinaryMode());
+        assertTrue(samples.isEmpty());
+    }
+
+    @Test
+    public void resetReturnsToTextMode() {
+        decoder.feed(frame(0, 5, -1, 0, 0, 0, 0, 0, 0));
+        decoder.reset();
+        assertFalse(decoder.isBinaryMode());
+
+        decoder.feed(frame(0, 9, -1, 0, 0, 0, 0, 0, 0));
+        assertEquals(0, decoder.getMissedFrames());
+    }
+}
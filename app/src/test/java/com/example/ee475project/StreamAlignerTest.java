@@ -0,0 +1,141 @@
+package com.example.ee475project;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resampling of the two streams onto a shared grid.
+ */
+public class StreamAlignerTest {
+
+    private static final int CHANNELS = StreamAligner.CHANNELS;
+
+    private interface Signal {
+        double at(double timeMs, int channel);
+    }
+
+    private static long[] times(long start, long stepMs, int count) {
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = start + i * stepMs;
+        }
+        return times;
+    }
+
+    private static float[] sample(long[] times, long shift, Signal signal) {
+        float[] data = new float[times.length * CHANNELS];
+        for (int i = 0; i < times.length; i++) {
+            for (int c = 0; c < CHANNELS; c++) {
+                data[i * CHANNELS + c] = (float) signal.at(times[i] - shift, c);
+            }
+        }
+        return data;
+    }
+
+    private static void assertFollows(StreamAligner.Result result, float[] stream, Signal signal,
+                                      int from, int to, double delta) {
+        for (int i = from; i < to; i++) {
+            for (int c = 0; c < CHANNELS; c++) {
+                assertEquals("sample " + i + " channel " + c,
+                        signal.at(result.timeAt(i), c), stream[i * CHANNELS + c], delta);
+            }
+        }
+    }
+
+    @Test
+    public void linearResamplesBothStreamsOntoOneGrid() {
+        Signal upperSignal = (t, c) -> t / 10.0 + c;
+        Signal lowerSignal = (t, c) -> -t / 5.0 + c;
+        long[] upperTimes = times(1000, 10, 101);     // 100 Hz, 1000..2000
+        long[] lowerTimes = times(1005, 20, 50);      // 50 Hz, 1005..1985
+
+        StreamAligner.Result result = new StreamAligner(40f, StreamAligner.LINEAR).align(
+                upperTimes, sample(upperTimes, 0, upperSignal), upperTimes.length,
+                lowerTimes, sample(lowerTimes, 0, lowerSignal), lowerTimes.length, 0);
+
+        assertNotNull(result);
+        assertEquals(1005, result.startMillis);
+        assertEquals(40f, result.rateHz, 0f);
+        assertEquals(40, result.length);             // 1005 + 39 * 25 = 1980 <= 1985
+        assertEquals(1980, result.timeAt(result.length - 1));
+        assertEquals(result.length * CHANNELS, result.upper.length);
+        assertFollows(result, result.upper, upperSignal, 0, result.length, 1e-3);
+        assertFollows(result, result.lower, lowerSignal, 0, result.length, 1e-3);
+    }
+
+    @Test
+    public void zeroRateUsesTheSlowerMeasuredRate() {
+        long[] upperTimes = times(0, 10, 101);
+        long[] lowerTimes = times(0, 20, 51);
+        Signal signal = (t, c) -> c;
+
+        StreamAligner.Result result = new StreamAligner(0f, StreamAligner.LINEAR).align(
+                upperTimes, sample(upperTimes, 0, signal), upperTimes.length,
+                lowerTimes, sample(lowerTimes, 0, signal), lowerTimes.length, 0);
+
+        assertNotNull(result);
+        assertEquals(50f, result.rateHz, 1e-3f);
+        assertEquals(51, result.length);
+    }
+
+    @Test
+    public void shiftLinesUpSequentialCollections() {
+        // Lower back recorded two minutes after the upper back, same movement
+        Signal signal = (t, c) -> Math.sin(t / 200.0 + c);
+        long shift = 120_000;
+        long[] upperTimes = times(0, 20, 200);
+        long[] lowerTimes = times(shift + 7, 20, 200);
+
+        StreamAligner.Result result = new StreamAligner(50f, StreamAligner.LINEAR).align(
+                upperTimes, sample(upperTimes, 0, signal), upperTimes.length,
+                lowerTimes, sample(lowerTimes, shift, signal), lowerTimes.length, shift);
+
+        assertNotNull(result);
+        assertEquals(7, result.startMillis);
+        for (int i = 0; i < result.length * CHANNELS; i++) {
+            assertEquals(result.upper[i], result.lower[i], 2e-3f);
+        }
+    }
+
+    @Test
+    public void cubicBeatsLinearOnACurve() {
+        Signal signal = (t, c) -> Math.sin(t / 100.0 + c);
+        long[] sourceTimes = times(0, 40, 100);
+        float[] data = sample(sourceTimes, 0, signal);
+
+        StreamAligner.Result linear = new StreamAligner(40f, StreamAligner.LINEAR).align(
+                sourceTimes, data, sourceTimes.length, sourceTimes, data, sourceTimes.length, 0);
+        StreamAligner.Result cubic = new StreamAligner(40f, StreamAligner.CUBIC).align(
+                sourceTimes, data, sourceTimes.length, sourceTimes, data, sourceTimes.length, 0);
+
+        assertNotNull(cubic);
+        double linearError = 0;
+        double cubicError = 0;
+        // The first and last source intervals only have one-sided tangents, so compare inside them
+        for (int i = 0; i < cubic.length; i++) {
+            long time = cubic.timeAt(i);
+            if (time < sourceTimes[1] || time > sourceTimes[sourceTimes.length - 2]) {
+                continue;
+            }
+            for (int c = 0; c < CHANNELS; c++) {
+                double expected = signal.at(time, c);
+                linearError = Math.max(linearError, Math.abs(linear.upper[i * CHANNELS + c] - expected));
+                cubicError = Math.max(cubicError, Math.abs(cubic.upper[i * CHANNELS + c] - expected));
+            }
+        }
+        assertTrue("cubic " + cubicError + " vs linear " + linearError, cubicError < linearError / 4);
+    }
+
+    @Test
+    public void returnsNullWithoutOverlap() {
+        long[] upperTimes = times(0, 10, 50);
+        long[] lowerTimes = times(1000, 10, 50);
+        float[] data = new float[50 * CHANNELS];
+
+        assertNull(new StreamAligner(0f, StreamAligner.LINEAR).align(
+                upperTimes, data, 50, lowerTimes, data, 50, 0));
+        assertNull(new StreamAligner(0f, StreamAligner.LINEAR).align(
+                upperTimes, data, 1, lowerTimes, data, 50, 1000));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.ee475project;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * writeFixed() against the String.format output it replaces.
+ */
+public class TrainingPayloadWriterTest {
+
+    private static String writeFixed(float value, int decimals) throws IOException {
+        Buffer buffer = new Buffer();
+        TrainingPayloadWriter.writeFixed(buffer, value, decimals);
+        return buffer.readUtf8();
+    }
+
+    private static void assertMatchesFormat(float value, int decimals) throws IOException {
+        String expected = String.format(Locale.US, "%." + decimals + "f", value);
+        assertEquals("value " + Float.toString(value) + " to " + decimals + " places",
+                expected, writeFixed(value, decimals));
+    }
+
+    @Test
+    public void matchesFormatForTypicalSensorValues() throws IOException {
+        float[] values = {0f, 1f, -1f, 0.5f, 9.81f, -9.81f, 0.0001f, 0.00005f, 0.125f, -0.125f,
+                1.005f, 2.675f, 123.4567f, -1234.5678f, 32767f, 1e-7f, 99.99995f};
+        for (float value : values) {
+            for (int decimals = 0; decimals <= 4; decimals++) {
+                assertMatchesFormat(value, decimals);
+            }
+        }
+    }
+
+    @Test
+    public void matchesFormatForRandomValues() throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            float value = (float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(7) - 2));
+            assertMatchesFormat(value, 2);
+            assertMatchesFormat(value, 4);
+        }
+    }
+
+    @Test
+    public void keepsTheSignOfValuesThatRoundToZero() throws IOException {
+        assertMatchesFormat(-0.00001f, 4);
+        assertMatchesFormat(-0f, 2);
+        assertEquals("-0.00", writeFixed(-0.001f, 2));
+    }
+
+    @Test
+    public void parsesBackToTheFloat() throws IOException {
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            float value = (float) (random.nextGaussian() * 50);
+            float parsed = Float.parseFloat(writeFixed(value, 4));
+            assertEquals(Float.toString(value), value, parsed, 0.00005f + Math.ulp(value));
+        }
+    }
+
+    @Test
+    public void writesNullForNonFiniteValues() throws IOException {
+        assertEquals("null", writeFixed(Float.NaN, 2));
+        assertEquals("null", writeFixed(Float.POSITIVE_INFINITY, 4));
+        assertEquals("null", writeFixed(Float.NEGATIVE_INFINITY, 4));
+    }
+}